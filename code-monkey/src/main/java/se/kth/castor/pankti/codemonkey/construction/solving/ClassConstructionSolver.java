@@ -34,13 +34,41 @@ import spoon.reflect.declaration.CtNamedElement;
 
 public class ClassConstructionSolver {
 
+  // Move the ones needing an instance to the front
+  private static final Comparator<Action> ACTION_ORDER = Comparator
+      .comparing(Action::needsInstance)
+      .thenComparing(action -> action.handledFields()
+          .stream()
+          .map(CtNamedElement::getSimpleName)
+          .min(String::compareTo)
+          .orElse("N/A")
+      );
+
   private final List<MutationStrategy> dynamicMutations;
   private final List<MutationStrategy> staticMutations;
   private final SolvingState initial;
   private final Supplier<Statistics> statisticsSupplier;
+  private final PlanStore planStore;
 
   public ClassConstructionSolver(
       List<MutationStrategy> mutations, SolvingState initial, Supplier<Statistics> statistics
+  ) {
+    this(mutations, initial, statistics, null);
+  }
+
+  /**
+   * Creates a new solver.
+   *
+   * @param mutations the mutations to apply
+   * @param initial the initial state
+   * @param statistics the statistics to record into, might be null
+   * @param planStore the store to look static plans up in and record them to, might be null
+   */
+  public ClassConstructionSolver(
+      List<MutationStrategy> mutations,
+      SolvingState initial,
+      Supplier<Statistics> statistics,
+      PlanStore planStore
   ) {
     this.dynamicMutations = mutations.stream().filter(it -> !it.isStatic()).toList();
     this.staticMutations = mutations.stream()
@@ -48,6 +76,7 @@ public class ClassConstructionSolver {
         .toList();
     this.initial = initial;
     this.statisticsSupplier = statistics == null ? () -> null : statistics;
+    this.planStore = planStore;
   }
 
   public SolveResult solveDynamic(Object instance) {
@@ -95,7 +124,6 @@ public class ClassConstructionSolver {
     return new SolveResult(minimalAction.map(initial::withAction));
   }
 
-  @SuppressWarnings({"unchecked", "UnstableApiUsage"})
   public SolveResult solveStatic() {
     Instant startTime = Instant.now();
     SolvingState current = initial;
@@ -119,6 +147,72 @@ public class ClassConstructionSolver {
       return new SolveResult(Optional.empty());
     }
 
+    String planKey = null;
+    if (planStore != null) {
+      planKey = PlanStore.key(current);
+      Optional<SolveResult> stored = solveFromStore(current, planKey, startTime);
+      if (stored.isPresent()) {
+        return stored.get();
+      }
+    }
+
+    for (CtField<?> field : current.fields()) {
+      if (current.actions().stream().noneMatch(it -> it.handledFields().contains(field))) {
+        if (statisticsSupplier.get() != null) {
+          statisticsSupplier.get().getStructureBased().addPlanBuiltFailed();
+          statisticsSupplier.get()
+              .getStructureBased()
+              .addTimeSpentBuildingPlan(ChronoUnit.MILLIS.between(startTime, Instant.now()));
+        }
+        // Can't construct this field :/
+        return new SolveResult(Optional.empty());
+      }
+    }
+
+    // Most problems are tiny, creating a native Z3 context costs more than solving them in Java
+    Optional<List<Action>> usedActions;
+    String solvedWith;
+    if (ExactPlanSolver.canSolve(current)) {
+      usedActions = ExactPlanSolver.solve(current);
+      solvedWith = "constructionPlansSolvedExactly";
+    } else {
+      usedActions = solveWithZ3(current);
+      solvedWith = "constructionPlansSolvedWithZ3";
+    }
+
+    if (planStore != null) {
+      if (usedActions.isPresent()) {
+        planStore.putSolved(planKey, usedActions.get());
+      } else {
+        planStore.putUnsolvable(planKey);
+      }
+    }
+    Statistics statistics = statisticsSupplier.get();
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter(solvedWith, 1);
+      if (usedActions.isPresent()) {
+        statistics.getStructureBased().addPlanBuiltSuccessful();
+      } else {
+        statistics.getStructureBased().addPlanBuiltFailed();
+      }
+      statistics.getStructureBased()
+          .addTimeSpentBuildingPlan(ChronoUnit.MILLIS.between(startTime, Instant.now()));
+    }
+
+    SolvingState solved = current;
+    return new SolveResult(usedActions.map(actions -> new SolvingState(
+        solved.fields(), actions.stream().sorted(ACTION_ORDER).toList(), solved.type()
+    )));
+  }
+
+  /**
+   * Finds a minimum-cost plan with Z3. Package-private to compare it with {@link ExactPlanSolver}.
+   *
+   * @param current the state after applying all static mutations
+   * @return the chosen actions or an empty optional if there is no plan
+   */
+  @SuppressWarnings({"unchecked", "UnstableApiUsage"})
+  static Optional<List<Action>> solveWithZ3(SolvingState current) {
     Map<Action, Expr<BoolSort>> actionToVars = new IdentityHashMap<>();
 
     try (Context context = new Context()) {
@@ -139,19 +233,7 @@ public class ClassConstructionSolver {
             .filter(it -> it.handledFields().contains(field))
             .map(actionToVars::get)
             .toList();
-
-        if (!settingActions.isEmpty()) {
-          optimize.Add(context.mkOr(settingActions.toArray(Expr[]::new)));
-        } else {
-          if (statisticsSupplier.get() != null) {
-            statisticsSupplier.get().getStructureBased().addPlanBuiltFailed();
-            statisticsSupplier.get()
-                .getStructureBased()
-                .addTimeSpentBuildingPlan(ChronoUnit.MILLIS.between(startTime, Instant.now()));
-          }
-          // Can't construct this field :/
-          return new SolveResult(Optional.empty());
-        }
+        optimize.Add(context.mkOr(settingActions.toArray(Expr[]::new)));
       }
 
       // ensure an instance is created
@@ -194,44 +276,57 @@ public class ClassConstructionSolver {
 
       Status checkStatus = optimize.Check();
       if (checkStatus == Status.UNSATISFIABLE) {
-        if (statisticsSupplier.get() != null) {
-          statisticsSupplier.get().getStructureBased().addPlanBuiltFailed();
-          statisticsSupplier.get()
-              .getStructureBased()
-              .addTimeSpentBuildingPlan(ChronoUnit.MILLIS.between(startTime, Instant.now()));
-        }
-        return new SolveResult(Optional.empty());
+        return Optional.empty();
       } else if (checkStatus == Status.UNKNOWN) {
         throw new RuntimeException("Unknown element found");
       }
 
       Model model = optimize.getModel();
-      List<Action> usedActions = actionToVars.entrySet().stream()
-          .filter(entry -> model.getConstInterp(entry.getValue()).isTrue())
-          .map(Entry::getKey)
-          // Move the ones needing an instance to the front
-          .sorted(
-              Comparator.comparing(Action::needsInstance)
-                  .thenComparing(action -> action.handledFields()
-                      .stream()
-                      .map(CtNamedElement::getSimpleName)
-                      .min(String::compareTo)
-                      .orElse("N/A")
-                  )
-          )
-          .toList();
+      return Optional.of(
+          actionToVars.entrySet().stream()
+              .filter(entry -> model.getConstInterp(entry.getValue()).isTrue())
+              .map(Entry::getKey)
+              .toList()
+      );
+    }
+  }
 
-      if (statisticsSupplier.get() != null) {
-        statisticsSupplier.get().getStructureBased().addPlanBuiltSuccessful();
-        statisticsSupplier.get()
-            .getStructureBased()
-            .addTimeSpentBuildingPlan(ChronoUnit.MILLIS.between(startTime, Instant.now()));
-      }
+  private Optional<SolveResult> solveFromStore(
+      SolvingState current,
+      String planKey,
+      Instant startTime
+  ) {
+    Optional<PlanStore.StoredPlan> storedPlan = planStore.get(planKey);
+    if (storedPlan.isEmpty()) {
+      return Optional.empty();
+    }
+    Optional<List<Action>> usedActions = storedPlan.get().solvable()
+        ? PlanStore.chooseActions(current.actions(), storedPlan.get())
+        : Optional.of(List.of());
+    if (usedActions.isEmpty()) {
+      // The stored plan does not match the candidates, solve it again
+      return Optional.empty();
+    }
 
-      return new SolveResult(
-          Optional.of(new SolvingState(current.fields(), usedActions, current.type()))
-      );
+    Statistics statistics = statisticsSupplier.get();
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter("constructionPlanStoreHits", 1);
+      if (storedPlan.get().solvable()) {
+        statistics.getStructureBased().addPlanBuiltSuccessful();
+      } else {
+        statistics.getStructureBased().addPlanBuiltFailed();
+      }
+      statistics.getStructureBased()
+          .addTimeSpentBuildingPlan(ChronoUnit.MILLIS.between(startTime, Instant.now()));
+    }
+    if (!storedPlan.get().solvable()) {
+      return Optional.of(new SolveResult(Optional.empty()));
     }
+
+    List<Action> sortedActions = usedActions.get().stream().sorted(ACTION_ORDER).toList();
+    return Optional.of(new SolveResult(
+        Optional.of(new SolvingState(current.fields(), sortedActions, current.type()))
+    ));
   }
 
   public static BiFunction<CtClass<?>, Object, Optional<SolvingState>> cached(
@@ -0,0 +1,192 @@
+package se.kth.castor.pankti.codemonkey.construction.solving;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import se.kth.castor.pankti.codemonkey.construction.actions.Action;
+import spoon.reflect.declaration.CtField;
+
+/**
+ * Solves small static construction problems without Z3.
+ * <p>
+ * The problem is the one {@link ClassConstructionSolver#solveStatic()} hands to Z3: pick exactly
+ * one constructing action and any number of other actions, so that every field is handled and the
+ * summed cost is minimal. This solver tries every constructing action and finds a minimum-cost
+ * cover of the remaining fields with branch and bound: it branches on the uncovered field with the
+ * fewest candidates and prunes once the cost spent plus a lower bound of the cost still needed
+ * reaches the best known plan. A candidate that was already tried for a field is excluded from the
+ * later branches, as every cover containing it was explored in its own branch. Fields and actions
+ * are bits of a {@code long}, so problems with more than {@value #MAX_FIELDS} fields or more than
+ * {@value #MAX_ACTIONS} actions are left to Z3.
+ * <p>
+ * The lower bound lets every uncovered field pay its share of the cheapest remaining action
+ * covering it, i.e. the cost of the action divided by the number of uncovered fields it covers.
+ * Any cover pays at least these shares, unlike the sum of the cheapest action per field, which
+ * overestimates if one action covers several fields.
+ */
+final class ExactPlanSolver {
+
+  private static final int MAX_FIELDS = Long.SIZE;
+  private static final int MAX_ACTIONS = 48;
+
+  private final Map<CtField<?>, Integer> fieldIndices;
+  private final List<Action> constructing;
+  private final List<Action> others;
+  private final long[] otherMasks;
+  // For every field, the indices of the others handling it, cheapest first
+  private final int[][] othersByField;
+  private final long allFields;
+
+  private List<Action> best;
+  private int bestCost;
+
+  private ExactPlanSolver(SolvingState state) {
+    // Equality, not identity, as in the Z3 encoding
+    Map<CtField<?>, Integer> fieldIndices = new HashMap<>();
+    for (CtField<?> field : state.fields()) {
+      fieldIndices.put(field, fieldIndices.size());
+    }
+    this.allFields = fieldIndices.size() == Long.SIZE ? -1L : (1L << fieldIndices.size()) - 1;
+
+    this.constructing = new ArrayList<>();
+    this.others = new ArrayList<>();
+    for (Action action : state.actions()) {
+      (action.constructsInstance() ? constructing : others).add(action);
+    }
+    constructing.sort(Comparator.comparingInt(Action::cost));
+    others.sort(Comparator.comparingInt(Action::cost));
+
+    this.otherMasks = new long[others.size()];
+    List<List<Integer>> byField = new ArrayList<>();
+    for (int i = 0; i < fieldIndices.size(); i++) {
+      byField.add(new ArrayList<>());
+    }
+    for (int i = 0; i < others.size(); i++) {
+      otherMasks[i] = mask(others.get(i), fieldIndices);
+      for (int field = 0; field < fieldIndices.size(); field++) {
+        if ((otherMasks[i] & (1L << field)) != 0) {
+          byField.get(field).add(i);
+        }
+      }
+    }
+    this.othersByField = byField.stream()
+        .map(it -> it.stream().mapToInt(Integer::intValue).toArray())
+        .toArray(int[][]::new);
+
+    this.fieldIndices = fieldIndices;
+    this.bestCost = Integer.MAX_VALUE;
+  }
+
+  /**
+   * {@return true if the problem is small enough for this solver}
+   *
+   * @param state the state after applying all static mutations
+   */
+  static boolean canSolve(SolvingState state) {
+    return state.fields().size() <= MAX_FIELDS && state.actions().size() <= MAX_ACTIONS;
+  }
+
+  /**
+   * Finds a minimum-cost plan.
+   *
+   * @param state the state after applying all static mutations
+   * @return the chosen actions or an empty optional if there is no plan
+   */
+  static Optional<List<Action>> solve(SolvingState state) {
+    if (!canSolve(state)) {
+      throw new IllegalArgumentException("Problem too large: " + state.type().getQualifiedName());
+    }
+    return new ExactPlanSolver(state).solve();
+  }
+
+  private Optional<List<Action>> solve() {
+    for (Action constructor : constructing) {
+      if (constructor.cost() >= bestCost) {
+        // Sorted by cost, no later constructor can do better
+        break;
+      }
+      List<Action> chosen = new ArrayList<>();
+      chosen.add(constructor);
+      cover(mask(constructor, fieldIndices), 0, constructor.cost(), chosen);
+    }
+    return Optional.ofNullable(best);
+  }
+
+  /**
+   * Covers the remaining fields.
+   *
+   * @param covered the fields covered so far
+   * @param excluded the others that must not be chosen anymore
+   * @param cost the cost of the chosen actions
+   * @param chosen the chosen actions
+   */
+  private void cover(long covered, long excluded, int cost, List<Action> chosen) {
+    if (cost >= bestCost) {
+      return;
+    }
+    if ((covered & allFields) == allFields) {
+      best = List.copyOf(chosen);
+      bestCost = cost;
+      return;
+    }
+
+    // Branch on the uncovered field with the fewest candidates
+    int branchField = -1;
+    int branchCandidates = Integer.MAX_VALUE;
+    double lowerBound = 0;
+    for (int field = 0; field < othersByField.length; field++) {
+      if ((covered & (1L << field)) != 0) {
+        continue;
+      }
+      int candidates = 0;
+      double cheapestShare = Double.POSITIVE_INFINITY;
+      for (int other : othersByField[field]) {
+        if ((excluded & (1L << other)) != 0) {
+          continue;
+        }
+        candidates++;
+        double share = (double) others.get(other).cost()
+                       / Long.bitCount(otherMasks[other] & ~covered);
+        cheapestShare = Math.min(cheapestShare, share);
+      }
+      if (candidates == 0) {
+        // Nothing is left to cover this field
+        return;
+      }
+      lowerBound += cheapestShare;
+      if (candidates < branchCandidates) {
+        branchField = field;
+        branchCandidates = candidates;
+      }
+    }
+    // Costs are integers, so rounding errors can not prune a strictly cheaper plan
+    if (cost + lowerBound >= bestCost) {
+      return;
+    }
+
+    for (int other : othersByField[branchField]) {
+      if ((excluded & (1L << other)) != 0) {
+        continue;
+      }
+      chosen.add(others.get(other));
+      cover(covered | otherMasks[other], excluded, cost + others.get(other).cost(), chosen);
+      chosen.remove(chosen.size() - 1);
+      excluded |= 1L << other;
+    }
+  }
+
+  private static long mask(Action action, Map<CtField<?>, Integer> fieldIndices) {
+    long mask = 0;
+    for (CtField<?> field : action.handledFields()) {
+      Integer index = fieldIndices.get(field);
+      if (index != null) {
+        mask |= 1L << index;
+      }
+    }
+    return mask;
+  }
+
+}
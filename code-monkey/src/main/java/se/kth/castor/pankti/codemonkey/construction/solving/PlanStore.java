@@ -0,0 +1,235 @@
+package se.kth.castor.pankti.codemonkey.construction.solving;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import se.kth.castor.pankti.codemonkey.construction.actions.Action;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionCallConstructor;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionCallFactoryMethod;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionCallSetter;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionSetField;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionUseStaticFieldInstance;
+import spoon.reflect.declaration.CtField;
+
+/**
+ * Stores the static construction plans found by {@link ClassConstructionSolver#solveStatic()}, so
+ * they survive across JVMs.
+ * <p>
+ * A plan is keyed by the qualified name of the class and a hash of the solver input, i.e. the
+ * fields to construct and all candidate actions the static mutations derived from the source. A
+ * change to the class, its super classes or the enabled mutations therefore yields a new key. The
+ * plan itself is stored as the signatures of the chosen actions and is matched against the freshly
+ * derived candidates when loaded.
+ * <p>
+ * The file has one plan per line: the key, {@code +} or {@code -} for solvable or unsolvable and
+ * the signatures of the chosen actions, all separated by tabs.
+ */
+public class PlanStore {
+
+  public static final String FILE_NAME = "construction-plans.txt";
+
+  private final Path file;
+  private final Map<String, StoredPlan> plans;
+  private final AtomicBoolean dirty;
+
+  private PlanStore(Path file, Map<String, StoredPlan> plans) {
+    this.file = file;
+    this.plans = new ConcurrentHashMap<>(plans);
+    this.dirty = new AtomicBoolean(false);
+  }
+
+  /**
+   * Loads a store from disk. The file does not need to exist yet.
+   *
+   * @param file the file the plans are stored in
+   * @return the loaded store
+   * @throws IOException if the file could not be read
+   */
+  public static PlanStore load(Path file) throws IOException {
+    return new PlanStore(file, readPlans(file));
+  }
+
+  /**
+   * {@return a store that only lives in memory}
+   */
+  public static PlanStore inMemory() {
+    return new PlanStore(null, Map.of());
+  }
+
+  /**
+   * Writes all plans found since loading to disk. Plans written by other processes in the meantime
+   * are kept.
+   *
+   * @throws IOException if the file could not be written
+   */
+  public synchronized void save() throws IOException {
+    if (file == null || !dirty.getAndSet(false)) {
+      return;
+    }
+    Map<String, StoredPlan> merged = readPlans(file);
+    merged.putAll(plans);
+
+    StringBuilder result = new StringBuilder();
+    for (var entry : merged.entrySet()) {
+      result.append(entry.getKey())
+          .append('\t')
+          .append(entry.getValue().solvable() ? '+' : '-');
+      for (String action : entry.getValue().actions()) {
+        result.append('\t').append(action);
+      }
+      result.append('\n');
+    }
+
+    Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    // Replace atomically, other processes might be reading the store right now
+    Path temp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+    Files.writeString(temp, result, StandardCharsets.UTF_8);
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * {@return the number of stored plans}
+   */
+  public int size() {
+    return plans.size();
+  }
+
+  Optional<StoredPlan> get(String key) {
+    return Optional.ofNullable(plans.get(key));
+  }
+
+  void putSolved(String key, List<Action> chosenActions) {
+    put(key, new StoredPlan(true, chosenActions.stream().map(PlanStore::signature).toList()));
+  }
+
+  void putUnsolvable(String key) {
+    put(key, new StoredPlan(false, List.of()));
+  }
+
+  private void put(String key, StoredPlan plan) {
+    if (!plan.equals(plans.put(key, plan))) {
+      dirty.set(true);
+    }
+  }
+
+  /**
+   * Computes the key of a solver input.
+   *
+   * @param state the state after applying all static mutations
+   * @return the key for the plan of this state
+   */
+  @SuppressWarnings("UnstableApiUsage")
+  static String key(SolvingState state) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    state.fields().stream()
+        .map(PlanStore::fieldName)
+        .sorted()
+        .forEach(it -> hasher.putString(it, StandardCharsets.UTF_8).putByte((byte) 0));
+    hasher.putByte((byte) 1);
+    // Candidate order is not stable across JVMs, but the plan does not depend on it
+    state.actions().stream()
+        .map(PlanStore::signature)
+        .sorted()
+        .forEach(it -> hasher.putString(it, StandardCharsets.UTF_8).putByte((byte) 0));
+
+    return state.type().getQualifiedName() + "@" + hasher.hash();
+  }
+
+  /**
+   * Picks the actions of a stored plan from the freshly derived candidates.
+   *
+   * @param candidates all candidate actions
+   * @param plan the stored plan
+   * @return the chosen actions or an empty optional if the plan does not match the candidates
+   */
+  static Optional<List<Action>> chooseActions(List<Action> candidates, StoredPlan plan) {
+    Map<String, Integer> remaining = new HashMap<>();
+    for (String action : plan.actions()) {
+      remaining.merge(action, 1, Integer::sum);
+    }
+    List<Action> chosen = new ArrayList<>();
+    for (Action candidate : candidates) {
+      String signature = signature(candidate);
+      Integer count = remaining.get(signature);
+      if (count != null && count > 0) {
+        remaining.put(signature, count - 1);
+        chosen.add(candidate);
+      }
+    }
+    if (chosen.size() != plan.actions().size()) {
+      return Optional.empty();
+    }
+    return Optional.of(chosen);
+  }
+
+  private static String signature(Action action) {
+    String element = "";
+    if (action instanceof ActionCallConstructor callConstructor) {
+      element = callConstructor.constructor().getSignature();
+    } else if (action instanceof ActionCallFactoryMethod callFactoryMethod) {
+      element = callFactoryMethod.method().getSignature();
+    } else if (action instanceof ActionCallSetter callSetter) {
+      element = callSetter.setter().getSignature();
+    } else if (action instanceof ActionSetField setField) {
+      element = fieldName(setField.field());
+    } else if (action instanceof ActionUseStaticFieldInstance useStaticField) {
+      element = fieldName(useStaticField.field());
+    }
+    return action.getClass().getSimpleName()
+           + "|" + element
+           + "|" + action.cost()
+           + "|" + action.constructsInstance()
+           + "|" + action.needsInstance()
+           + "|" + action.handledFields().stream()
+               .map(PlanStore::fieldName)
+               .sorted()
+               .collect(Collectors.joining(","));
+  }
+
+  private static String fieldName(CtField<?> field) {
+    return field.getDeclaringType().getQualifiedName() + "#" + field.getSimpleName();
+  }
+
+  private static Map<String, StoredPlan> readPlans(Path file) throws IOException {
+    Map<String, StoredPlan> plans = new HashMap<>();
+    if (file == null || !Files.exists(file)) {
+      return plans;
+    }
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      String[] parts = line.split("\t");
+      if (parts.length < 2) {
+        continue;
+      }
+      plans.put(
+          parts[0],
+          new StoredPlan(parts[1].equals("+"), List.of(Arrays.copyOfRange(parts, 2, parts.length)))
+      );
+    }
+    return plans;
+  }
+
+  /**
+   * A stored plan.
+   *
+   * @param solvable whether the class can be constructed statically at all
+   * @param actions the signatures of the chosen actions
+   */
+  record StoredPlan(boolean solvable, List<String> actions) {
+
+  }
+
+}
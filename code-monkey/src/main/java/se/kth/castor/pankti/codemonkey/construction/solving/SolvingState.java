@@ -1,5 +1,6 @@
 package se.kth.castor.pankti.codemonkey.construction.solving;
 
+import com.google.common.collect.MapMaker;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -12,6 +13,7 @@ import se.kth.castor.pankti.codemonkey.construction.actions.Action;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtEnumValue;
 import spoon.reflect.declaration.CtField;
+import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtFieldReference;
 
 public record SolvingState(
@@ -20,7 +22,10 @@ public record SolvingState(
     CtClass<?> type
 ) {
 
-  private static final Map<String, Set<CtField<?>>> FIELD_CACHE = new ConcurrentHashMap<>();
+  // Per factory, as fields of the same name differ between models
+  private static final Map<Factory, Map<String, Set<CtField<?>>>> FIELD_CACHE = new MapMaker()
+      .weakKeys()
+      .makeMap();
 
   public SolvingState {
     fields = Set.copyOf(fields);
@@ -59,7 +64,10 @@ public record SolvingState(
   }
 
   public static SolvingState constructType(CtClass<?> type) {
-    Set<CtField<?>> fieldsToSolve = FIELD_CACHE.computeIfAbsent(
+    Map<String, Set<CtField<?>>> fieldCache = FIELD_CACHE.computeIfAbsent(
+        type.getFactory(), ignored -> new ConcurrentHashMap<>()
+    );
+    Set<CtField<?>> fieldsToSolve = fieldCache.computeIfAbsent(
         type.getQualifiedName(),
         name -> {
           Set<CtField<?>> fields = type.getAllFields()
@@ -0,0 +1,111 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.reference.CtTypeReference;
+
+/**
+ * Caches how fields of serialized objects are read. Every runtime class has its own table from
+ * {@link CtField} (by identity) to a resolved {@link FieldAccessor}, so the reflective and Spoon
+ * lookups happen once per class and field instead of once per object.
+ * <p>
+ * Tables are shared by all serializers and threads. Reads are lock free, new accessors are
+ * published by replacing the whole table.
+ */
+final class FieldAccessors {
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final ClassValue<FieldAccessors> TABLES = new ClassValue<>() {
+    @Override
+    protected FieldAccessors computeValue(Class<?> type) {
+      return new FieldAccessors();
+    }
+  };
+
+  private volatile Map<CtField<?>, FieldAccessor> accessors;
+
+  private FieldAccessors() {
+    this.accessors = new IdentityHashMap<>();
+  }
+
+  /**
+   * Returns the accessor for a field of an object.
+   *
+   * @param runtimeClass the runtime class of the object the field is read from
+   * @param ctField the field to read
+   * @return the accessor for the field
+   * @throws ReflectiveOperationException if the field can not be found or read
+   */
+  static FieldAccessor forField(Class<?> runtimeClass, CtField<?> ctField)
+      throws ReflectiveOperationException {
+    FieldAccessors table = TABLES.get(runtimeClass);
+    FieldAccessor accessor = table.accessors.get(ctField);
+    if (accessor != null) {
+      return accessor;
+    }
+    return table.add(ctField);
+  }
+
+  private synchronized FieldAccessor add(CtField<?> ctField) throws ReflectiveOperationException {
+    FieldAccessor existing = accessors.get(ctField);
+    if (existing != null) {
+      return existing;
+    }
+    Field field = ctField.getDeclaringType().getActualClass()
+        .getDeclaredField(ctField.getSimpleName());
+    // A bit risky, but what can you do. We only read, which makes this slightly better.
+    field.setAccessible(true);
+
+    MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+    if (Modifier.isStatic(field.getModifiers())) {
+      getter = MethodHandles.dropArguments(
+          getter.asType(MethodType.methodType(Object.class)), 0, Object.class
+      );
+    } else {
+      getter = getter.asType(GETTER_TYPE);
+    }
+    CtTypeReference<?> type = SharedTypes.resolve(ctField.getFactory(), field.getDeclaringClass())
+        .getField(field.getName())
+        .getType();
+
+    FieldAccessor accessor = new FieldAccessor(field, getter, type);
+    Map<CtField<?>, FieldAccessor> copy = new IdentityHashMap<>(accessors);
+    copy.put(ctField, accessor);
+    accessors = copy;
+    return accessor;
+  }
+
+  /**
+   * A resolved field.
+   *
+   * @param field the reflective field
+   * @param getter a getter of type {@code (Object)Object}
+   * @param type the type of the field in the Spoon model
+   */
+  record FieldAccessor(Field field, MethodHandle getter, CtTypeReference<?> type) {
+
+    /**
+     * {@return true if values of this field are always written as literals}
+     */
+    boolean isInlined() {
+      return field.getType().isPrimitive() || field.getType() == String.class;
+    }
+
+    Object read(Object instance) {
+      try {
+        return getter.invokeExact(instance);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+}
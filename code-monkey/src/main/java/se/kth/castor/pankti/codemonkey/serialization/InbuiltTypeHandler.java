@@ -0,0 +1,83 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import java.util.List;
+import se.kth.castor.pankti.codemonkey.util.SerializationFailedException;
+import spoon.reflect.code.CtExpression;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.code.CtVariableAccess;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.reference.CtTypeReference;
+
+/**
+ * Serializes objects of a type without solving how to construct them, e.g. because the type has a
+ * well known factory method. Handlers are registered in {@link InbuiltTypeHandlers}.
+ *
+ * @param <T> the handled type
+ */
+@FunctionalInterface
+public interface InbuiltTypeHandler<T> {
+
+  /**
+   * Serializes an object.
+   * <p>
+   * The returned statements must declare the variable named {@link Context#variableName()}. A
+   * handler may decline an object by returning an empty list, but only before serializing any
+   * nested values. The object is then serialized as if no handler existed.
+   *
+   * @param context the serializer the handler works for
+   * @param object the object to serialize
+   * @return the statements declaring the variable or an empty list to decline
+   * @throws SerializationFailedException if a nested value could not be serialized
+   */
+  List<CtStatement> serialize(Context context, T object) throws SerializationFailedException;
+
+  /**
+   * The serializer an {@link InbuiltTypeHandler} works for.
+   */
+  interface Context {
+
+    /**
+     * {@return the factory to create the statements with}
+     */
+    Factory factory();
+
+    /**
+     * {@return the name of the variable the handler needs to declare}
+     */
+    String variableName();
+
+    /**
+     * {@return the type the object is assigned to}
+     */
+    CtTypeReference<?> assignedType();
+
+    /**
+     * Returns a type argument of the assigned type.
+     *
+     * @param index the index of the type argument
+     * @return the type argument or {@link Object} if the assigned type has none
+     */
+    CtTypeReference<?> typeArgumentOrObject(int index);
+
+    /**
+     * Declares the variable of the handler, typed with the assigned type.
+     *
+     * @param value the value of the variable
+     * @return the declaration
+     */
+    CtStatement createVariable(CtExpression<?> value);
+
+    /**
+     * Serializes a nested value, e.g. an element of a collection. Its statements are collected by
+     * the context and must not be returned by the handler.
+     *
+     * @param name the name of the nested variable, must be unique
+     * @param type the type the nested value is assigned to
+     * @param value the nested value
+     * @return a read of the nested variable
+     * @throws SerializationFailedException if the value could not be serialized
+     */
+    CtVariableAccess<?> serializeNested(String name, CtTypeReference<?> type, Object value)
+        throws SerializationFailedException;
+  }
+}
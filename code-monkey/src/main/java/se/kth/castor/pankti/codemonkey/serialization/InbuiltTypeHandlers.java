@@ -0,0 +1,182 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import se.kth.castor.pankti.codemonkey.util.SerializationFailedException;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.reference.CtTypeReference;
+
+/**
+ * The registry of {@link InbuiltTypeHandler}s.
+ * <p>
+ * Handlers are looked up by the exact class of an object. Only the inbuilt handlers for JDK
+ * interfaces like {@link List} or {@link Map} also apply to subtypes, in the order they are
+ * registered in. A handler registered for an exact class always takes precedence over them. The
+ * handler of a class is resolved only once, so all handlers must be added before serializing.
+ */
+public final class InbuiltTypeHandlers {
+
+  private final Map<Class<?>, Builtin> exactHandlers;
+  private final List<Map.Entry<Class<?>, Builtin>> subtypeHandlers;
+  private Builtin arrayHandler;
+  private ClassValue<Optional<Builtin>> lookup;
+
+  /**
+   * Creates an empty registry. Usually you want to start with the {@link #defaults()} instead.
+   */
+  public InbuiltTypeHandlers() {
+    this.exactHandlers = new HashMap<>();
+    this.subtypeHandlers = new ArrayList<>();
+    this.lookup = newLookup();
+  }
+
+  /**
+   * {@return a registry with handlers for arrays, collections and common JDK value types}
+   */
+  public static InbuiltTypeHandlers defaults() {
+    InbuiltTypeHandlers handlers = new InbuiltTypeHandlers();
+    handlers.arrayHandler = (serializer, o) -> serializer.serializeAsArray();
+    for (Class<?> type : List.of(
+        boolean[].class, byte[].class, char[].class, short[].class, int[].class, long[].class,
+        float[].class, double[].class
+    )) {
+      handlers.exactHandlers.put(type, (serializer, o) -> serializer.serializeAsPrimitiveArray());
+    }
+    handlers.addSubtypeHandler(List.class, (serializer, o) -> serializer.serializeAsList(o));
+    handlers.addSubtypeHandler(Set.class, (serializer, o) -> serializer.serializeAsSet(o));
+    handlers.addSubtypeHandler(Queue.class, (serializer, o) -> serializer.serializeAsQueue(o));
+    handlers.addSubtypeHandler(Map.class, (serializer, o) -> serializer.serializeAsMap(o));
+    handlers.addSubtypeHandler(
+        Map.Entry.class, (serializer, o) -> serializer.serializeAsMapEntry(o)
+    );
+    handlers.addSubtypeHandler(
+        Class.class, (serializer, o) -> serializer.serializeAsClassLiteral(o)
+    );
+    handlers.addSubtypeHandler(File.class, (serializer, o) -> serializer.serializeAsFile(o));
+    handlers.addSubtypeHandler(Path.class, (serializer, o) -> serializer.serializeAsPath(o));
+    handlers.addSubtypeHandler(
+        StringBuilder.class, (serializer, o) -> serializer.serializeAsStringBuilder(o)
+    );
+    handlers.addSubtypeHandler(
+        BigDecimal.class, (serializer, o) -> serializer.serializeAsBigDecimal(o)
+    );
+    handlers.addSubtypeHandler(
+        BigInteger.class, (serializer, o) -> serializer.serializeAsBigInteger(o)
+    );
+    handlers.addSubtypeHandler(Locale.class, (serializer, o) -> serializer.serializeAsLocale(o));
+    handlers.addSubtypeHandler(
+        Optional.class, (serializer, o) -> serializer.serializeAsOptional(o)
+    );
+
+    handlers.addHandler(UUID.class, parsedFromString("fromString"));
+    for (Class<?> type : List.of(
+        Duration.class, Instant.class, LocalDate.class, LocalDateTime.class, LocalTime.class,
+        OffsetDateTime.class, Period.class, ZonedDateTime.class
+    )) {
+      handlers.addHandler(type, parsedFromString("parse"));
+    }
+    return handlers;
+  }
+
+  /**
+   * Adds a handler for exactly the given class, replacing any previous handler for it.
+   *
+   * @param type the class to handle
+   * @param handler the handler
+   * @param <T> the handled type
+   * @return this registry
+   */
+  @SuppressWarnings("unchecked")
+  public <T> InbuiltTypeHandlers addHandler(Class<T> type, InbuiltTypeHandler<? super T> handler) {
+    InbuiltTypeHandler<Object> untyped = (InbuiltTypeHandler<Object>) handler;
+    exactHandlers.put(type, (serializer, o) -> serializer.serializeWithHandler(untyped, o));
+    lookup = newLookup();
+    return this;
+  }
+
+  private void addSubtypeHandler(Class<?> type, Builtin handler) {
+    subtypeHandlers.add(Map.entry(type, handler));
+    lookup = newLookup();
+  }
+
+  /**
+   * Finds the handler for the class of an object.
+   *
+   * @param type the class of the object
+   * @return the handler, if any
+   */
+  Optional<Builtin> find(Class<?> type) {
+    return lookup.get(type);
+  }
+
+  private ClassValue<Optional<Builtin>> newLookup() {
+    return new ClassValue<>() {
+      @Override
+      protected Optional<Builtin> computeValue(Class<?> type) {
+        Builtin exact = exactHandlers.get(type);
+        if (exact != null) {
+          return Optional.of(exact);
+        }
+        if (type.isArray()) {
+          return Optional.ofNullable(arrayHandler);
+        }
+        for (Map.Entry<Class<?>, Builtin> entry : subtypeHandlers) {
+          if (entry.getKey().isAssignableFrom(type)) {
+            return Optional.of(entry.getValue());
+          }
+        }
+        return Optional.empty();
+      }
+    };
+  }
+
+  /**
+   * Creates a handler calling a static factory method that parses the string representation.
+   *
+   * @param methodName the name of the static method
+   * @return the handler
+   */
+  private static InbuiltTypeHandler<Object> parsedFromString(String methodName) {
+    return (context, object) -> {
+      Factory factory = context.factory();
+      CtTypeReference<?> typeRef = factory.createCtTypeReference(object.getClass());
+      return List.of(context.createVariable(factory.createInvocation(
+          factory.createTypeAccess(typeRef),
+          factory.createExecutableReference()
+              .setDeclaringType(typeRef)
+              .setSimpleName(methodName),
+          factory.createLiteral(object.toString())
+      )));
+    };
+  }
+
+  /**
+   * A handler with access to the internals of the serializer.
+   */
+  interface Builtin {
+
+    List<CtStatement> serialize(SerializerImpl serializer, Object object)
+        throws SerializationFailedException;
+  }
+
+}
@@ -0,0 +1,108 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Encodes primitive arrays in bulk instead of one variable per element.
+ * <p>
+ * Short arrays become an array initializer with literal elements. Longer ones are stored as a
+ * Base64 string of their big-endian bytes, which a {@link ByteBuffer} view copies back into the
+ * array. Booleans have no buffer view, they are stored as one byte each and copied back in a loop.
+ * The string has to fit into a single class file constant, arrays whose encoding would not are not
+ * encodable.
+ */
+public final class PrimitiveArrays {
+
+  static final int MAX_INLINE_LENGTH = 64;
+  // Base64 needs 4 characters per 3 bytes, a string constant can have at most 65535 bytes
+  private static final int MAX_ENCODED_BYTES = 48_000;
+
+  private PrimitiveArrays() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  /**
+   * {@return true if the object is a primitive array that can be encoded in bulk}
+   *
+   * @param object the object to check
+   */
+  public static boolean canEncode(Object object) {
+    Class<?> componentType = object.getClass().getComponentType();
+    if (componentType == null || !componentType.isPrimitive()) {
+      return false;
+    }
+    int length = Array.getLength(object);
+    if (length <= MAX_INLINE_LENGTH) {
+      return true;
+    }
+    return (long) length * byteSize(componentType) <= MAX_ENCODED_BYTES;
+  }
+
+  /**
+   * {@return true if the array is short enough for an initializer with literal elements}
+   *
+   * @param array the primitive array
+   */
+  static boolean isInline(Object array) {
+    return Array.getLength(array) <= MAX_INLINE_LENGTH;
+  }
+
+  /**
+   * {@return the big-endian bytes of an encodable array as Base64, one byte per boolean}
+   *
+   * @param array the primitive array
+   */
+  static String toBase64(Object array) {
+    ByteBuffer buffer = ByteBuffer.allocate(
+        Array.getLength(array) * byteSize(array.getClass().getComponentType())
+    );
+    if (array instanceof byte[] values) {
+      buffer.put(values);
+    } else if (array instanceof boolean[] values) {
+      for (boolean value : values) {
+        buffer.put((byte) (value ? 1 : 0));
+      }
+    } else if (array instanceof short[] values) {
+      buffer.asShortBuffer().put(values);
+    } else if (array instanceof char[] values) {
+      buffer.asCharBuffer().put(values);
+    } else if (array instanceof int[] values) {
+      buffer.asIntBuffer().put(values);
+    } else if (array instanceof long[] values) {
+      buffer.asLongBuffer().put(values);
+    } else if (array instanceof float[] values) {
+      buffer.asFloatBuffer().put(values);
+    } else if (array instanceof double[] values) {
+      buffer.asDoubleBuffer().put(values);
+    } else {
+      throw new IllegalArgumentException("Not encodable as bytes: " + array.getClass());
+    }
+    return Base64.getEncoder().encodeToString(buffer.array());
+  }
+
+  /**
+   * {@return the name of the {@link ByteBuffer} method viewing the bytes as the component type}
+   *
+   * @param componentType the component type of a non-byte, non-boolean array
+   */
+  static String bufferView(Class<?> componentType) {
+    String name = componentType.getName();
+    return "as" + Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Buffer";
+  }
+
+  private static int byteSize(Class<?> componentType) {
+    if (componentType == byte.class || componentType == boolean.class) {
+      return Byte.BYTES;
+    }
+    if (componentType == short.class || componentType == char.class) {
+      return Short.BYTES;
+    }
+    if (componentType == int.class || componentType == float.class) {
+      return Integer.BYTES;
+    }
+    return Long.BYTES;
+  }
+
+}
@@ -0,0 +1,45 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import se.kth.castor.pankti.codemonkey.util.BudgetExhaustedException;
+
+/**
+ * Limits the work spent on serializing a single object graph. The limits are checked whenever the
+ * serializer reaches a new object. If any of them is exceeded, the whole graph fails with a
+ * {@link BudgetExhaustedException} instead of producing a partial snippet.
+ *
+ * @param maxObjects the maximum number of non-primitive objects in the graph
+ * @param maxDepth the maximum nesting depth, the root has depth 0
+ * @param maxCollectionLength the maximum number of elements in a single collection or map.
+ *     Primitive arrays encoded as a single Base64 constant are only bounded by the constant's size.
+ * @param maxMillis the maximum wall time in milliseconds
+ */
+public record SerializationBudget(
+    int maxObjects,
+    int maxDepth,
+    int maxCollectionLength,
+    long maxMillis
+) {
+
+  public SerializationBudget {
+    if (maxObjects <= 0 || maxDepth <= 0 || maxCollectionLength < 0 || maxMillis <= 0) {
+      throw new IllegalArgumentException("Budget limits must be positive");
+    }
+  }
+
+  /**
+   * {@return limits generous enough for regular objects, but cutting off pathological graphs}
+   */
+  public static SerializationBudget defaults() {
+    return new SerializationBudget(10_000, 256, 10_000, 5_000);
+  }
+
+  /**
+   * {@return a budget that never runs out}
+   */
+  public static SerializationBudget unlimited() {
+    return new SerializationBudget(
+        Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE
+    );
+  }
+
+}
@@ -4,10 +4,15 @@ import java.lang.reflect.Field;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import se.kth.castor.pankti.codemonkey.construction.solving.SolvingState;
@@ -22,18 +27,49 @@ import spoon.reflect.reference.CtTypeReference;
 
 public class Serializer {
 
-  private final Factory factory;
+  private final SharedTypes types;
   private final BiFunction<CtClass<?>, Object, Optional<SolvingState>> solverFactory;
   private final UnknownActionHandler unknownActionHandler;
+  private final InbuiltTypeHandlers handlers;
+  private final SerializationBudget budget;
 
   public Serializer(
       Factory factory,
       BiFunction<CtClass<?>, Object, Optional<SolvingState>> solverFactory,
       UnknownActionHandler unknownActionHandler
   ) {
-    this.factory = factory;
+    this(
+        factory,
+        solverFactory,
+        unknownActionHandler,
+        InbuiltTypeHandlers.defaults(),
+        SerializationBudget.unlimited()
+    );
+  }
+
+  /**
+   * Creates a serializer with custom inbuilt type handlers, whose object graphs must stay within a
+   * budget. Graphs exceeding it fail with a
+   * {@link se.kth.castor.pankti.codemonkey.util.BudgetExhaustedException}.
+   *
+   * @param factory the factory of the model containing the serialized types
+   * @param solverFactory solves the construction of a class
+   * @param unknownActionHandler handles actions the serializer does not know
+   * @param handlers serialize objects of inbuilt types without solving their construction
+   * @param budget the budget of every serialized object graph
+   */
+  public Serializer(
+      Factory factory,
+      BiFunction<CtClass<?>, Object, Optional<SolvingState>> solverFactory,
+      UnknownActionHandler unknownActionHandler,
+      InbuiltTypeHandlers handlers,
+      SerializationBudget budget
+  ) {
+    this.types = new SharedTypes(factory);
     this.unknownActionHandler = unknownActionHandler;
+    this.handlers = handlers;
     this.solverFactory = solverFactory;
+    this.budget = budget;
   }
 
   public Serialized serialize(
@@ -55,13 +91,15 @@ public class Serializer {
     Instant start = Instant.now();
     Serialized serialized = new SerializerImpl(
         statistics,
-        factory,
+        types,
         solverFactory,
         resultVariableName,
         namingFunction,
         unknownActionHandler,
+        handlers,
         targetType,
-        object
+        object,
+        budget
     ).serialize();
     if (statistics != null) {
       statistics.getMixed()
@@ -70,6 +108,50 @@ public class Serializer {
     return serialized;
   }
 
+  /**
+   * Serializes many objects in parallel.
+   * <p>
+   * Every object gets its own AST builder and naming function, so the returned statements of
+   * different objects share no nodes and can be used independently. Only the resolved types and
+   * construction plans are shared between the workers.
+   *
+   * @param statistics the statistics to record to, may be null
+   * @param requests the objects to serialize
+   * @param pool the pool to serialize on
+   * @return the serialized objects, in the order of the requests
+   * @throws SerializationFailedException if any object could not be serialized
+   */
+  public List<Serialized> serializeAll(
+      Statistics statistics,
+      List<SerializationRequest> requests,
+      ForkJoinPool pool
+  ) throws SerializationFailedException {
+    List<ForkJoinTask<Serialized>> tasks = requests.stream()
+        .<ForkJoinTask<Serialized>>map(request -> pool.submit(() -> serialize(
+            statistics, request.object(), request.resultVariableName(), request.targetType()
+        )))
+        .toList();
+
+    List<Serialized> result = new ArrayList<>();
+    for (ForkJoinTask<Serialized> task : tasks) {
+      try {
+        result.add(task.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof SerializationFailedException cause) {
+          throw cause;
+        }
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+    return result;
+  }
+
   @SuppressWarnings({"unchecked"})
   public static Serialized handleNullOrPrimitiveOrString(
       Factory factory,
@@ -97,11 +179,15 @@ public class Serializer {
 
   public static Function<Field, String> namingUseFieldName() {
     Set<String> dispensedNames = new HashSet<>();
+    // Resume at the last suffix, restarting at 0 would make n equally named fields quadratic
+    Map<String, Integer> nextSuffixes = new HashMap<>();
     return field -> {
       String name = field.getName();
-      for (int i = 0; !dispensedNames.add(name); i++) {
-        name = field.getName() + i;
+      int i = nextSuffixes.getOrDefault(field.getName(), 0);
+      while (!dispensedNames.add(name)) {
+        name = field.getName() + i++;
       }
+      nextSuffixes.put(field.getName(), i);
       return name;
     };
   }
@@ -110,4 +196,12 @@ public class Serializer {
 
   }
 
+  public record SerializationRequest(
+      Object object,
+      String resultVariableName,
+      CtTypeReference<?> targetType
+  ) {
+
+  }
+
 }
@@ -22,6 +22,7 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -34,7 +35,11 @@ import se.kth.castor.pankti.codemonkey.construction.actions.ActionSetField;
 import se.kth.castor.pankti.codemonkey.construction.actions.ActionUseEnumConstant;
 import se.kth.castor.pankti.codemonkey.construction.actions.ActionUseStaticFieldInstance;
 import se.kth.castor.pankti.codemonkey.construction.solving.SolvingState;
+import se.kth.castor.pankti.codemonkey.serialization.FieldAccessors.FieldAccessor;
 import se.kth.castor.pankti.codemonkey.serialization.Serializer.Serialized;
+import se.kth.castor.pankti.codemonkey.util.ArrayTooLargeException;
+import se.kth.castor.pankti.codemonkey.util.BudgetExhaustedException;
+import se.kth.castor.pankti.codemonkey.util.BudgetExhaustedException.Limit;
 import se.kth.castor.pankti.codemonkey.util.ClassUtil;
 import se.kth.castor.pankti.codemonkey.util.InheritanceUtil;
 import se.kth.castor.pankti.codemonkey.util.SerializationFailedException;
@@ -56,22 +61,27 @@ import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtEnumValue;
 import spoon.reflect.declaration.CtField;
 import spoon.reflect.declaration.CtPackage;
+import spoon.reflect.declaration.CtMethod;
 import spoon.reflect.declaration.CtParameter;
+import spoon.reflect.declaration.CtType;
 import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtTypeReference;
-import spoon.support.adaption.TypeAdaptor;
 
 @SuppressWarnings({"rawtypes", "unchecked"})
-final class SerializerImpl {
+final class SerializerImpl implements InbuiltTypeHandler.Context {
 
   private final Factory factory;
+  private final SharedTypes types;
   private final BiFunction<CtClass<?>, Object, Optional<SolvingState>> solverFactory;
 
   private final List<CtStatement> statements;
-  private final IdentityHashMap<Object, String> complexValueNameMap;
+  private final ComplexValueNames complexValueNames;
+  private final BudgetTracker budget;
+  private final int depth;
   private final Function<Field, String> namingFunction;
   private final String myVariableName;
   private final UnknownActionHandler unknownActionHandler;
+  private final InbuiltTypeHandlers handlers;
   private final Statistics statistics;
 
   private CtTypeReference<?> assignedType;
@@ -80,46 +90,56 @@ final class SerializerImpl {
 
   public SerializerImpl(
       Statistics statistics,
-      Factory factory,
+      SharedTypes types,
       BiFunction<CtClass<?>, Object, Optional<SolvingState>> solverFactory,
       String myVariableName,
       Function<Field, String> namingFunction,
       UnknownActionHandler unknownActionHandler,
+      InbuiltTypeHandlers handlers,
       CtTypeReference<?> assignedType,
-      Object object
+      Object object,
+      SerializationBudget budget
   ) {
     this(
         statistics,
-        factory,
+        types,
         solverFactory,
         myVariableName,
         namingFunction,
         unknownActionHandler,
+        handlers,
         assignedType,
         object,
-        new IdentityHashMap<>()
+        new ComplexValueNames(),
+        new BudgetTracker(budget),
+        0
     );
   }
 
   private SerializerImpl(
       Statistics statistics,
-      Factory factory,
+      SharedTypes types,
       BiFunction<CtClass<?>, Object, Optional<SolvingState>> solverFactory,
       String myVariableName,
       Function<Field, String> namingFunction,
       UnknownActionHandler unknownActionHandler,
+      InbuiltTypeHandlers handlers,
       CtTypeReference<?> assignedType,
       Object object,
-      IdentityHashMap<Object, String> complexValueNameMap
+      ComplexValueNames complexValueNames,
+      BudgetTracker budget,
+      int depth
   ) {
     this.statistics = statistics;
-    this.factory = factory;
+    this.factory = types.factory();
+    this.types = types;
     this.solverFactory = solverFactory;
     this.myVariableName = myVariableName;
     this.namingFunction = namingFunction;
     this.unknownActionHandler = unknownActionHandler;
+    this.handlers = handlers;
     this.object = object;
-    this.objectClass = object == null ? null : factory.Class().get(object.getClass());
+    this.objectClass = object == null ? null : types.classOf(object.getClass());
     if (isAnonymous(assignedType)) {
       this.assignedType = typeVarToRawtype(
           assignedTypeFromAnonymousType(assignedType).setImplicit(false)
@@ -128,7 +148,9 @@ final class SerializerImpl {
       this.assignedType = typeVarToRawtype(assignedType);
     }
     this.statements = new ArrayList<>();
-    this.complexValueNameMap = complexValueNameMap;
+    this.complexValueNames = complexValueNames;
+    this.budget = budget;
+    this.depth = depth;
   }
 
   private static boolean isAnonymous(CtTypeReference<?> assignedType) {
@@ -143,23 +165,46 @@ final class SerializerImpl {
   }
 
   private CtTypeReference<?> assignedTypeFromAnonymousType(CtTypeReference<?> type) {
-    if (type.getSuperclass() != null) {
-      CtTypeReference<?> newType = type.getSuperclass();
-      newType.setActualTypeArguments(type.getActualTypeArguments());
+    // Both are shared with the model and other threads, only modify copies
+    List<CtTypeReference<?>> typeArguments = type.getActualTypeArguments()
+        .stream()
+        .<CtTypeReference<?>>map(CtTypeReference::clone)
+        .toList();
+    CtTypeReference<?> superclass = types.locked(type::getSuperclass);
+    if (superclass != null) {
+      CtTypeReference<?> newType = superclass.clone();
+      newType.setActualTypeArguments(typeArguments);
       return newType;
     }
-    if (type.getSuperInterfaces().size() == 1) {
-      CtTypeReference<?> newType = type.getSuperInterfaces().iterator().next();
-      newType.setActualTypeArguments(type.getActualTypeArguments());
+    Set<CtTypeReference<?>> superInterfaces = types.locked(type::getSuperInterfaces);
+    if (superInterfaces.size() == 1) {
+      CtTypeReference<?> newType = superInterfaces.iterator().next().clone();
+      newType.setActualTypeArguments(typeArguments);
       return newType;
     }
     throw new IllegalStateException(
         "Anonymous type '" + type + "' has no superclass and the following interfaces: "
-        + type.getSuperInterfaces()
+        + superInterfaces
     );
   }
 
-  private CtTypeReference<?> typeArgumentOrObject(int index) {
+  @Override
+  public Factory factory() {
+    return factory;
+  }
+
+  @Override
+  public String variableName() {
+    return myVariableName;
+  }
+
+  @Override
+  public CtTypeReference<?> assignedType() {
+    return assignedType;
+  }
+
+  @Override
+  public CtTypeReference<?> typeArgumentOrObject(int index) {
     return index < assignedType.getActualTypeArguments().size()
         ? assignedType.getActualTypeArguments().get(index)
         : factory.Type().objectType();
@@ -190,6 +235,10 @@ final class SerializerImpl {
       }
       throw new SolveFailedException(object.getClass(), objectClass);
     }
+    Limit exceeded = budget.enterObject(depth);
+    if (exceeded != null) {
+      throw budgetExhausted(exceeded);
+    }
 
     List<CtStatement> asInbuilt = serializeAsInbuiltType();
     if (!asInbuilt.isEmpty()) {
@@ -199,6 +248,8 @@ final class SerializerImpl {
       return new Serialized(asInbuilt, assignedType);
     }
 
+    // Solving inspects fields and supertypes of the class, resolve them up front
+    types.prepareForSolving(objectClass);
     Optional<SolvingState> solvingState = solverFactory.apply(objectClass, object);
 
     if (solvingState.isEmpty()) {
@@ -208,18 +259,18 @@ final class SerializerImpl {
       throw new SolveFailedException(object.getClass(), objectClass);
     }
 
-    assignedType = InheritanceUtil.findLeastSpecificTypeOrInitial(
-        objectClass,
-        assignedType,
-        solvingState.get().actions().stream()
-            .filter(it -> it instanceof ActionCallSetter)
-            .map(it -> ((ActionCallSetter) it).setter())
-            .collect(Collectors.toSet()),
-        solvingState.get().actions().stream()
-            .filter(it -> it instanceof ActionSetField)
-            .map(it -> ((ActionSetField) it).field())
-            .collect(Collectors.toSet())
-    );
+    Set<CtMethod<?>> setters = solvingState.get().actions().stream()
+        .filter(it -> it instanceof ActionCallSetter)
+        .map(it -> ((ActionCallSetter) it).setter())
+        .collect(Collectors.toSet());
+    Set<CtField<?>> setFields = solvingState.get().actions().stream()
+        .filter(it -> it instanceof ActionSetField)
+        .map(it -> ((ActionSetField) it).field())
+        .collect(Collectors.toSet());
+    CtTypeReference<?> bound = assignedType;
+    assignedType = types.locked(() -> InheritanceUtil.findLeastSpecificTypeOrInitial(
+        objectClass, bound, setters, setFields
+    ));
 
     boolean serializedUsingDynamicFeature = false;
 
@@ -266,114 +317,192 @@ final class SerializerImpl {
     return new Serialized(statements, assignedType);
   }
 
+  private BudgetExhaustedException budgetExhausted(Limit limit) {
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter(limit.getCounterName(), 1);
+      statistics.getMixed().addFailed(object.getClass());
+    }
+    return new BudgetExhaustedException(limit, object.getClass(), objectClass);
+  }
+
   private boolean isBlacklistedClass() {
     String name = object.getClass().getName();
     return name.startsWith("org.hibernate.collection");
   }
 
   private List<CtStatement> serializeAsInbuiltType() throws SerializationFailedException {
-    if (object.getClass().isArray()) {
-      return serializeAsArray();
-    }
-    if (object instanceof List<?> list && object.getClass().getDeclaringClass() != null) {
-      if (object.getClass()
-          .getDeclaringClass()
-          .getName()
-          .equals("java.util.ImmutableCollections")) {
-        return serializeAsImmutableList(list);
-      }
-    }
-    if (object instanceof List<?> list) {
-      return serializeAsList(list);
+    Optional<InbuiltTypeHandlers.Builtin> handler = handlers.find(object.getClass());
+    if (handler.isEmpty()) {
+      return List.of();
     }
-    if (object instanceof Set<?> set) {
-      return serializeAsSet(set);
-    }
-    if (object instanceof Queue<?> queue) {
-      return serializeAsQueue(queue);
+    return handler.get().serialize(this, object);
+  }
+
+  List<CtStatement> serializeWithHandler(InbuiltTypeHandler<Object> handler, Object object)
+      throws SerializationFailedException {
+    List<CtStatement> own = handler.serialize(this, object);
+    if (own.isEmpty()) {
+      return List.of();
     }
-    if (object instanceof Map<?, ?> map) {
-      return serializeAsMap(map);
+    // Nested values are already part of our statements
+    statements.addAll(own);
+    return statements;
+  }
+
+  List<CtStatement> serializeAsClassLiteral(Object object) {
+    Class<?> clazz = (Class<?>) object;
+    if (clazz.isSynthetic()) {
+      return List.of();
     }
-    if (object instanceof Map.Entry<?, ?> entry) {
-      return serializeAsMapEntry(entry);
+    return List.of(createMyVariable(
+        getClassLiteral(factory, factory.createCtTypeReference(clazz))
+    ));
+  }
+
+  List<CtStatement> serializeAsFile(Object object) {
+    File file = (File) object;
+    return List.of(createMyVariable(factory.createConstructorCall(
+        factory.createCtTypeReference(File.class),
+        factory.createLiteral(file.getPath())
+    )));
+  }
+
+  List<CtStatement> serializeAsPath(Object object) {
+    CtTypeReference<?> pathRef = factory.createCtTypeReference(Path.class);
+    assignedType = pathRef;
+    return List.of(createMyVariable(
+        factory.createInvocation(
+            factory.createTypeAccess(pathRef),
+            factory.createExecutableReference()
+                .setDeclaringType(pathRef)
+                .setSimpleName("of"),
+            factory.createLiteral(object.toString())
+        ))
+    );
+  }
+
+  List<CtStatement> serializeAsStringBuilder(Object object) {
+    return List.of(createMyVariable(
+        factory.createConstructorCall(
+            factory.createCtTypeReference(StringBuilder.class),
+            factory.createLiteral(object.toString())
+        )
+    ));
+  }
+
+  List<CtStatement> serializeAsBigDecimal(Object object) {
+    return List.of(createMyVariable(factory.createConstructorCall(
+        factory.createCtTypeReference(BigDecimal.class),
+        factory.createLiteral(object.toString())
+    )));
+  }
+
+  List<CtStatement> serializeAsBigInteger(Object object) {
+    return List.of(createMyVariable(factory.createConstructorCall(
+        factory.createCtTypeReference(BigInteger.class),
+        factory.createLiteral(object.toString())
+    )));
+  }
+
+  List<CtStatement> serializeAsLocale(Object object) {
+    Locale locale = (Locale) object;
+    return List.of(createMyVariable(factory.createConstructorCall(
+        factory.createCtTypeReference(Locale.class),
+        factory.createLiteral(locale.getLanguage()),
+        factory.createLiteral(locale.getCountry()),
+        factory.createLiteral(locale.getVariant())
+    )));
+  }
+
+  List<CtStatement> serializeAsOptional(Object object) throws SerializationFailedException {
+    Optional<?> optional = (Optional<?>) object;
+    if (optional.isEmpty()) {
+      return serializeWithArgumentsList(
+          assignedType,
+          typeArgumentOrObject(0),
+          "java.util.Optional.empty()",
+          List.of()
+      );
     }
-    if (object instanceof Class<?> clazz && !clazz.isSynthetic()) {
-      return List.of(createMyVariable(
-          getClassLiteral(factory, factory.createCtTypeReference(clazz))
-      ));
+    return serializeWithArgumentsList(
+        assignedType,
+        typeArgumentOrObject(0),
+        "java.util.Optional.of({args})",
+        List.of(optional.get())
+    );
+  }
+
+  List<CtStatement> serializeAsPrimitiveArray() throws SerializationFailedException {
+    // Element-wise serialization would truncate the array, so fail the whole graph instead
+    if (!PrimitiveArrays.canEncode(object)) {
+      if (statistics != null) {
+        statistics.getGeneral().addToCounter("serializationFailedArrayTooLarge", 1);
+        statistics.getMixed().addFailed(object.getClass());
+      }
+      throw new ArrayTooLargeException(Array.getLength(object), object.getClass(), objectClass);
     }
-    if (object instanceof File file) {
-      return List.of(createMyVariable(factory.createConstructorCall(
-          factory.createCtTypeReference(File.class),
-          factory.createLiteral(file.getPath())
-      )));
+    int length = Array.getLength(object);
+    CtTypeReference<?> arrayType = factory.createCtTypeReference(object.getClass());
+
+    if (PrimitiveArrays.isInline(object)) {
+      // Encoded arrays are bounded by the constant size, only inline ones grow per element
+      if (length > budget.limits().maxCollectionLength()) {
+        throw budgetExhausted(Limit.COLLECTION_LENGTH);
+      }
+      List<CtExpression<?>> elements = new ArrayList<>();
+      for (int i = 0; i < length; i++) {
+        elements.add(SpoonUtil.getLiteral(factory, Array.get(object, i)));
+      }
+      CtNewArray newArray = factory.createNewArray();
+      newArray.setType(arrayType);
+      newArray.setElements(elements);
+      statements.add(createMyVariable(newArray));
+      return statements;
     }
-    if (object instanceof Path path) {
-      CtTypeReference<?> pathRef = factory.createCtTypeReference(Path.class);
-      assignedType = pathRef;
-      return List.of(createMyVariable(
-          factory.createInvocation(
-              factory.createTypeAccess(pathRef),
-              factory.createExecutableReference()
-                  .setDeclaringType(pathRef)
-                  .setSimpleName("of"),
-              factory.createLiteral(path.toString())
-          ))
-      );
+
+    String decoded = "java.util.Base64.getDecoder().decode(\"%s\")"
+        .formatted(PrimitiveArrays.toBase64(object));
+    if (object instanceof byte[]) {
+      statements.add(createMyVariable(factory.createCodeSnippetExpression(decoded)));
+      return statements;
     }
-    if (object instanceof StringBuilder) {
-      return List.of(createMyVariable(
-          factory.createConstructorCall(
-              factory.createCtTypeReference(StringBuilder.class),
-              factory.createLiteral(object.toString())
+    // Views of byte buffers can not return an array, they have to copy into one
+    Class<?> componentType = object.getClass().getComponentType();
+    String arrayName = assignedType.equals(arrayType) ? myVariableName : myVariableName + "_values";
+    statements.add(factory.Code().createLocalVariable(
+        arrayType,
+        arrayName,
+        factory.createCodeSnippetExpression("new %s[%d]".formatted(componentType.getName(), length))
+    ));
+    if (object instanceof boolean[]) {
+      String bytesName = arrayName + "_bytes";
+      String indexName = arrayName + "_index";
+      statements.add(factory.createCodeSnippetStatement(
+          "byte[] %s = %s".formatted(bytesName, decoded)
+      ));
+      statements.add(factory.createCodeSnippetStatement(
+          "for (int %1$s = 0; %1$s < %2$s.length; %1$s++) %2$s[%1$s] = %3$s[%1$s] != 0".formatted(
+              indexName, arrayName, bytesName
+          )
+      ));
+    } else {
+      statements.add(factory.createCodeSnippetStatement(
+          "java.nio.ByteBuffer.wrap(%s).%s().get(%s)".formatted(
+              decoded, PrimitiveArrays.bufferView(componentType), arrayName
           )
       ));
     }
-    if (object instanceof BigDecimal decimal) {
-      return List.of(createMyVariable(factory.createConstructorCall(
-          factory.createCtTypeReference(BigDecimal.class),
-          factory.createLiteral(decimal.toString())
-      )));
-    }
-    if (object instanceof BigInteger integer) {
-      return List.of(createMyVariable(factory.createConstructorCall(
-          factory.createCtTypeReference(BigInteger.class),
-          factory.createLiteral(integer.toString())
-      )));
-    }
-    if (object instanceof Locale locale) {
-      return List.of(createMyVariable(factory.createConstructorCall(
-          factory.createCtTypeReference(Locale.class),
-          factory.createLiteral(locale.getLanguage()),
-          factory.createLiteral(locale.getCountry()),
-          factory.createLiteral(locale.getVariant())
+    if (!arrayName.equals(myVariableName)) {
+      statements.add(createMyVariable(factory.createVariableRead(
+          factory.createLocalVariableReference(arrayType, arrayName),
+          false
       )));
     }
-    if (object instanceof Optional<?> optional) {
-      if (optional.isEmpty()) {
-        return serializeWithArgumentsList(
-            assignedType,
-            typeArgumentOrObject(0),
-            "java.util.Optional.empty()",
-            List.of()
-        );
-      } else {
-        return serializeWithArgumentsList(
-            assignedType,
-            typeArgumentOrObject(0),
-            "java.util.Optional.of({args})",
-            List.of(optional.get())
-        );
-      }
-    }
-
-    return List.of();
+    return statements;
   }
 
-  private List<CtStatement> serializeAsArray() throws SerializationFailedException {
-    CtTypeReference<?> innerType = factory.Type()
-        .get(object.getClass().getComponentType())
+  List<CtStatement> serializeAsArray() throws SerializationFailedException {
+    CtTypeReference<?> innerType = types.get(object.getClass().getComponentType())
         .getReference();
 
     List<Object> values = new ArrayList<>();
@@ -408,6 +537,9 @@ final class SerializerImpl {
       CtTypeReference<?> componentType,
       List<?> entries
   ) throws SerializationFailedException {
+    if (entries.size() > budget.limits().maxCollectionLength()) {
+      throw budgetExhausted(Limit.COLLECTION_LENGTH);
+    }
     List<CtVariableAccess<?>> reads = new ArrayList<>();
 
     for (int i = 0; i < entries.size(); i++) {
@@ -432,14 +564,17 @@ final class SerializerImpl {
     statements.addAll(
         new SerializerImpl(
             statistics,
-            factory,
+            types,
             solverFactory,
             name,
             namingFunction,
             unknownActionHandler,
+            handlers,
             componentType,
             value,
-            complexValueNameMap
+            complexValueNames,
+            budget,
+            depth + 1
         )
             .serialize()
             .statements()
@@ -448,18 +583,20 @@ final class SerializerImpl {
     return read;
   }
 
-  private List<CtStatement> serializeAsList(List<?> elements) throws SerializationFailedException {
+  List<CtStatement> serializeAsList(Object object) throws SerializationFailedException {
+    List<?> elements = (List<?>) object;
+    if (object.getClass().getDeclaringClass() != null
+        && object.getClass()
+        .getDeclaringClass()
+        .getName()
+        .equals("java.util.ImmutableCollections")) {
+      return serializeAsImmutableList(elements);
+    }
     CtTypeReference<?> listTypeRef = implementingCollection(List.class, ArrayList.class);
     if (listTypeRef.getQualifiedName().endsWith(".support.util.EmptyClearableList")) {
       listTypeRef = factory.createCtTypeReference(ArrayList.class);
     }
-    String listType = listTypeRef.getQualifiedName();
-    if (listTypeRef.getTypeDeclaration() != null &&
-        listTypeRef.getTypeDeclaration().getFormalCtTypeParameters().isEmpty()) {
-      listType += "";
-    } else {
-      listType += "<>";
-    }
+    String listType = withDiamond(listTypeRef);
 
     return serializeWithArgumentsList(
         assignedType,
@@ -469,15 +606,10 @@ final class SerializerImpl {
     );
   }
 
-  private List<CtStatement> serializeAsSet(Set<?> elements) throws SerializationFailedException {
+  List<CtStatement> serializeAsSet(Object object) throws SerializationFailedException {
+    Set<?> elements = (Set<?>) object;
     CtTypeReference<?> setTypeRef = implementingCollection(Set.class, HashSet.class);
-    String setType = setTypeRef.getQualifiedName();
-    if (setTypeRef.getTypeDeclaration() != null &&
-        setTypeRef.getTypeDeclaration().getFormalCtTypeParameters().isEmpty()) {
-      setType += "";
-    } else {
-      setType += "<>";
-    }
+    String setType = withDiamond(setTypeRef);
 
     return serializeWithArgumentsList(
         assignedType,
@@ -487,16 +619,10 @@ final class SerializerImpl {
     );
   }
 
-  private List<CtStatement> serializeAsQueue(Queue<?> elements)
-      throws SerializationFailedException {
+  List<CtStatement> serializeAsQueue(Object object) throws SerializationFailedException {
+    Queue<?> elements = (Queue<?>) object;
     CtTypeReference<?> queueTypeRef = implementingCollection(Queue.class, ArrayDeque.class);
-    String queueType = queueTypeRef.getQualifiedName();
-    if (queueTypeRef.getTypeDeclaration() != null &&
-        queueTypeRef.getTypeDeclaration().getFormalCtTypeParameters().isEmpty()) {
-      queueType += "";
-    } else {
-      queueType += "<>";
-    }
+    String queueType = withDiamond(queueTypeRef);
 
     return serializeWithArgumentsList(
         assignedType,
@@ -506,15 +632,10 @@ final class SerializerImpl {
     );
   }
 
-  private List<CtStatement> serializeAsMap(Map<?, ?> elements) throws SerializationFailedException {
+  List<CtStatement> serializeAsMap(Object object) throws SerializationFailedException {
+    Map<?, ?> elements = (Map<?, ?>) object;
     CtTypeReference<?> mapTypeRef = implementingCollection(Map.class, HashMap.class);
-    String mapType = mapTypeRef.getQualifiedName();
-    if (mapTypeRef.getTypeDeclaration() != null &&
-        mapTypeRef.getTypeDeclaration().getFormalCtTypeParameters().isEmpty()) {
-      mapType += "";
-    } else {
-      mapType += "<>";
-    }
+    String mapType = withDiamond(mapTypeRef);
 
     // Some collections do not implement `toArray()`. This method is used by the ArrayList
     // constructor and Collections#addAll though. Therefore, we manually perform the loop here...
@@ -536,22 +657,30 @@ final class SerializerImpl {
     );
   }
 
+  private String withDiamond(CtTypeReference<?> typeRef) {
+    CtType<?> declaration = types.declarationOf(typeRef);
+    if (declaration != null && declaration.getFormalCtTypeParameters().isEmpty()) {
+      return typeRef.getQualifiedName();
+    }
+    return typeRef.getQualifiedName() + "<>";
+  }
+
   private <T> CtTypeReference<?> implementingCollection(
       Class<T> targetClass, Class<? extends T> defaultType
   ) {
     CtTypeReference<?> targetRef = factory.createCtTypeReference(targetClass);
-    if (isAccessible(objectClass) && TypeAdaptor.isSubtype(objectClass, targetRef)) {
+    if (isAccessible(objectClass) && types.isSubtype(objectClass, targetRef)) {
       return objectClass.getReference();
     }
-    if (!assignedType.isInterface() &&
-        TypeAdaptor.isSubtype(assignedType.getTypeDeclaration(), targetRef)) {
+    if (!types.locked(assignedType::isInterface) &&
+        types.isSubtype(types.declarationOf(assignedType), targetRef)) {
       return assignedType;
     }
     return factory.createCtTypeReference(defaultType);
   }
 
-  private List<CtStatement> serializeAsMapEntry(Map.Entry<?, ?> entry)
-      throws SerializationFailedException {
+  List<CtStatement> serializeAsMapEntry(Object object) throws SerializationFailedException {
+    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) object;
     CtVariableAccess<?> key = serializeValueAndGetRead(
         myVariableName + "_key", typeArgumentOrObject(0), entry.getKey()
     );
@@ -731,6 +860,20 @@ final class SerializerImpl {
         .addComment(factory.createInlineComment("FIXME: Construct instance"));
   }
 
+  @Override
+  public CtStatement createVariable(CtExpression<?> value) {
+    return createMyVariable(value);
+  }
+
+  @Override
+  public CtVariableAccess<?> serializeNested(
+      String name,
+      CtTypeReference<?> type,
+      Object value
+  ) throws SerializationFailedException {
+    return serializeValueAndGetRead(name, type, value);
+  }
+
   private <T> CtLocalVariable<T> createMyVariable(CtExpression<?> expr) {
     return factory.createLocalVariable(
         (CtTypeReference) assignedType,
@@ -743,53 +886,53 @@ final class SerializerImpl {
       CtField<?> ctField,
       Object handle
   ) throws SerializationFailedException {
-    // Find value via reflection
+    // Find value via reflection, the accessor is resolved once per class and field
+    FieldAccessor accessor;
     try {
-      Field field = ctField.getDeclaringType().getActualClass()
-          .getDeclaredField(ctField.getSimpleName());
-      // A bit risky, but what can you do. We only read, which makes this slightly better.
-      field.setAccessible(true);
+      accessor = FieldAccessors.forField(handle.getClass(), ctField);
+    } catch (ReflectiveOperationException e) {
+      throw new SerializationFailedException(objectClass, e);
+    }
 
-      Object value = field.get(handle);
+    Object value = accessor.read(handle);
 
-      // Simple values can be inlined
-      if (field.getType().isPrimitive() || field.getType() == String.class || value == null) {
-        return SpoonUtil.getLiteral(factory, value);
-      }
+    // Simple values can be inlined
+    if (accessor.isInlined() || value == null) {
+      return SpoonUtil.getLiteral(factory, value);
+    }
 
-      // Complex (=Object) values need to be handled carefully. We need to recursively create an
-      // object of that type and consider request cycles.
+    // Complex (=Object) values need to be handled carefully. We need to recursively create an
+    // object of that type and consider request cycles.
 
-      return getComplexFieldValue(field, value);
-    } catch (ReflectiveOperationException e) {
-      throw new SerializationFailedException(objectClass, e);
-    }
+    return getComplexFieldValue(accessor, value);
   }
 
   private CtVariableAccess<Object> getComplexFieldValue(
-      Field field,
+      FieldAccessor accessor,
       Object value
   ) throws SerializationFailedException {
-    if (!complexValueNameMap.containsKey(value)) {
+    Field field = accessor.field();
+    if (!complexValueNames.contains(value)) {
       String nestedObjectName = getNestedObjectName(field);
-      CtTypeReference<?> fieldType = factory.Type().get(field.getDeclaringClass())
-          .getField(field.getName())
-          .getType();
+      CtTypeReference<?> fieldType = accessor.type();
 
       // Note down what we decided to call this nested object, so we can find it again :^)
-      complexValueNameMap.put(value, nestedObjectName);
+      complexValueNames.put(value, nestedObjectName);
 
       if (value != null && !ClassUtil.isBasicallyPrimitive(field.getType())) {
         SerializerImpl nestedSerializer = new SerializerImpl(
             statistics,
-            factory,
+            types,
             solverFactory,
             nestedObjectName,
             namingFunction,
             unknownActionHandler,
+            handlers,
             fieldType,
             value,
-            complexValueNameMap
+            complexValueNames,
+            budget,
+            depth + 1
         );
 
         // First serialize that object before we do anything else with our life
@@ -810,7 +953,7 @@ final class SerializerImpl {
 
     // We already built a variable for this object, return a reference to it
     return factory.createVariableRead(
-        factory.Core().createLocalVariableReference().setSimpleName(complexValueNameMap.get(value)),
+        factory.Core().createLocalVariableReference().setSimpleName(complexValueNames.get(value)),
         false
     );
   }
@@ -818,7 +961,7 @@ final class SerializerImpl {
   private String getNestedObjectName(Field field) {
     String nestedObjectName = namingFunction.apply(field);
 
-    if (complexValueNameMap.containsValue(nestedObjectName)) {
+    if (complexValueNames.isTaken(nestedObjectName)) {
       throw new IllegalArgumentException(
           "Naming function is not unique, produced '" + nestedObjectName + "' for " + field
       );
@@ -827,4 +970,80 @@ final class SerializerImpl {
     return nestedObjectName;
   }
 
+  /**
+   * Tracks the budget of one serialized object graph, shared by all nested serializers like the
+   * {@link ComplexValueNames}.
+   */
+  private static final class BudgetTracker {
+
+    private final SerializationBudget limits;
+    private final long start;
+    private final long maxNanos;
+    private int objects;
+
+    private BudgetTracker(SerializationBudget limits) {
+      this.limits = limits;
+      this.start = System.nanoTime();
+      // Saturates for unlimited budgets
+      this.maxNanos = TimeUnit.MILLISECONDS.toNanos(limits.maxMillis());
+      this.objects = 0;
+    }
+
+    SerializationBudget limits() {
+      return limits;
+    }
+
+    /**
+     * Accounts for a new object.
+     *
+     * @param depth the depth of the object
+     * @return the exceeded limit or null if the object is within budget
+     */
+    Limit enterObject(int depth) {
+      if (++objects > limits.maxObjects()) {
+        return Limit.OBJECTS;
+      }
+      if (depth > limits.maxDepth()) {
+        return Limit.DEPTH;
+      }
+      if (System.nanoTime() - start > maxNanos) {
+        return Limit.TIME;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The variable names of all complex values in one serialized object graph, shared by all nested
+   * serializers. Names are indexed in both directions, as checking a name for uniqueness must not
+   * scan every object serialized so far.
+   */
+  private static final class ComplexValueNames {
+
+    private final IdentityHashMap<Object, String> namesByValue;
+    private final Set<String> names;
+
+    private ComplexValueNames() {
+      this.namesByValue = new IdentityHashMap<>();
+      this.names = new HashSet<>();
+    }
+
+    boolean contains(Object value) {
+      return namesByValue.containsKey(value);
+    }
+
+    String get(Object value) {
+      return namesByValue.get(value);
+    }
+
+    void put(Object value, String name) {
+      namesByValue.put(value, name);
+      names.add(name);
+    }
+
+    boolean isTaken(String name) {
+      return names.contains(name);
+    }
+  }
+
 }
@@ -0,0 +1,184 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+import spoon.reflect.reference.CtTypeReference;
+import spoon.support.adaption.TypeAdaptor;
+
+/**
+ * Resolves runtime classes to their Spoon types, shared by all threads serializing with the same
+ * {@link Factory}.
+ * <p>
+ * Resolving a class that is not part of the model builds a shadow type, which writes to the
+ * model. Spoon does not guard this, so misses are resolved while holding the factory lock. Once
+ * resolved, types are only read and are handed out without locking.
+ * <p>
+ * The same applies to everything walking the type hierarchy, e.g. subtype checks or resolving the
+ * declaration of a reference, as supertypes such as {@code AbstractList} are resolved on the way.
+ * These walks hold the factory lock as well, see {@link #locked(Supplier)}. Solving how to
+ * construct a class walks its hierarchy many times, so {@link #prepareForSolving(CtType)} resolves
+ * everything it reaches once and the solver then runs without the lock.
+ */
+final class SharedTypes {
+
+  private final Factory factory;
+  private final Map<Class<?>, CtType<?>> types;
+  private final Set<String> preparedForSolving;
+
+  SharedTypes(Factory factory) {
+    this.factory = factory;
+    this.types = new ConcurrentHashMap<>();
+    this.preparedForSolving = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * {@return the factory types are resolved in}
+   */
+  Factory factory() {
+    return factory;
+  }
+
+  /**
+   * Resolves a runtime class.
+   *
+   * @param type the runtime class
+   * @return the spoon type
+   */
+  CtType<?> get(Class<?> type) {
+    CtType<?> result = types.get(type);
+    if (result != null) {
+      return result;
+    }
+    result = resolve(factory, type);
+    types.put(type, result);
+    return result;
+  }
+
+  /**
+   * Resolves a runtime class that is expected to be a class.
+   *
+   * @param type the runtime class
+   * @return the spoon class or null, if the type is no class
+   */
+  CtClass<?> classOf(Class<?> type) {
+    return get(type) instanceof CtClass<?> ctClass ? ctClass : null;
+  }
+
+  /**
+   * Resolves the declaration of a reference.
+   *
+   * @param reference the reference to resolve
+   * @return the declaration or null, if it can not be found
+   */
+  CtType<?> declarationOf(CtTypeReference<?> reference) {
+    return locked(reference::getTypeDeclaration);
+  }
+
+  /**
+   * Checks whether a type is a subtype of another one.
+   *
+   * @param type the potential subtype
+   * @param superType the potential supertype
+   * @return true if type is a subtype of superType
+   */
+  boolean isSubtype(CtType<?> type, CtTypeReference<?> superType) {
+    return locked(() -> TypeAdaptor.isSubtype(type, superType));
+  }
+
+  /**
+   * Resolves the supertypes of a type and the declarations of the field types in its hierarchy,
+   * including their supertypes. These are the types the construction solver inspects, so it only
+   * reads the model afterwards. Only the first call per type takes the factory lock.
+   *
+   * @param type the type that will be solved for
+   */
+  void prepareForSolving(CtType<?> type) {
+    String name = type.getQualifiedName();
+    if (preparedForSolving.contains(name)) {
+      return;
+    }
+    synchronized (factory) {
+      if (preparedForSolving.contains(name)) {
+        return;
+      }
+      Set<String> seen = new HashSet<>();
+      for (CtType<?> current : resolveSupertypes(type, seen)) {
+        for (CtField<?> field : current.getFields()) {
+          CtType<?> fieldType;
+          try {
+            fieldType = field.getType().getTypeDeclaration();
+          } catch (RuntimeException e) {
+            // Can not be resolved, the solver will fail on it as well
+            continue;
+          }
+          if (fieldType != null) {
+            resolveSupertypes(fieldType, seen);
+          }
+        }
+      }
+      // Published after resolving, so other threads only skip once everything is resolved
+      preparedForSolving.add(name);
+    }
+  }
+
+  private static List<CtType<?>> resolveSupertypes(CtType<?> type, Set<String> seen) {
+    List<CtType<?>> result = new ArrayList<>();
+    Deque<CtType<?>> pending = new ArrayDeque<>(List.of(type));
+    while (!pending.isEmpty()) {
+      CtType<?> current = pending.pop();
+      if (!seen.add(current.getQualifiedName())) {
+        continue;
+      }
+      result.add(current);
+      List<CtTypeReference<?>> supertypes = new ArrayList<>(current.getSuperInterfaces());
+      if (current.getSuperclass() != null) {
+        supertypes.add(current.getSuperclass());
+      }
+      for (CtTypeReference<?> supertype : supertypes) {
+        CtType<?> declaration = supertype.getTypeDeclaration();
+        if (declaration != null) {
+          pending.push(declaration);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Runs an action that might resolve types of the model while holding the factory lock.
+   *
+   * @param action the action to run
+   * @param <T> the type of the result
+   * @return the result of the action
+   */
+  <T> T locked(Supplier<T> action) {
+    synchronized (factory) {
+      return action.get();
+    }
+  }
+
+  /**
+   * Resolves a runtime class without caching it. Use this if no {@link SharedTypes} is at hand.
+   *
+   * @param factory the factory to resolve the class in
+   * @param type the runtime class
+   * @return the spoon type
+   */
+  static CtType<?> resolve(Factory factory, Class<?> type) {
+    synchronized (factory) {
+      return factory.Type().get(type);
+    }
+  }
+
+}
@@ -0,0 +1,27 @@
+package se.kth.castor.pankti.codemonkey.util;
+
+import spoon.reflect.declaration.CtClass;
+
+/**
+ * Thrown if a primitive array is too large to be encoded into a single class file constant. This
+ * does not depend on the serialization budget, even an unlimited one can not serialize the array.
+ */
+public class ArrayTooLargeException extends SolveFailedException {
+
+  private final int length;
+
+  public ArrayTooLargeException(int length, Class<?> failingType, CtClass<?> type) {
+    super(failingType, type);
+    this.length = length;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Array of " + length + " elements is too large to encode at "
+           + getFailingType().getName();
+  }
+}
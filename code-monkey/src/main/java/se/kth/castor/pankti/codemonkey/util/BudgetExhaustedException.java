@@ -0,0 +1,44 @@
+package se.kth.castor.pankti.codemonkey.util;
+
+import java.util.Locale;
+import spoon.reflect.declaration.CtClass;
+
+public class BudgetExhaustedException extends SolveFailedException {
+
+  private final Limit limit;
+
+  public BudgetExhaustedException(Limit limit, Class<?> failingType, CtClass<?> type) {
+    super(failingType, type);
+    this.limit = limit;
+  }
+
+  public Limit getLimit() {
+    return limit;
+  }
+
+  @Override
+  public String getMessage() {
+    return "Serialization budget for " + limit.name().toLowerCase(Locale.ROOT) + " exhausted at "
+           + getFailingType().getName();
+  }
+
+  public enum Limit {
+    OBJECTS("serializationBudgetExhaustedObjects"),
+    DEPTH("serializationBudgetExhaustedDepth"),
+    COLLECTION_LENGTH("serializationBudgetExhaustedCollectionLength"),
+    TIME("serializationBudgetExhaustedTime");
+
+    private final String counterName;
+
+    Limit(String counterName) {
+      this.counterName = counterName;
+    }
+
+    /**
+     * {@return the name of the counter in {@link Statistics.General}}
+     */
+    public String getCounterName() {
+      return counterName;
+    }
+  }
+}
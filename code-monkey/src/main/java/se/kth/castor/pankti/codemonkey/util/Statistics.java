@@ -100,7 +100,7 @@ public class Statistics {
   public static class TraceBased {
 
     private final Map<Integer, Integer> requestedObjects;
-    private int objectsNotFound;
+    private final AtomicInteger objectsNotFound;
     private int totalConstructableObjects;
 
     private TraceBased(
@@ -108,13 +108,14 @@ public class Statistics {
         int objectsNotFound,
         int totalConstructableObjects
     ) {
-      this.requestedObjects = requestedObjects;
-      this.objectsNotFound = objectsNotFound;
+      this.requestedObjects = new ConcurrentHashMap<>(requestedObjects);
+      this.objectsNotFound = new AtomicInteger(objectsNotFound);
       this.totalConstructableObjects = totalConstructableObjects;
     }
 
     public TraceBased() {
-      this.requestedObjects = new HashMap<>();
+      this.requestedObjects = new ConcurrentHashMap<>();
+      this.objectsNotFound = new AtomicInteger();
     }
 
     public void addObjectRequested(int id) {
@@ -126,12 +127,12 @@ public class Statistics {
     }
 
     public void addObjectNotFound() {
-      objectsNotFound++;
+      objectsNotFound.incrementAndGet();
     }
 
     public void merge(TraceBased other) {
       other.requestedObjects.putAll(requestedObjects);
-      other.objectsNotFound += objectsNotFound;
+      other.objectsNotFound.addAndGet(objectsNotFound.get());
       other.totalConstructableObjects += totalConstructableObjects;
     }
 
@@ -416,8 +417,9 @@ public class Statistics {
     private int traceBasedTypes;
     private int muts;
     private final AtomicInteger invokedMuts;
-    private Map<String, Duration> durations;
-    private Map<String, Long> durationCounts;
+    private final Map<String, Duration> durations;
+    private final Map<String, Long> durationCounts;
+    private final Map<String, Long> counters;
 
     public void merge(General other) {
       other.associatedTypeCount += associatedTypeCount;
@@ -425,18 +427,21 @@ public class Statistics {
       other.traceBasedTypes += traceBasedTypes;
       other.muts += muts;
       other.invokedMuts.addAndGet(invokedMuts.get());
+      counters.forEach(other::addToCounter);
       // TODO: Durations?
     }
 
     public General() {
       this.invokedMuts = new AtomicInteger();
-      this.durations = new HashMap<>();
-      this.durationCounts = new HashMap<>();
+      this.durations = new ConcurrentHashMap<>();
+      this.durationCounts = new ConcurrentHashMap<>();
+      this.counters = new ConcurrentHashMap<>();
     }
 
     public General(
         int associatedTypeCount, int structureBasedTypes, int traceBasedTypes, int muts,
-        int invokedMuts, Map<String, Duration> durations, Map<String, Long> durationCounts
+        int invokedMuts, Map<String, Duration> durations, Map<String, Long> durationCounts,
+        Map<String, Long> counters
     ) {
       this();
       this.associatedTypeCount = associatedTypeCount;
@@ -444,8 +449,9 @@ public class Statistics {
       this.traceBasedTypes = traceBasedTypes;
       this.muts = muts;
       this.invokedMuts.set(invokedMuts);
-      this.durations = durations;
-      this.durationCounts = durationCounts;
+      this.durations.putAll(durations);
+      this.durationCounts.putAll(durationCounts);
+      this.counters.putAll(counters);
     }
 
     public void setAssociatedTypeCount(int associatedTypeCount) {
@@ -477,6 +483,10 @@ public class Statistics {
       this.durationCounts.merge(name, 1L, Math::addExact);
     }
 
+    public void addToCounter(String name, long delta) {
+      this.counters.merge(name, delta, Math::addExact);
+    }
+
   }
 
   public static class Processing {
@@ -593,7 +603,7 @@ public class Statistics {
 
     private static void writeTrace(Statistics value, JsonGenerator gen) throws IOException {
       gen.writeObjectField("requestedObjects", value.getTraceBased().requestedObjects);
-      gen.writeNumberField("objectsNotFound", value.getTraceBased().objectsNotFound);
+      gen.writeNumberField("objectsNotFound", value.getTraceBased().objectsNotFound.get());
       gen.writeNumberField(
           "totalConstructableObjects", value.getTraceBased().totalConstructableObjects
       );
@@ -669,6 +679,7 @@ public class Statistics {
           "durationCounts",
           general.durationCounts
       );
+      gen.writeObjectField("counters", general.counters);
     }
 
     private static void writeProcessing(Statistics value, JsonGenerator gen) throws IOException {
@@ -751,6 +762,14 @@ public class Statistics {
         Entry<String, JsonNode> next = durations.next();
         convertedDurationCounts.put(next.getKey(), next.getValue().asLong());
       }
+      Map<String, Long> convertedCounters = new HashMap<>();
+      if (node.has("counters")) {
+        Iterator<Entry<String, JsonNode>> counters = node.get("counters").fields();
+        while (counters.hasNext()) {
+          Entry<String, JsonNode> next = counters.next();
+          convertedCounters.put(next.getKey(), next.getValue().asLong());
+        }
+      }
 
       return new General(
           node.get("associatedTypeCount").asInt(),
@@ -759,7 +778,8 @@ public class Statistics {
           node.get("muts").asInt(),
           node.get("invokedMuts").asInt(),
           convertedDurations,
-          convertedDurationCounts
+          convertedDurationCounts,
+          convertedCounters
       );
     }
 
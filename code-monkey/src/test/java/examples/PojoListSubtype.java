@@ -0,0 +1,12 @@
+package examples;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+public class PojoListSubtype extends ArrayList<String> {
+
+  public PojoListSubtype(Collection<String> values) {
+    super(values);
+  }
+
+}
@@ -0,0 +1,12 @@
+package examples;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public class PojoMapSubtype extends TreeMap<String, Integer> {
+
+  public PojoMapSubtype(Map<String, Integer> values) {
+    super(values);
+  }
+
+}
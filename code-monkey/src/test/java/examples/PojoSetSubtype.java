@@ -0,0 +1,12 @@
+package examples;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+public class PojoSetSubtype extends LinkedHashSet<String> {
+
+  public PojoSetSubtype(Collection<String> values) {
+    super(values);
+  }
+
+}
@@ -0,0 +1,198 @@
+package se.kth.castor.pankti.codemonkey.construction.solving;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import examples.PojoWithMultipleSetter;
+import examples.PojoWithSetterTouchingMultipleFields;
+import examples.TrivialPojo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import se.kth.castor.pankti.codemonkey.construction.actions.Action;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionCallConstructor;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionCallFactoryMethod;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionCallSetter;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionMockObject;
+import se.kth.castor.pankti.codemonkey.construction.actions.ActionSetField;
+import spoon.Launcher;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtField;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.factory.Factory;
+
+class ExactPlanSolverTest {
+
+  private static final int RANDOM_FIELDS = 12;
+  private static final int RANDOM_METHODS = 40;
+
+  private Factory factory;
+  private List<MutationStrategy> staticMutations;
+
+  @BeforeEach
+  void setUp() {
+    Launcher launcher = new Launcher();
+    launcher.getEnvironment().setComplianceLevel(17);
+    launcher.addInputResource("src/test/java/examples");
+    launcher.buildModel();
+    factory = launcher.getFactory();
+
+    staticMutations = List.of(
+        new MutationBindConstructorParameter(),
+        new MutationCallDefaultConstructor(),
+        new MutationCallSetter(),
+        new MutationCallSimpleFactoryMethod(),
+        new MutationUseEnumConstant(),
+        new MutationSetField()
+    );
+  }
+
+  @Test
+  void testSingleCoveringConstructor() {
+    SolvingState state = candidates(TrivialPojo.class);
+
+    Optional<List<Action>> plan = assertSameCostAsZ3(state);
+
+    assertThat(plan).hasValueSatisfying(
+        actions -> assertThat(actions).singleElement().isInstanceOf(ActionCallConstructor.class)
+    );
+  }
+
+  @Test
+  void testDefaultConstructorAndSetters() {
+    SolvingState state = candidates(PojoWithMultipleSetter.class);
+
+    Optional<List<Action>> plan = assertSameCostAsZ3(state);
+
+    assertThat(plan).hasValueSatisfying(actions -> assertThat(actions)
+        .hasSize(4)
+        .filteredOn(it -> it instanceof ActionCallSetter)
+        .hasSize(3)
+    );
+  }
+
+  @Test
+  void testSetterHandlingSeveralFields() {
+    SolvingState state = candidates(PojoWithSetterTouchingMultipleFields.class);
+
+    Optional<List<Action>> plan = assertSameCostAsZ3(state);
+
+    assertThat(plan).hasValueSatisfying(actions -> assertThat(actions)
+        .hasSize(2)
+        .filteredOn(it -> it instanceof ActionCallSetter)
+        .hasSize(1)
+    );
+  }
+
+  @Test
+  void testNoFeasiblePlan() {
+    CtClass<?> type = factory.Class().get(TrivialPojo.class);
+    // The fields can be set, but nothing creates the instance
+    SolvingState state = new SolvingState(
+        Set.copyOf(type.getFields()),
+        type.getFields().stream().<Action>map(ActionSetField::new).toList(),
+        type
+    );
+
+    assertThat(assertSameCostAsZ3(state)).isEmpty();
+  }
+
+  @ParameterizedTest
+  @ValueSource(longs = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10})
+  void testRandomProblems(long seed) {
+    CtClass<?> type = randomProblemClass();
+    Random random = new Random(seed);
+    for (int i = 0; i < 20; i++) {
+      assertSameCostAsZ3(randomProblem(type, random));
+    }
+  }
+
+  private SolvingState candidates(Class<?> clazz) {
+    SolvingState state = SolvingState.constructType(factory.Class().get(clazz));
+    for (MutationStrategy mutation : staticMutations) {
+      Optional<SolvingState> newState = mutation.register(state, null).newState();
+      if (newState.isPresent()) {
+        state = newState.get();
+      }
+    }
+    return state;
+  }
+
+  private Optional<List<Action>> assertSameCostAsZ3(SolvingState state) {
+    Optional<List<Action>> exact = ExactPlanSolver.solve(state);
+    Optional<List<Action>> z3 = ClassConstructionSolver.solveWithZ3(state);
+
+    assertThat(exact.isPresent()).as("feasible").isEqualTo(z3.isPresent());
+    if (exact.isPresent()) {
+      assertValidPlan(state, exact.get());
+      assertThat(cost(exact.get())).as("cost").isEqualTo(cost(z3.get()));
+    }
+    return exact;
+  }
+
+  private static void assertValidPlan(SolvingState state, List<Action> actions) {
+    assertThat(actions).filteredOn(Action::constructsInstance).hasSize(1);
+    assertThat(actions.stream().flatMap(it -> it.handledFields().stream()).toList())
+        .containsAll(state.fields());
+  }
+
+  private static int cost(List<Action> actions) {
+    return actions.stream().mapToInt(Action::cost).sum();
+  }
+
+  static CtClass<?> randomProblemClass() {
+    StringBuilder source = new StringBuilder("class Problem {\n");
+    for (int i = 0; i < RANDOM_FIELDS; i++) {
+      source.append("  int f").append(i).append(";\n");
+    }
+    for (int i = 0; i < RANDOM_METHODS; i++) {
+      source.append("  void m").append(i).append("(int value) {}\n");
+    }
+    source.append("}\n");
+    return Launcher.parseClass(source.toString());
+  }
+
+  static SolvingState randomProblem(CtClass<?> type, Random random) {
+    List<CtField<?>> fields = type.getFields().subList(0, 1 + random.nextInt(RANDOM_FIELDS));
+    List<CtMethod<?>> methods = type.getMethods().stream()
+        .sorted((a, b) -> a.getSimpleName().compareTo(b.getSimpleName()))
+        .collect(Collectors.toCollection(ArrayList::new));
+
+    List<Action> actions = new ArrayList<>();
+    int constructing = 1 + random.nextInt(4);
+    for (int i = 0; i < constructing; i++) {
+      List<CtField<?>> handled = randomSubset(fields, random);
+      if (random.nextInt(4) == 0) {
+        actions.add(new ActionMockObject(handled));
+      } else {
+        CtMethod<?> method = methods.remove(methods.size() - 1);
+        actions.add(new ActionCallFactoryMethod(
+            method, Map.of(method.getParameters().get(0), handled)
+        ));
+      }
+    }
+    int others = random.nextInt(30);
+    for (int i = 0; i < others; i++) {
+      if (random.nextBoolean()) {
+        actions.add(new ActionSetField(fields.get(random.nextInt(fields.size()))));
+      } else {
+        CtMethod<?> method = methods.remove(methods.size() - 1);
+        actions.add(new ActionCallSetter(
+            method, Map.of(method.getParameters().get(0), randomSubset(fields, random))
+        ));
+      }
+    }
+    return new SolvingState(Set.copyOf(fields), actions, type);
+  }
+
+  private static List<CtField<?>> randomSubset(List<CtField<?>> fields, Random random) {
+    return fields.stream().filter(it -> random.nextInt(3) == 0).toList();
+  }
+}
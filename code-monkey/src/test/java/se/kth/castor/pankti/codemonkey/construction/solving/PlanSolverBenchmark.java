@@ -0,0 +1,95 @@
+package se.kth.castor.pankti.codemonkey.construction.solving;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import se.kth.castor.pankti.codemonkey.construction.actions.Action;
+import spoon.Launcher;
+import spoon.reflect.declaration.CtClass;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+
+/**
+ * Compares the time spent building construction plans with Z3 alone, as before
+ * {@link ExactPlanSolver} existed, and with the exact solver for the problems it takes. This is
+ * what {@code timeSpentBuildingPlans} in the statistics adds up. Not part of the unit test suite,
+ * run it with {@code mvn test -Pbenchmark}.
+ * <p>
+ * The problems are the candidates of all example classes and the seeded random problems of
+ * {@link ExactPlanSolverTest}, restricted to the ones the exact solver accepts.
+ */
+class PlanSolverBenchmark {
+
+  private static final int RANDOM_PROBLEMS = 200;
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 5;
+
+  @Test
+  void timeSpentBuildingPlans() {
+    List<SolvingState> problems = problems();
+
+    long z3 = nanosPerRound(problems, ClassConstructionSolver::solveWithZ3);
+    long exact = nanosPerRound(problems, ExactPlanSolver::solve);
+
+    System.out.printf("%d problems: %.2f ms (Z3) vs %.2f ms (exact) per round%n",
+        problems.size(), z3 / 1e6, exact / 1e6);
+    assertThat(problems).isNotEmpty();
+  }
+
+  private static long nanosPerRound(
+      List<SolvingState> problems, Function<SolvingState, Optional<List<Action>>> solver
+  ) {
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      problems.forEach(solver::apply);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ROUNDS; i++) {
+      problems.forEach(solver::apply);
+    }
+    return (System.nanoTime() - start) / MEASURED_ROUNDS;
+  }
+
+  private static List<SolvingState> problems() {
+    Launcher launcher = new Launcher();
+    launcher.getEnvironment().setComplianceLevel(17);
+    launcher.addInputResource("src/test/java/examples");
+    launcher.buildModel();
+    Factory factory = launcher.getFactory();
+    List<MutationStrategy> staticMutations = List.of(
+        new MutationBindConstructorParameter(),
+        new MutationCallDefaultConstructor(),
+        new MutationCallSetter(),
+        new MutationCallSimpleFactoryMethod(),
+        new MutationUseEnumConstant(),
+        new MutationSetField()
+    );
+
+    List<SolvingState> problems = new ArrayList<>();
+    for (CtType<?> type : factory.Type().getAll()) {
+      if (!(type instanceof CtClass<?> ctClass)) {
+        continue;
+      }
+      SolvingState state = SolvingState.constructType(ctClass);
+      for (MutationStrategy mutation : staticMutations) {
+        Optional<SolvingState> newState = mutation.register(state, null).newState();
+        if (newState.isPresent()) {
+          state = newState.get();
+        }
+      }
+      problems.add(state);
+    }
+    CtClass<?> randomType = ExactPlanSolverTest.randomProblemClass();
+    Random random = new Random(1);
+    for (int i = 0; i < RANDOM_PROBLEMS; i++) {
+      problems.add(ExactPlanSolverTest.randomProblem(randomType, random));
+    }
+
+    problems.removeIf(it -> it.actions().isEmpty() || !ExactPlanSolver.canSolve(it));
+    return problems;
+  }
+}
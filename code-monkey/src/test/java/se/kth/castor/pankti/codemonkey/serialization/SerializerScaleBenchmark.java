@@ -0,0 +1,86 @@
+package se.kth.castor.pankti.codemonkey.serialization;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import examples.PojoWithComplexField;
+import examples.TrivialPojo;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import se.kth.castor.pankti.codemonkey.construction.solving.ClassConstructionSolver;
+import se.kth.castor.pankti.codemonkey.construction.solving.MutationBindConstructorParameter;
+import se.kth.castor.pankti.codemonkey.construction.solving.MutationCallDefaultConstructor;
+import se.kth.castor.pankti.codemonkey.construction.solving.MutationCallSetter;
+import se.kth.castor.pankti.codemonkey.construction.solving.MutationSetField;
+import se.kth.castor.pankti.codemonkey.construction.solving.SolvingState;
+import se.kth.castor.pankti.codemonkey.util.SerializationFailedException;
+import spoon.Launcher;
+import spoon.reflect.code.CtStatement;
+import spoon.reflect.factory.Factory;
+
+/**
+ * Measures how serialization time grows with the number of objects in a graph. Not part of the
+ * unit test suite, run it with {@code mvn test -Pbenchmark}.
+ */
+class SerializerScaleBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+
+  private Serializer serializer;
+  private Factory factory;
+
+  @BeforeEach
+  void setUp() {
+    Launcher launcher = new Launcher();
+    launcher.getEnvironment().setComplianceLevel(17);
+    launcher.getEnvironment().setAutoImports(true);
+    launcher.addInputResource("src/test/java/examples");
+    launcher.buildModel();
+    factory = launcher.getFactory();
+
+    serializer = new Serializer(
+        factory,
+        ClassConstructionSolver.cached((ctClass, instance) -> new ClassConstructionSolver(
+            List.of(
+                new MutationBindConstructorParameter(),
+                new MutationCallDefaultConstructor(),
+                new MutationCallSetter(),
+                new MutationSetField()
+            ),
+            SolvingState.constructType(ctClass),
+            null
+        )),
+        UnknownActionHandler.fail()
+    );
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {10, 1_000, 100_000})
+  void manyNestedObjects(int count) throws SerializationFailedException {
+    List<PojoWithComplexField> pojos = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      pojos.add(new PojoWithComplexField(new TrivialPojo("Hello", String.valueOf(i))));
+    }
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      serialize(pojos);
+    }
+
+    long start = System.nanoTime();
+    List<CtStatement> statements = serialize(pojos);
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    System.out.println("Serialized " + count + " nested objects in " + millis + "ms");
+
+    assertThat(statements).hasSize(2 * count + 1);
+  }
+
+  private List<CtStatement> serialize(Object object) throws SerializationFailedException {
+    return serializer.serialize(
+        null,
+        object,
+        "myself",
+        factory.createCtTypeReference(object.getClass())
+    ).statements();
+  }
+}
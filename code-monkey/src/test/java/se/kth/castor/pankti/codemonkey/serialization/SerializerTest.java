@@ -7,6 +7,9 @@ import examples.FailingPojoWithTwoDistinctConstructors;
 import examples.PojoCollectionDifferentFieldType;
 import examples.PojoConstructorIsNotCopyConstructor;
 import examples.PojoCopiesInputCollection;
+import examples.PojoListSubtype;
+import examples.PojoMapSubtype;
+import examples.PojoSetSubtype;
 import examples.PojoUseMostGeneralType;
 import examples.PojoUsingSameReferenceTwice;
 import examples.PojoWithComplexField;
@@ -28,12 +31,16 @@ import java.io.File;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -41,6 +48,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -59,9 +68,14 @@ import se.kth.castor.pankti.codemonkey.construction.solving.MutationUseEnumConst
 import se.kth.castor.pankti.codemonkey.construction.solving.MutationUseStandardCharset;
 import se.kth.castor.pankti.codemonkey.construction.solving.MutationUseStaticFieldInstance;
 import se.kth.castor.pankti.codemonkey.construction.solving.SolvingState;
+import se.kth.castor.pankti.codemonkey.serialization.Serializer.SerializationRequest;
+import se.kth.castor.pankti.codemonkey.util.ArrayTooLargeException;
+import se.kth.castor.pankti.codemonkey.util.BudgetExhaustedException;
+import se.kth.castor.pankti.codemonkey.util.BudgetExhaustedException.Limit;
 import se.kth.castor.pankti.codemonkey.util.SerializationFailedException;
 import se.kth.castor.pankti.codemonkey.util.SolveFailedException;
 import spoon.Launcher;
+import spoon.reflect.code.CtLocalVariable;
 import spoon.reflect.code.CtStatement;
 import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtTypeReference;
@@ -74,12 +88,7 @@ class SerializerTest {
 
   @BeforeEach
   void setUp() {
-    Launcher launcher = new Launcher();
-    launcher.getEnvironment().setComplianceLevel(17);
-    launcher.getEnvironment().setAutoImports(true);
-    launcher.addInputResource("src/test/java/examples");
-    launcher.buildModel();
-    factory = launcher.getFactory();
+    factory = buildFactory();
 
     mutations = List.of(
         new MutationBindConstructorParameter(),
@@ -92,7 +101,20 @@ class SerializerTest {
         new MutationUseStandardCharset()
     );
 
-    serializer = new Serializer(
+    serializer = createSerializer(factory);
+  }
+
+  private static Factory buildFactory() {
+    Launcher launcher = new Launcher();
+    launcher.getEnvironment().setComplianceLevel(17);
+    launcher.getEnvironment().setAutoImports(true);
+    launcher.addInputResource("src/test/java/examples");
+    launcher.buildModel();
+    return launcher.getFactory();
+  }
+
+  private Serializer createSerializer(Factory factory) {
+    return new Serializer(
         factory,
         ClassConstructionSolver.cached((ctClass, instance) -> new ClassConstructionSolver(
             mutations,
@@ -282,17 +304,96 @@ class SerializerTest {
         new int[]{1, 2, 3}
     );
 
-    assertThat(statements).hasSize(4);
+    assertThat(statements).hasSize(1);
     assertThat(getStatementsAsString(statements)).isEqualTo("""
         {
-            int myself_0 = 1;
-            int myself_1 = 2;
-            int myself_2 = 3;
-            int[] myself = { myself_0, myself_1, myself_2 };
+            int[] myself = new int[]{ 1, 2, 3 };
         }"""
     );
   }
 
+  @Test
+  void testLargeIntArray() throws SerializationFailedException {
+    int[] values = new int[1000];
+    Arrays.setAll(values, i -> i * 31);
+    ByteBuffer expected = ByteBuffer.allocate(values.length * Integer.BYTES);
+    expected.asIntBuffer().put(values);
+
+    List<CtStatement> statements = serializeToMyself(values);
+
+    assertThat(statements).hasSize(2);
+    assertThat(getStatementsAsString(statements)).isEqualTo("""
+        {
+            int[] myself = new int[1000];
+            java.nio.ByteBuffer.wrap(java.util.Base64.getDecoder().decode("%s")).asIntBuffer().get(myself);
+        }""".formatted(Base64.getEncoder().encodeToString(expected.array()))
+    );
+  }
+
+  @Test
+  void testLargeByteArray() throws SerializationFailedException {
+    byte[] values = new byte[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (byte) i;
+    }
+
+    List<CtStatement> statements = serializeToMyself(values);
+
+    assertThat(statements).hasSize(1);
+    assertThat(getStatementsAsString(statements)).isEqualTo("""
+        {
+            byte[] myself = java.util.Base64.getDecoder().decode("%s");
+        }""".formatted(Base64.getEncoder().encodeToString(values))
+    );
+  }
+
+  @Test
+  void testLargeBooleanArray() throws SerializationFailedException {
+    boolean[] values = new boolean[100];
+    byte[] expected = new byte[values.length];
+    for (int i = 0; i < values.length; i += 3) {
+      values[i] = true;
+      expected[i] = 1;
+    }
+
+    List<CtStatement> statements = serializeToMyself(values);
+
+    assertThat(statements).hasSize(3);
+    assertThat(getStatementsAsString(statements)).isEqualTo("""
+        {
+            boolean[] myself = new boolean[100];
+            byte[] myself_bytes = java.util.Base64.getDecoder().decode("%s");
+            for (int myself_index = 0; myself_index < myself.length; myself_index++) myself[myself_index] = myself_bytes[myself_index] != 0;
+        }""".formatted(Base64.getEncoder().encodeToString(expected))
+    );
+  }
+
+  @Test
+  void testTooLargePrimitiveArrays() {
+    assertThatThrownBy(() -> serializeToMyself(new int[20_000]))
+        .isInstanceOfSatisfying(
+            ArrayTooLargeException.class,
+            e -> assertThat(e.getLength()).isEqualTo(20_000)
+        );
+
+    // Not a budget limit, so an unlimited budget does not help either
+    Serializer unlimited = new Serializer(
+        factory,
+        ClassConstructionSolver.cached((ctClass, instance) -> new ClassConstructionSolver(
+            mutations,
+            SolvingState.constructType(ctClass),
+            null
+        )),
+        UnknownActionHandler.fail(),
+        InbuiltTypeHandlers.defaults(),
+        SerializationBudget.unlimited()
+    );
+    assertThatThrownBy(() -> unlimited.serialize(
+        null, new boolean[50_000], "myself", factory.createCtTypeReference(boolean[].class)
+    ))
+        .isInstanceOf(ArrayTooLargeException.class);
+  }
+
   @Test
   void testEmptyIntArray() throws SerializationFailedException {
     List<CtStatement> statements = serializeToMyself(
@@ -302,7 +403,7 @@ class SerializerTest {
     assertThat(statements).hasSize(1);
     assertThat(getStatementsAsString(statements)).isEqualTo("""
         {
-            int[] myself = {  };
+            int[] myself = new int[]{  };
         }"""
     );
   }
@@ -634,6 +735,63 @@ class SerializerTest {
     );
   }
 
+  @Test
+  void testUuidAndJavaTime() throws SerializationFailedException {
+    assertThat(getStatementsAsString(serializeToMyself(
+        UUID.fromString("123e4567-e89b-12d3-a456-426614174000")
+    ))).isEqualTo("""
+        {
+            UUID myself = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+        }"""
+    );
+    assertThat(getStatementsAsString(serializeToMyself(LocalDate.of(2023, 5, 17))))
+        .isEqualTo("""
+            {
+                LocalDate myself = LocalDate.parse("2023-05-17");
+            }"""
+        );
+    assertThat(getStatementsAsString(serializeToMyself(Duration.ofSeconds(90))))
+        .isEqualTo("""
+            {
+                Duration myself = Duration.parse("PT1M30S");
+            }"""
+        );
+  }
+
+  @Test
+  void testCustomInbuiltTypeHandler() throws SerializationFailedException {
+    Serializer custom = new Serializer(
+        factory,
+        ClassConstructionSolver.cached((ctClass, instance) -> new ClassConstructionSolver(
+            mutations,
+            SolvingState.constructType(ctClass),
+            null
+        )),
+        UnknownActionHandler.fail(),
+        InbuiltTypeHandlers.defaults().addHandler(
+            TrivialPojo.class,
+            (context, pojo) -> List.of(context.createVariable(
+                context.factory().createCodeSnippetExpression("TrivialPojo.EMPTY")
+            ))
+        ),
+        SerializationBudget.unlimited()
+    );
+
+    List<CtStatement> statements = custom.serialize(
+        null,
+        new PojoWithComplexField(new TrivialPojo("Hello", "World")),
+        "myself",
+        factory.createCtTypeReference(PojoWithComplexField.class)
+    ).statements();
+
+    assertThat(getStatementsAsString(statements)).isEqualTo("""
+        {
+            TrivialPojo trivial = TrivialPojo.EMPTY;
+            PojoWithComplexField myself = new PojoWithComplexField(trivial);
+        }"""
+    );
+  }
+
   @Test
   void testPojoWithShortAndByteLiterals() throws SerializationFailedException {
     List<CtStatement> statements = serializeToMyself(
@@ -727,6 +885,139 @@ class SerializerTest {
     );
   }
 
+  @ParameterizedTest
+  @ValueSource(ints = {10, 1_000})
+  void testManyNestedObjects(int count) throws SerializationFailedException {
+    List<PojoWithComplexField> pojos = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      pojos.add(new PojoWithComplexField(new TrivialPojo("Hello", String.valueOf(i))));
+    }
+    List<CtStatement> statements = serializeToMyself(pojos);
+
+    // Every element needs its nested object and itself, plus the list
+    assertThat(statements).hasSize(2 * count + 1);
+    assertThat(((CtLocalVariable<?>) statements.get(0)).getSimpleName()).isEqualTo("trivial");
+    assertThat(((CtLocalVariable<?>) statements.get(2 * count - 2)).getSimpleName())
+        .isEqualTo("trivial" + (count - 2));
+  }
+
+  @Test
+  void testSerializeAllMatchesSequential() throws SerializationFailedException {
+    List<Object> pojos = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      pojos.add(new PojoWithComplexField(new TrivialPojo("Hello", String.valueOf(i))));
+      PojoWithSetter withSetter = new PojoWithSetter("Hello");
+      withSetter.setLastName(String.valueOf(i));
+      pojos.add(withSetter);
+      pojos.add(new ArrayList<>(List.of(new TrivialPojo("World", String.valueOf(i)))));
+    }
+    List<SerializationRequest> requests = pojos.stream()
+        .map(it -> new SerializationRequest(
+            it, "myself", factory.createCtTypeReference(it.getClass())
+        ))
+        .toList();
+
+    List<String> expected = new ArrayList<>();
+    for (Object pojo : pojos) {
+      expected.add(getStatementsAsString(serializeToMyself(pojo)));
+    }
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      assertThat(serializer.serializeAll(null, requests, pool))
+          .extracting(it -> getStatementsAsString(it.statements()))
+          .containsExactlyElementsOf(expected);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testSerializeAllOnColdFactory() throws SerializationFailedException {
+    List<Object> objects = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      objects.add(new PojoListSubtype(List.of("a" + i, "b" + i)));
+      objects.add(new PojoSetSubtype(List.of("c" + i)));
+      objects.add(new PojoMapSubtype(Map.of("d" + i, i)));
+      objects.add(new PojoWithComplexField(new TrivialPojo("Hello", String.valueOf(i))));
+    }
+    List<String> expected = new ArrayList<>();
+    for (Object object : objects) {
+      expected.add(getStatementsAsString(serializeToMyself(object)));
+    }
+
+    // Every round starts on a fresh model, so the supertypes of the subtypes (e.g. AbstractList)
+    // are first resolved by concurrent workers
+    ForkJoinPool pool = new ForkJoinPool(8);
+    try {
+      for (int round = 0; round < 5; round++) {
+        Factory coldFactory = buildFactory();
+        List<SerializationRequest> requests = objects.stream()
+            .map(it -> new SerializationRequest(
+                it, "myself", coldFactory.createCtTypeReference(it.getClass())
+            ))
+            .toList();
+
+        assertThat(createSerializer(coldFactory).serializeAll(null, requests, pool))
+            .extracting(it -> getStatementsAsString(coldFactory, it.statements()))
+            .containsExactlyElementsOf(expected);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void testBudgetExhausted() throws SerializationFailedException {
+    Serializer budgeted = new Serializer(
+        factory,
+        ClassConstructionSolver.cached((ctClass, instance) -> new ClassConstructionSolver(
+            mutations,
+            SolvingState.constructType(ctClass),
+            null
+        )),
+        UnknownActionHandler.fail(),
+        InbuiltTypeHandlers.defaults(),
+        new SerializationBudget(10_000, 1, 3, 60_000)
+    );
+    List<TrivialPojo> withinBudget = new ArrayList<>(List.of(
+        new TrivialPojo("a", "b"), new TrivialPojo("c", "d"), new TrivialPojo("e", "f")
+    ));
+    List<TrivialPojo> tooLong = new ArrayList<>(withinBudget);
+    tooLong.add(new TrivialPojo("g", "h"));
+    List<PojoWithComplexField> tooDeep = new ArrayList<>(List.of(
+        new PojoWithComplexField(new TrivialPojo("a", "b"))
+    ));
+
+    assertThat(budgeted.serialize(
+        null, withinBudget, "myself", factory.createCtTypeReference(ArrayList.class)
+    ).statements()).hasSize(4);
+    // Encoded primitive arrays do not count as collections
+    assertThat(budgeted.serialize(
+        null, new int[1000], "myself", factory.createCtTypeReference(int[].class)
+    ).statements()).hasSize(2);
+    assertThatThrownBy(() -> budgeted.serialize(
+        null, new int[]{1, 2, 3, 4}, "myself", factory.createCtTypeReference(int[].class)
+    ))
+        .isInstanceOfSatisfying(
+            BudgetExhaustedException.class,
+            e -> assertThat(e.getLimit()).isEqualTo(Limit.COLLECTION_LENGTH)
+        );
+    assertThatThrownBy(() -> budgeted.serialize(
+        null, tooLong, "myself", factory.createCtTypeReference(ArrayList.class)
+    ))
+        .isInstanceOfSatisfying(
+            BudgetExhaustedException.class,
+            e -> assertThat(e.getLimit()).isEqualTo(Limit.COLLECTION_LENGTH)
+        );
+    assertThatThrownBy(() -> budgeted.serialize(
+        null, tooDeep, "myself", factory.createCtTypeReference(ArrayList.class)
+    ))
+        .isInstanceOfSatisfying(
+            BudgetExhaustedException.class,
+            e -> assertThat(e.getLimit()).isEqualTo(Limit.DEPTH)
+        );
+  }
+
   private List<CtStatement> serializeToMyself(Object pojo) throws SerializationFailedException {
     return serializer.serialize(
         null,
@@ -749,6 +1040,10 @@ class SerializerTest {
   }
 
   private String getStatementsAsString(List<CtStatement> statements) {
+    return getStatementsAsString(factory, statements);
+  }
+
+  private static String getStatementsAsString(Factory factory, List<CtStatement> statements) {
     return factory.createBlock().setStatements(statements).toString();
   }
 }
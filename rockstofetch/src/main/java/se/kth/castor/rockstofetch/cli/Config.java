@@ -1,7 +1,11 @@
 package se.kth.castor.rockstofetch.cli;
 
+import se.kth.castor.rockstofetch.instrument.EventBuffers;
+import se.kth.castor.rockstofetch.instrument.GroupCommitWriter;
+import se.kth.castor.rockstofetch.instrument.RecordingPolicy;
 import java.nio.file.Path;
 import java.util.Set;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
 
 public record Config(
     boolean ignoreCoverage,
@@ -12,7 +16,17 @@ public record Config(
     String productionCommand,
     Set<String> additionalInstrumentedPackages,
     EqualityFunction usedEquality,
-    boolean filterTests
+    boolean filterTests,
+    GroupCommitWriter.Settings invocationWriter,
+    EventBuffers.Settings eventBuffers,
+    RecordingPolicy recordingPolicy,
+    boolean asyncSnapshots,
+    boolean deduplicateSnippets,
+    boolean receiverDelta,
+    SerializationBudget serializationBudget,
+    boolean lazyModel,
+    boolean incrementalGeneration,
+    int generationThreads
 ) {
 
   public enum EqualityFunction {
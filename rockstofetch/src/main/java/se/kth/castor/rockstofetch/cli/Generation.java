@@ -2,10 +2,12 @@ package se.kth.castor.rockstofetch.cli;
 
 import static se.kth.castor.pankti.codemonkey.util.Statistics.addStatDuration;
 
+import com.google.common.collect.Sets;
 import se.kth.castor.rockstofetch.cli.Config.EqualityFunction;
 import se.kth.castor.rockstofetch.generate.DataReader;
 import se.kth.castor.rockstofetch.generate.DataReader.LoadedInvocation;
 import se.kth.castor.rockstofetch.generate.EventSequence;
+import se.kth.castor.rockstofetch.generate.GenerationCache;
 import se.kth.castor.rockstofetch.generate.GenerationContext;
 import se.kth.castor.rockstofetch.generate.GenerationContext.AssertionType;
 import se.kth.castor.rockstofetch.generate.GenerationException;
@@ -18,8 +20,11 @@ import se.kth.castor.rockstofetch.generate.TestFilterer;
 import se.kth.castor.rockstofetch.instrument.InstrumentationConfiguration;
 import se.kth.castor.rockstofetch.serialization.Json;
 import se.kth.castor.rockstofetch.serialization.RockySerializer;
+import se.kth.castor.rockstofetch.util.MavenClasspath;
+import se.kth.castor.rockstofetch.util.ModelSnapshot;
 import se.kth.castor.rockstofetch.util.SpoonAccessor;
 import se.kth.castor.rockstofetch.util.Spoons;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.file.Files;
@@ -29,16 +34,26 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
-import java.util.regex.Pattern;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import se.kth.castor.pankti.codemonkey.construction.solving.PlanStore;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
 import se.kth.castor.pankti.codemonkey.serialization.UnknownActionHandler;
 import se.kth.castor.pankti.codemonkey.util.Statistics;
 import spoon.Launcher;
@@ -49,6 +64,7 @@ import spoon.reflect.code.CtStatement;
 import spoon.reflect.declaration.CtClass;
 import spoon.reflect.declaration.CtElement;
 import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
 import spoon.reflect.reference.CtTypeReference;
 import spoon.reflect.visitor.DefaultImportComparator;
 import spoon.reflect.visitor.DefaultJavaPrettyPrinter;
@@ -67,7 +83,7 @@ public class Generation {
 
   public static void generate(
       Path methodsJson, Path testBasePath, EqualityFunction equality, boolean filterTests,
-      Statistics statistics
+      boolean incremental, int generationThreads, Statistics statistics
   ) throws IOException {
     InstrumentationConfiguration instrumentationConfiguration = Objects.requireNonNull(
         new Json().fromJson(Files.readString(methodsJson), InstrumentationConfiguration.class)
@@ -89,12 +105,12 @@ public class Generation {
     );
     addStatDuration(statistics, "eventSequenceRead", eventSequenceReadStart);
 
-    SpoonAccessor spoonAccessor = new SpoonAccessor(projectPath);
-
-    RockySerializer noMockSerializer = new RockySerializer(
-        spoonAccessor, Set.of(), Set.of(), Set.of(), UnknownActionHandler.fail(), null
+    SpoonAccessor spoonAccessor = SpoonAccessor.fromSnapshot(
+        projectPath, dataPath.resolve(ModelSnapshot.FILE_NAME)
     );
 
+    PlanStore planStore = PlanStore.load(dataPath.resolve(PlanStore.FILE_NAME));
+
     BiFunction<AssertionType, CtTypeReference<?>, CtStatement> equalityFunction;
     if (equality == EqualityFunction.DEEP_REFLECTIVE) {
       equalityFunction = Spoons.getDeepReflectiveAssertFunction();
@@ -107,64 +123,105 @@ public class Generation {
       equalityFunction = GenerationContext.defaultAssertFunction();
     }
 
-    Map<JunitTestClass, List<LoadedInvocation>> loadedInvocations = invocations.stream()
+    // Sorted, so that test classes are always generated and merged in the same order
+    Map<String, List<LoadedInvocation>> loadedInvocations = invocations.stream()
         .collect(Collectors.groupingBy(
-            loadedInvocation -> loadedInvocation.invocation().recordedMethod().declaringClassName())
-        )
-        .entrySet()
-        .stream()
-        .collect(Collectors.toMap(
-            entry -> new JunitTestClass(
-                spoonAccessor.getFactory(),
-                entry.getKey().replace("$", "") + "RockyTest"
-            ),
-            Entry::getValue
+            loadedInvocation -> loadedInvocation.invocation().recordedMethod().declaringClassName()
+                                    .replace("$", "") + "RockyTest",
+            TreeMap::new,
+            Collectors.toList()
         ));
+    // Null if every test class is generated
+    GenerationCache cache = incremental
+        ? GenerationCache.load(projectPath.resolve(GenerationCache.FILE_NAME))
+        : null;
+    String cacheSettings = cache == null
+        ? null
+        : equality + " " + filterTests + " " + GenerationCache.environmentHash(
+            withOwnClassPath(MavenClasspath.resolve(projectPath))
+        );
+    // Test class name to source, for test classes whose inputs did not change
+    Map<String, String> reusedTestClasses = new HashMap<>();
+    Map<String, String> inputHashes = new HashMap<>();
+    Map<String, EventSequence> trackedEvents = new HashMap<>();
+
     Instant generateTestsStart = Instant.now();
-    List<Integer> objPerTest = new ArrayList<>();
+    Map<String, List<LoadedInvocation>> toGenerate = new TreeMap<>();
     for (var entry : loadedInvocations.entrySet()) {
-      for (LoadedInvocation loadedInvocation : entry.getValue()) {
-        tryAddMethod(
-            () -> {
-              objPerTest.add(new JunitTestMethodOutputOracle(
-                  spoonAccessor.getFactory(), loadedInvocation, events, equalityFunction
-              ).buildTest(entry.getKey().getMethodCache(), statistics));
-            }
+      String testClassName = entry.getKey();
+      if (cache != null) {
+        String inputHash = cache.inputHash(
+            entry.getValue(),
+            classUnderTestSource(
+                spoonAccessor,
+                entry.getValue().get(0).invocation().recordedMethod().declaringClassName()
+            ),
+            cacheSettings
         );
+        Optional<String> unchanged = cache.findUnchanged(testClassName, inputHash, events);
+        if (unchanged.isPresent()) {
+          reusedTestClasses.put(testClassName, unchanged.get());
+          continue;
+        }
+        inputHashes.put(testClassName, inputHash);
+        trackedEvents.put(testClassName, events.withRequestTracking());
+      }
+      toGenerate.put(testClassName, entry.getValue());
+    }
+    if (statistics != null && cache != null) {
+      statistics.getGeneral().addToCounter("reusedTestClasses", reusedTestClasses.size());
+    }
 
-        tryAddMethod(
-            () -> JunitTestMethodParameterOracle.forInvocation(
-                spoonAccessor.getFactory(),
-                noMockSerializer,
-                loadedInvocation,
-                events,
-                statistics
-            )
-        );
+    Function<SpoonAccessor, Worker> newWorker = accessor -> new Worker(
+        accessor, planStore, equalityFunction,
+        equality == EqualityFunction.DEEP_REFLECTIVE, statistics
+    );
+    List<GeneratedTestClass> generated;
+    if (generationThreads > 1) {
+      generated = generateInParallel(
+          toGenerate, trackedEvents, events, generationThreads,
+          // The snapshot was checked against the sources or written above
+          () -> newWorker.apply(SpoonAccessor.fromValidatedSnapshot(
+              dataPath.resolve(ModelSnapshot.FILE_NAME)
+          ))
+      );
+    } else {
+      Worker worker = newWorker.apply(spoonAccessor);
+      generated = new ArrayList<>();
+      for (var entry : toGenerate.entrySet()) {
+        generated.add(worker.generate(
+            entry.getKey(), entry.getValue(), trackedEvents.getOrDefault(entry.getKey(), events)
+        ));
       }
-      entry.getKey().finalizeMethodCache();
     }
-    loadedInvocations.keySet().removeIf(JunitTestClass::isEmpty);
+
+    List<Integer> objPerTest = new ArrayList<>();
+    List<JunitTestClass> testClasses = new ArrayList<>();
+    for (GeneratedTestClass generatedTestClass : generated) {
+      objPerTest.addAll(generatedTestClass.containedObjects());
+      testClasses.add(generatedTestClass.testClass());
+    }
+    testClasses.removeIf(JunitTestClass::isEmpty);
     // Dependency hell, just not worth it.
-    loadedInvocations.keySet()
-        .removeIf(it -> it.getQualifiedName().endsWith("PDFToImageRockyTest"));
+    testClasses.removeIf(it -> it.getQualifiedName().endsWith("PDFToImageRockyTest"));
 
     addStatDuration(statistics, "generateTests", generateTestsStart);
+    planStore.save();
 
     objPerTest.sort(Comparator.naturalOrder());
     System.out.println(objPerTest);
-    System.out.println("I got median of " + objPerTest.get(objPerTest.size() / 2));
-
-    for (JunitTestClass testClass : loadedInvocations.keySet()) {
-      if (equality == EqualityFunction.DEEP_REFLECTIVE) {
-        Spoons.getReflectiveDeepEqualsMethods(spoonAccessor.getFactory())
-            .forEach(testClass::addMethod);
-      }
+    if (!objPerTest.isEmpty()) {
+      System.out.println("I got median of " + objPerTest.get(objPerTest.size() / 2));
     }
 
+    Set<Path> reusedPaths = reusedTestClasses.keySet().stream()
+        .map(it -> testPath(testBasePath, it))
+        .collect(Collectors.toSet());
     try (Stream<Path> paths = Files.walk(testBasePath)) {
       for (Path path : paths.filter(it -> it.toString().endsWith("RockyTest.java")).toList()) {
-        Files.delete(path);
+        if (!reusedPaths.contains(path)) {
+          Files.delete(path);
+        }
       }
     }
     Files.deleteIfExists(testBasePath.resolve(ASSERTJ_HELPER_PATH));
@@ -180,23 +237,98 @@ public class Generation {
 
     Instant postProcessStart = Instant.now();
     List<CtClass<?>> processed = postProcess(
-        statistics, projectPath, loadedInvocations.keySet(), filterTests,
+        statistics, projectPath, testClasses, filterTests,
         testBasePath.resolve(ASSERTJ_HELPER_PATH)
     );
     addStatDuration(statistics, "postProcess", postProcessStart);
 
     Instant writeStart = Instant.now();
     for (CtClass<?> testClass : processed) {
-      Path testPath = testBasePath.resolve(
-          testClass.getTopLevelType().getQualifiedName().replace(".", "/") + ".java"
-      );
+      String testClassName = testClass.getTopLevelType().getQualifiedName();
+      Path testPath = testPath(testBasePath, testClassName);
+      String source = testClass.toStringWithImports();
       System.out.println("Writing " + testPath.toAbsolutePath().normalize());
       Files.createDirectories(testPath.getParent());
-      Files.writeString(testPath, testClass.toStringWithImports());
+      Files.writeString(testPath, source);
+      if (cache != null && inputHashes.containsKey(testClassName)) {
+        cache.put(
+            testClassName, inputHashes.get(testClassName), trackedEvents.get(testClassName), source
+        );
+      }
+    }
+    for (var entry : reusedTestClasses.entrySet()) {
+      Path testPath = testPath(testBasePath, entry.getKey());
+      // Only missing if they were deleted for measuring coverage
+      if (!Files.exists(testPath)) {
+        System.out.println("Restoring " + testPath.toAbsolutePath().normalize());
+        Files.createDirectories(testPath.getParent());
+        Files.writeString(testPath, entry.getValue());
+      }
+    }
+    if (cache != null) {
+      cache.retainAll(Sets.union(reusedTestClasses.keySet(), inputHashes.keySet()));
+      cache.save();
     }
     addStatDuration(statistics, "write", writeStart);
   }
 
+  /**
+   * Generates test classes on a pool of workers, each with its own copy of the model. The results
+   * are returned in the iteration order of the input, just like when generating sequentially.
+   *
+   * @param toGenerate the invocations of every test class to generate
+   * @param trackedEvents the events to use for some test classes
+   * @param events the events to use for all other test classes
+   * @param threads the number of workers
+   * @param newWorker creates the worker of a thread
+   * @return the generated test classes
+   */
+  private static List<GeneratedTestClass> generateInParallel(
+      Map<String, List<LoadedInvocation>> toGenerate, Map<String, EventSequence> trackedEvents,
+      EventSequence events, int threads, Supplier<Worker> newWorker
+  ) {
+    ThreadLocal<Worker> workers = ThreadLocal.withInitial(newWorker);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<GeneratedTestClass>> futures = new ArrayList<>();
+      for (var entry : toGenerate.entrySet()) {
+        EventSequence testClassEvents = trackedEvents.getOrDefault(entry.getKey(), events);
+        futures.add(executor.submit(
+            () -> workers.get().generate(entry.getKey(), entry.getValue(), testClassEvents)
+        ));
+      }
+      List<GeneratedTestClass> generated = new ArrayList<>();
+      for (Future<GeneratedTestClass> future : futures) {
+        generated.add(future.get());
+      }
+      return generated;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Path testPath(Path testBasePath, String testClassName) {
+    return testBasePath.resolve(testClassName.replace(".", "/") + ".java");
+  }
+
+  private static String classUnderTestSource(SpoonAccessor spoonAccessor, String className)
+      throws IOException {
+    CtType<?> type = spoonAccessor.getFactory().Type().get(className);
+    if (type == null) {
+      return "";
+    }
+    File file = type.getPosition().getFile();
+    if (file == null) {
+      return type.toString();
+    }
+    return Files.readString(file.toPath());
+  }
+
   private static void tryAddMethod(Runnable creationAction) {
     try {
       creationAction.run();
@@ -214,10 +346,16 @@ public class Generation {
       Statistics statistics, Path projectPath, Collection<JunitTestClass> testClasses,
       boolean filterTests, Path... extraFiles
   ) {
+    // Building the model is expensive, and all test classes might have been reused
+    if (testClasses.isEmpty()) {
+      return List.of();
+    }
+    String[] sourceClasspath = withOwnClassPath(MavenClasspath.resolve(projectPath));
     List<CtClass<?>> tests = buildModel(
         testClasses.stream()
             .collect(Collectors.toMap(JunitTestClass::getQualifiedName, JunitTestClass::serialize)),
         projectPath,
+        sourceClasspath,
         (launcher, ctClass) -> new PostProcessor(statistics).process(ctClass),
         extraFiles
     );
@@ -226,6 +364,7 @@ public class Generation {
           tests.stream()
               .collect(Collectors.toMap(CtType::getQualifiedName, CtType::toStringWithImports)),
           projectPath,
+          sourceClasspath,
           (launcher, ctClass) -> new TestFilterer().filter(
               ctClass,
               ((JDTBasedSpoonCompiler) launcher.getModelBuilder()).getProblems()
@@ -240,21 +379,18 @@ public class Generation {
   private static List<CtClass<?>> buildModel(
       Map<String, String> testClasses,
       Path projectPath,
+      String[] sourceClasspath,
       BiConsumer<Launcher, CtClass<?>> hook,
       Path... extraFiles
   ) {
-    Launcher launcher = new MavenLauncher(projectPath.toString(), SOURCE_TYPE.APP_SOURCE);
+    Launcher launcher = new MavenLauncher(
+        projectPath.toString(), SOURCE_TYPE.APP_SOURCE, sourceClasspath
+    );
     Arrays.stream(extraFiles).map(Path::toString).forEach(launcher::addInputResource);
     launcher.getEnvironment().setComplianceLevel(11);
     launcher.getEnvironment().setAutoImports(true);
     launcher.getEnvironment().setNoClasspath(true);
-    launcher.getEnvironment().setSourceClasspath(
-        withOwnClassPath(
-            new MavenLauncher(
-                projectPath.toString(), SOURCE_TYPE.ALL_SOURCE, Pattern.compile(".*")
-            ).getEnvironment().getSourceClasspath()
-        )
-    );
+    launcher.getEnvironment().setSourceClasspath(sourceClasspath);
     for (var entry : testClasses.entrySet()) {
       launcher.addInputResource(new VirtualFile(
           entry.getValue(),
@@ -301,10 +437,81 @@ public class Generation {
       ourDirectory = "rockstofetch";
     }
     List<String> ours = new ArrayList<>(Arrays.asList(
-        new MavenLauncher(ourDirectory, SOURCE_TYPE.ALL_SOURCE).getEnvironment()
-            .getSourceClasspath()
+        MavenClasspath.resolve(Path.of(ourDirectory))
     ));
     ours.addAll(Arrays.asList(existing));
     return ours.toArray(String[]::new);
   }
+
+  private record GeneratedTestClass(JunitTestClass testClass, List<Integer> containedObjects) {
+
+  }
+
+  /**
+   * Generates test classes in its own Spoon model. Everything that ends up in the source of a
+   * test class only depends on that test class, so it does not matter which worker generates it
+   * or what it generated before.
+   */
+  private static class Worker {
+
+    private final Factory factory;
+    private final AtomicInteger variableSuffix;
+    private final RockySerializer noMockSerializer;
+    private final BiFunction<AssertionType, CtTypeReference<?>, CtStatement> equalityFunction;
+    private final boolean addReflectiveDeepEquals;
+    private final Statistics statistics;
+
+    private Worker(
+        SpoonAccessor spoonAccessor,
+        PlanStore planStore,
+        BiFunction<AssertionType, CtTypeReference<?>, CtStatement> equalityFunction,
+        boolean addReflectiveDeepEquals,
+        Statistics statistics
+    ) {
+      this.factory = spoonAccessor.getFactory();
+      this.variableSuffix = new AtomicInteger();
+      this.noMockSerializer = new RockySerializer(
+          spoonAccessor, Set.of(), Set.of(), Set.of(), UnknownActionHandler.fail(),
+          variableSuffix, planStore, SerializationBudget.unlimited(), null
+      );
+      this.equalityFunction = equalityFunction;
+      this.addReflectiveDeepEquals = addReflectiveDeepEquals;
+      this.statistics = statistics;
+    }
+
+    public GeneratedTestClass generate(
+        String testClassName, List<LoadedInvocation> invocations, EventSequence events
+    ) {
+      // Variable names must not depend on the test classes generated before
+      variableSuffix.set(0);
+      JunitTestClass testClass = new JunitTestClass(factory, testClassName);
+      List<Integer> containedObjects = new ArrayList<>();
+      for (int i = 0; i < invocations.size(); i++) {
+        LoadedInvocation loadedInvocation = invocations.get(i);
+        int testIndex = i;
+        tryAddMethod(
+            () -> {
+              containedObjects.add(new JunitTestMethodOutputOracle(
+                  factory, loadedInvocation, events, equalityFunction, testIndex
+              ).buildTest(testClass.getMethodCache(), statistics));
+            }
+        );
+
+        tryAddMethod(
+            () -> JunitTestMethodParameterOracle.forInvocation(
+                factory,
+                noMockSerializer,
+                loadedInvocation,
+                events,
+                statistics
+            )
+        );
+      }
+      testClass.finalizeMethodCache();
+      if (addReflectiveDeepEquals && !testClass.isEmpty()) {
+        Spoons.getReflectiveDeepEqualsMethods(factory).forEach(testClass::addMethod);
+      }
+      return new GeneratedTestClass(testClass, containedObjects);
+    }
+  }
 }
@@ -8,6 +8,7 @@ import se.kth.castor.rockstofetch.extract.ExtractCandidateMethod;
 import se.kth.castor.rockstofetch.extract.RecordingCandidateMethod;
 import se.kth.castor.rockstofetch.extract.coverage.JacocoFacade;
 import se.kth.castor.rockstofetch.instrument.RecordedMethod;
+import se.kth.castor.rockstofetch.serialization.EventLogConverter;
 import se.kth.castor.rockstofetch.serialization.Json;
 import se.kth.castor.rockstofetch.util.SpoonAccessor;
 import se.kth.castor.rockstofetch.util.Spoons;
@@ -61,6 +62,12 @@ public class Main {
       return;
     }
 
+    if (arguments.convertEvents().isPresent()) {
+      Path converted = new EventLogConverter().convert(arguments.convertEvents().get());
+      System.out.println("Converted events to " + converted);
+      return;
+    }
+
     if (arguments.productionCoverage()) {
       List<RecordedMethod> executedInProduction = computeProductionCoverage(
           configPath,
@@ -107,7 +114,9 @@ public class Main {
     Instant prepareStart = Instant.now();
     int numberOfTypes = Prepare.prepare(
         projectPath, methodsJsonPath, dataPath, coveredMethods,
-        config.additionalInstrumentedPackages(), statistics
+        config.additionalInstrumentedPackages(), config.invocationWriter(), config.eventBuffers(),
+        config.recordingPolicy(), config.asyncSnapshots(), config.deduplicateSnippets(),
+        config.receiverDelta(), config.serializationBudget(), config.lazyModel(), statistics
     );
 
     if (statistics != null) {
@@ -172,6 +181,8 @@ public class Main {
         methodsJsonPath, testBasePath,
         config.usedEquality(),
         config.filterTests(),
+        config.incrementalGeneration(),
+        config.generationThreads(),
         statistics
     );
     addStatDuration(statistics, "generate", generateStart);
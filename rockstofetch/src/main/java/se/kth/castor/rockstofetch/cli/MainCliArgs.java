@@ -50,4 +50,10 @@ public interface MainCliArgs {
   )
   Optional<Path> runTests();
 
+  @Option(
+      names = {"--convert-events"},
+      description = "Converts an events file between the binary and the JSON format"
+  )
+  Optional<Path> convertEvents();
+
 }
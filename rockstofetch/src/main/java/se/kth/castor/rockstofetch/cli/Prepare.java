@@ -7,10 +7,15 @@ import se.kth.castor.rockstofetch.extract.CandidateMethodExtractor;
 import se.kth.castor.rockstofetch.extract.ExtractCandidateMethod;
 import se.kth.castor.rockstofetch.extract.MutationChainExtractor;
 import se.kth.castor.rockstofetch.extract.RecordingConfiguration;
+import se.kth.castor.rockstofetch.instrument.EventBuffers;
+import se.kth.castor.rockstofetch.instrument.GroupCommitWriter;
 import se.kth.castor.rockstofetch.instrument.InstrumentationConfiguration;
 import se.kth.castor.rockstofetch.instrument.RecordedMethod;
+import se.kth.castor.rockstofetch.instrument.RecordingPolicy;
 import se.kth.castor.rockstofetch.serialization.Json;
 import se.kth.castor.rockstofetch.serialization.RockySerializer;
+import se.kth.castor.rockstofetch.util.ModelSnapshot;
+import se.kth.castor.rockstofetch.util.SourceIndex;
 import se.kth.castor.rockstofetch.util.SpoonAccessor;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -21,6 +26,8 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
+import se.kth.castor.pankti.codemonkey.construction.solving.PlanStore;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
 import se.kth.castor.pankti.codemonkey.serialization.UnknownActionHandler;
 import se.kth.castor.pankti.codemonkey.util.Statistics;
 import spoon.reflect.declaration.CtClass;
@@ -38,13 +45,28 @@ public class Prepare {
       Path dataPath,
       List<RecordedMethod> coveredMethods,
       Set<String> additionalInstrumentedPackages,
+      GroupCommitWriter.Settings invocationWriter,
+      EventBuffers.Settings eventBuffers,
+      RecordingPolicy recordingPolicy,
+      boolean asyncSnapshots,
+      boolean deduplicateSnippets,
+      boolean receiverDelta,
+      SerializationBudget serializationBudget,
+      boolean lazyModel,
       Statistics statistics
   ) throws IOException {
-    SpoonAccessor spoonAccessor = new SpoonAccessor(projectPath);
+    SpoonAccessor spoonAccessor = SpoonAccessor.fromSnapshot(
+        projectPath, dataPath.resolve(ModelSnapshot.FILE_NAME)
+    );
+    SourceIndex.write(
+        dataPath.resolve(SourceIndex.FILE_NAME), projectPath, spoonAccessor.getFactory()
+    );
+    PlanStore planStore = PlanStore.load(dataPath.resolve(PlanStore.FILE_NAME));
 
     CandidateMethodExtractor candidateMethodExtractor = new CandidateMethodExtractor();
     var serializer = new RockySerializer(
-        spoonAccessor, Set.of(), Set.of(), Set.of(), UnknownActionHandler.fail(), statistics
+        spoonAccessor, Set.of(), Set.of(), Set.of(), UnknownActionHandler.fail(), planStore,
+        statistics
     );
 
     for (CtModule module : spoonAccessor.getFactory().getModel().getAllModules()) {
@@ -127,10 +149,13 @@ public class Prepare {
         methodsJson,
         new Json().prettyPrint(
             InstrumentationConfiguration.fromRecordingConfiguration(
-                configuration, packagesToInstrument, projectPath, dataPath, statistics != null
+                configuration, packagesToInstrument, projectPath, dataPath, statistics != null,
+                invocationWriter, eventBuffers, recordingPolicy, asyncSnapshots,
+                deduplicateSnippets, receiverDelta, serializationBudget, lazyModel
             )
         )
     );
+    planStore.save();
 
     return extractor.getToTrace().size();
   }
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import se.kth.castor.rockstofetch.extract.coverage.JacocoFacade.JacocoCounter.Type;
 import se.kth.castor.rockstofetch.instrument.RecordedMethod;
+import se.kth.castor.rockstofetch.util.MavenClasspath;
 import java.io.IOException;
 import java.lang.ProcessBuilder.Redirect;
 import java.lang.constant.MethodTypeDesc;
@@ -209,7 +210,10 @@ public class JacocoFacade {
 
   private static Collection<Path> getClassfileArguments(Path projectDirectory) {
     SpoonPom pomFile = new MavenLauncher(
-        projectDirectory.toAbsolutePath().toString(), SOURCE_TYPE.APP_SOURCE, Pattern.compile(".+")
+        projectDirectory.toAbsolutePath().toString(),
+        SOURCE_TYPE.APP_SOURCE,
+        MavenClasspath.resolve(projectDirectory),
+        Pattern.compile(".+")
     ).getPomFile();
 
     Set<Path> classFilePaths = new HashSet<>();
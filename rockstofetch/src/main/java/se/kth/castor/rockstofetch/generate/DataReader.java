@@ -4,9 +4,14 @@ import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event;
 import se.kth.castor.rockstofetch.instrument.RecordedInvocation;
 import se.kth.castor.rockstofetch.instrument.RecordedMockedInvocation;
 import se.kth.castor.rockstofetch.instrument.RecordedNestedInvocation;
+import se.kth.castor.rockstofetch.serialization.EventLogFormat;
+import se.kth.castor.rockstofetch.serialization.EventLogReader;
 import se.kth.castor.rockstofetch.serialization.Json;
+import se.kth.castor.rockstofetch.serialization.MappedLines;
+import se.kth.castor.rockstofetch.serialization.SnippetStore;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -25,41 +30,43 @@ public class DataReader {
     Path mockedInvocationsPath = dir.resolve("mocked-invocations.json");
     Path nestedInvocationsPath = dir.resolve("nested-invocations.json");
 
-    Json json = new Json();
+    Json json = new Json(SnippetStore.load(dir.resolve(SnippetStore.FILE_NAME)));
 
     Map<UUID, LoadedInvocation> invocationMap = new HashMap<>();
 
-    try (var lines = Files.lines(invocationsPath)) {
-      for (String line : (Iterable<String>) lines::iterator) {
-        RecordedInvocation invocation = Objects.requireNonNull(
-            json.fromJson(line, RecordedInvocation.class)
-        );
-        invocationMap.put(invocation.invocationId(), new LoadedInvocation(invocation));
-      }
+    var invocations = readJsonLines(json, invocationsPath, RecordedInvocation.class);
+    for (RecordedInvocation invocation : invocations) {
+      invocationMap.put(invocation.invocationId(), new LoadedInvocation(invocation));
     }
 
+    // The parent line might be missing if the agent dropped it or was cut off at shutdown
+    int orphans = 0;
     if (Files.exists(nestedInvocationsPath)) {
-      try (var lines = Files.lines(nestedInvocationsPath)) {
-        for (String line : (Iterable<String>) lines::iterator) {
-          RecordedNestedInvocation nestedInvocation = Objects.requireNonNull(
-              json.fromJson(line, RecordedNestedInvocation.class)
-          );
-          invocationMap.get(nestedInvocation.parentInvocationId()).addNested(nestedInvocation);
+      var nested = readJsonLines(json, nestedInvocationsPath, RecordedNestedInvocation.class);
+      for (RecordedNestedInvocation nestedInvocation : nested) {
+        LoadedInvocation parent = invocationMap.get(nestedInvocation.parentInvocationId());
+        if (parent == null) {
+          orphans++;
+          continue;
         }
+        parent.addNested(nestedInvocation);
       }
     }
 
     if (Files.exists(mockedInvocationsPath)) {
-      try (var lines = Files.lines(mockedInvocationsPath)) {
-        for (String line : (Iterable<String>) lines::iterator) {
-          RecordedMockedInvocation mockedInvocation = Objects.requireNonNull(
-              json.fromJson(line, RecordedMockedInvocation.class)
-          );
-
-          invocationMap.get(mockedInvocation.parentInvocationId()).addMocked(mockedInvocation);
+      var mocked = readJsonLines(json, mockedInvocationsPath, RecordedMockedInvocation.class);
+      for (RecordedMockedInvocation mockedInvocation : mocked) {
+        LoadedInvocation parent = invocationMap.get(mockedInvocation.parentInvocationId());
+        if (parent == null) {
+          orphans++;
+          continue;
         }
+        parent.addMocked(mockedInvocation);
       }
     }
+    if (orphans > 0) {
+      System.err.println("Skipped " + orphans + " nested or mocked invocations without parent");
+    }
 
     // Propagate nested mocked calls
     invocationMap.values().forEach(it -> propagateMockedToParents(invocationMap, it));
@@ -90,24 +97,49 @@ public class DataReader {
   }
 
   /**
-   * Reads events in a lazy stream. The caller needs to close the stream.
+   * Reads events in a lazy stream. The caller needs to close the stream. Traces written in the old
+   * JSON format are read if no binary event log exists.
    *
    * @param dir the directory to read them from
    * @return a stream with all events
    * @throws IOException if the events file can not be opened
    */
   public Stream<Event> readEvents(Path dir) throws IOException {
+    Path binaryLog = dir.resolve(EventLogFormat.FILE_NAME);
+    if (Files.exists(binaryLog) || !Files.exists(dir.resolve(EventLogFormat.JSON_FILE_NAME))) {
+      return EventLogReader.readEvents(binaryLog);
+    }
+
     Json json = new Json();
 
-    //noinspection resource
-    return Files.lines(dir.resolve("events.json"))
-        .map(line -> {
-          try {
-            return json.fromJson(line, Event.class);
-          } catch (IOException e) {
-            throw new UncheckedIOException(e);
-          }
-        });
+    return MappedLines.lines(dir.resolve(EventLogFormat.JSON_FILE_NAME))
+        .map(line -> parseJson(json, line, Event.class));
+  }
+
+  /**
+   * Parses a file with one JSON object per line. The file is memory mapped and the lines are
+   * decoded in parallel.
+   *
+   * @param json the json instance to use
+   * @param file the file to read
+   * @param type the type of each line
+   * @param <T> the type of each line
+   * @return the parsed lines in file order
+   * @throws IOException if the file could not be mapped
+   */
+  private static <T> List<T> readJsonLines(Json json, Path file, Class<T> type)
+      throws IOException {
+    return MappedLines.lines(file).parallel()
+        .map(line -> parseJson(json, line, type))
+        .toList();
+  }
+
+  private static <T> T parseJson(Json json, ByteBuffer line, Class<T> type) {
+    try {
+      return Objects.requireNonNull(json.fromJson(line, type));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   public record LoadedInvocation(
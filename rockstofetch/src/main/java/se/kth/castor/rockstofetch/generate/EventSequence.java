@@ -15,8 +15,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import se.kth.castor.pankti.codemonkey.util.Statistics;
@@ -28,17 +31,50 @@ public class EventSequence {
 
   private final Map<Integer, ObjectContext> objects;
   private final Statistics statistics;
+  // Null if requests are not tracked
+  private final Set<ContextRequest> requests;
 
-  private EventSequence(Map<Integer, ObjectContext> objects, Statistics statistics) {
+  private EventSequence(
+      Map<Integer, ObjectContext> objects, Statistics statistics, Set<ContextRequest> requests
+  ) {
     this.objects = Collections.unmodifiableMap(objects);
     this.statistics = statistics;
+    this.requests = requests;
 
     if (statistics != null) {
       statistics.getTraceBased().setTotalConstructableObjects(objects.size());
     }
   }
 
+  /**
+   * {@return a view of this sequence that remembers the contexts requested through it}
+   */
+  public EventSequence withRequestTracking() {
+    return new EventSequence(objects, statistics, new LinkedHashSet<>());
+  }
+
+  /**
+   * {@return the contexts requested through this view, in request order}
+   */
+  public List<ContextRequest> getRequests() {
+    return requests == null ? List.of() : List.copyOf(requests);
+  }
+
+  /**
+   * Finds a context without recording statistics or tracking the request.
+   *
+   * @param request the object and timestamp to find the context for
+   * @return the context, if the object is known
+   */
+  public Optional<ObjectContext> findContext(ContextRequest request) {
+    return Optional.ofNullable(objects.get(request.object()))
+        .map(it -> it.atTimestamp(request.timestamp()));
+  }
+
   public ObjectContext getContext(int object, long timestamp) {
+    if (requests != null) {
+      requests.add(new ContextRequest(object, timestamp));
+    }
     ObjectContext context = objects.get(object);
     if (context == null) {
       if (statistics != null) {
@@ -112,7 +148,11 @@ public class EventSequence {
             ObjectParseContext::toFinalContext
         ));
 
-    return new EventSequence(objectContexts, statistics);
+    return new EventSequence(objectContexts, statistics, null);
+  }
+
+  public record ContextRequest(int object, long timestamp) {
+
   }
 
   public record ObjectContext(
@@ -0,0 +1,285 @@
+package se.kth.castor.rockstofetch.generate;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import se.kth.castor.rockstofetch.generate.DataReader.LoadedInvocation;
+import se.kth.castor.rockstofetch.generate.EventSequence.ContextRequest;
+import se.kth.castor.rockstofetch.generate.EventSequence.ObjectContext;
+import se.kth.castor.rockstofetch.serialization.Json;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import se.kth.castor.pankti.codemonkey.construction.solving.PlanStore;
+
+/**
+ * Remembers the inputs and the output of every test class of the last generation, so that an
+ * incremental generation only generates and post-processes test classes whose inputs changed.
+ * <p>
+ * The inputs of a test class are its recorded invocations, the source of the class under test and
+ * the event contexts requested while generating it. Invocations are compared without their random
+ * ids. The requested contexts are only known after generating, so they are stored as the requests
+ * and a hash of their result, which is compared by repeating the requests on the new events. As
+ * the generator is deterministic, it repeats exactly these requests for unchanged inputs.
+ * <p>
+ * Everything else the generated source depends on, like the settings, the code of the generator and
+ * the classpath of the project, is part of the input hash as well (see {@link #environmentHash}).
+ * <p>
+ * The output is the final source of the test class. It is stored as well, as the test files are
+ * deleted before measuring coverage.
+ */
+public class GenerationCache {
+
+  public static final String FILE_NAME = "rtf-generation-cache.json";
+
+  private static final Pattern UUID_PATTERN = Pattern.compile(
+      "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}"
+  );
+
+  // Hashed once, the generator does not change while it runs
+  private static volatile String generatorHash;
+
+  private final Path file;
+  private final Map<String, CachedTestClass> testClasses;
+  private final Json json;
+
+  private GenerationCache(Path file, Map<String, CachedTestClass> testClasses) {
+    this.file = file;
+    this.testClasses = new HashMap<>(testClasses);
+    this.json = new Json();
+  }
+
+  /**
+   * Loads a cache from disk. The file does not need to exist and an unreadable file is treated as
+   * empty, as everything can be generated again.
+   *
+   * @param file the file the cache is stored in
+   * @return the loaded cache
+   */
+  public static GenerationCache load(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return new GenerationCache(file, Map.of());
+    }
+    try {
+      Contents contents = new Json().fromJson(Files.readString(file), Contents.class);
+      return new GenerationCache(file, contents.testClasses());
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not load generation cache " + file + ": " + e);
+      return new GenerationCache(file, Map.of());
+    }
+  }
+
+  /**
+   * Hashes the inputs of a test class that are known before generating it.
+   *
+   * @param invocations the invocations the test class is generated from
+   * @param classUnderTestSource the source of the class under test
+   * @param settings everything else influencing the generated source, e.g. the equality function
+   *     and the {@link #environmentHash environment hash}
+   * @return the hash
+   */
+  @SuppressWarnings("UnstableApiUsage")
+  public String inputHash(
+      List<LoadedInvocation> invocations, String classUnderTestSource, String settings
+  ) {
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(settings, StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(classUnderTestSource, StandardCharsets.UTF_8)
+        .putByte((byte) 0);
+    // The order of invocations of the same method is not deterministic
+    List<String> normalized = invocations.stream()
+        .map(this::normalizedJson)
+        .sorted()
+        .toList();
+    for (String invocation : normalized) {
+      hasher.putString(invocation, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Hashes the environment of a generation: the code of the generator itself and the classpath of
+   * the project. Jars and class files are identified by their content, classpath entries by their
+   * path, size and modification time, so an updated dependency invalidates the cache even if its
+   * path stays the same.
+   *
+   * @param classpath the resolved classpath of the project
+   * @return the hash
+   */
+  @SuppressWarnings("UnstableApiUsage")
+  public static String environmentHash(String[] classpath) {
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(generatorHash(), StandardCharsets.UTF_8)
+        .putByte((byte) 0);
+    for (String entry : classpath) {
+      hasher.putString(entry, StandardCharsets.UTF_8).putByte((byte) 0);
+      Path path = Path.of(entry);
+      try (Stream<Path> files = Files.walk(path)) {
+        for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+          BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+          hasher.putString(path.relativize(file).toString(), StandardCharsets.UTF_8)
+              .putLong(attributes.size())
+              .putLong(attributes.lastModifiedTime().toMillis());
+        }
+      } catch (IOException e) {
+        // Missing entries are skipped by the compiler as well, the path is still part of the hash
+        System.err.println("Could not hash classpath entry " + path + ": " + e);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static String generatorHash() {
+    String hash = generatorHash;
+    if (hash != null) {
+      return hash;
+    }
+    // The generator consists of this project and code-monkey, which does the serialization
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (Class<?> type : List.of(GenerationCache.class, PlanStore.class)) {
+      Path location;
+      try {
+        location = Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+      } catch (URISyntaxException | RuntimeException e) {
+        throw new IllegalStateException("Could not locate code of " + type.getName(), e);
+      }
+      try (Stream<Path> files = Files.walk(location)) {
+        for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+          hasher.putString(location.relativize(file).toString(), StandardCharsets.UTF_8)
+              .putByte((byte) 0)
+              .putBytes(Files.readAllBytes(file))
+              .putByte((byte) 0);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not hash generator code " + location, e);
+      }
+    }
+    hash = hasher.hash().toString();
+    generatorHash = hash;
+    return hash;
+  }
+
+  /**
+   * Finds the output of a test class, if none of its inputs changed.
+   *
+   * @param testClassName the qualified name of the test class
+   * @param inputHash the {@link #inputHash input hash} of the test class
+   * @param events the events of the current generation
+   * @return the source of the test class or an empty optional if it needs to be generated
+   */
+  public Optional<String> findUnchanged(
+      String testClassName, String inputHash, EventSequence events
+  ) {
+    CachedTestClass cached = testClasses.get(testClassName);
+    if (cached == null || !cached.inputHash().equals(inputHash)) {
+      return Optional.empty();
+    }
+    if (!cached.contextHash().equals(contextHash(cached.contexts(), events))) {
+      return Optional.empty();
+    }
+    return Optional.of(cached.source());
+  }
+
+  /**
+   * Stores the output of a generated test class.
+   *
+   * @param testClassName the qualified name of the test class
+   * @param inputHash the {@link #inputHash input hash} of the test class
+   * @param trackedEvents the {@link EventSequence#withRequestTracking() tracking view} of the
+   *     events the test class was generated with
+   * @param source the source of the test class
+   */
+  public void put(
+      String testClassName, String inputHash, EventSequence trackedEvents, String source
+  ) {
+    List<ContextRequest> requests = trackedEvents.getRequests();
+    testClasses.put(
+        testClassName,
+        new CachedTestClass(inputHash, requests, contextHash(requests, trackedEvents), source)
+    );
+  }
+
+  /**
+   * Forgets all test classes except the given ones.
+   *
+   * @param testClassNames the qualified names of the test classes to keep
+   */
+  public void retainAll(Set<String> testClassNames) {
+    testClasses.keySet().retainAll(testClassNames);
+  }
+
+  /**
+   * Writes the cache to disk.
+   *
+   * @throws IOException if the file could not be written
+   */
+  public void save() throws IOException {
+    Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    // Replace atomically, a crash must not leave a truncated cache behind
+    Path temp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+    Files.writeString(temp, json.toJson(new Contents(testClasses)), StandardCharsets.UTF_8);
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private String normalizedJson(LoadedInvocation invocation) {
+    String serialized;
+    try {
+      serialized = json.toJson(invocation);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // Replace random ids by their order of appearance, which is the same in every run
+    Map<String, String> ids = new HashMap<>();
+    Matcher matcher = UUID_PATTERN.matcher(serialized);
+    return matcher.replaceAll(
+        result -> "id" + ids.computeIfAbsent(result.group(), ignored -> String.valueOf(ids.size()))
+    );
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private String contextHash(List<ContextRequest> requests, EventSequence events) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (ContextRequest request : requests) {
+      Optional<ObjectContext> context = events.findContext(request);
+      try {
+        hasher.putString(
+            context.isPresent() ? json.toJson(context.get()) : "missing",
+            StandardCharsets.UTF_8
+        );
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      hasher.putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  record CachedTestClass(
+      String inputHash,
+      List<ContextRequest> contexts,
+      String contextHash,
+      String source
+  ) {
+
+  }
+
+  record Contents(Map<String, CachedTestClass> testClasses) {
+
+  }
+
+}
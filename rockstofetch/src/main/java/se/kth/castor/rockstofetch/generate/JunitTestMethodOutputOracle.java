@@ -29,8 +29,6 @@ import spoon.reflect.reference.CtTypeReference;
 
 public class JunitTestMethodOutputOracle {
 
-  private static int counter = 0;
-
   private final Factory factory;
   private final LoadedInvocation loadedInvocation;
   private final EventSequence events;
@@ -41,7 +39,8 @@ public class JunitTestMethodOutputOracle {
       Factory factory,
       LoadedInvocation loadedInvocation,
       EventSequence events,
-      BiFunction<AssertionType, CtTypeReference<?>, CtStatement> expectedActualEqualityFunction
+      BiFunction<AssertionType, CtTypeReference<?>, CtStatement> expectedActualEqualityFunction,
+      int testIndex
   ) {
     this.factory = factory;
     this.loadedInvocation = loadedInvocation;
@@ -49,7 +48,7 @@ public class JunitTestMethodOutputOracle {
     this.expectedActualEqualityFunction = expectedActualEqualityFunction;
     this.testMethodName = Spoons.testName(
         loadedInvocation.invocation().recordedMethod(),
-        "" + counter++
+        "" + testIndex
     );
   }
 
@@ -19,6 +19,7 @@ import static net.bytebuddy.matcher.ElementMatchers.none;
 import static net.bytebuddy.matcher.ElementMatchers.not;
 
 import se.kth.castor.rockstofetch.extract.ClassSerializationType;
+import se.kth.castor.rockstofetch.instrument.aspects.MethodId;
 import se.kth.castor.rockstofetch.instrument.aspects.MutatorCallTraceFactory;
 import se.kth.castor.rockstofetch.instrument.aspects.SetFieldTraceFactory;
 import se.kth.castor.rockstofetch.serialization.Json;
@@ -37,6 +38,7 @@ import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.agent.builder.AgentBuilder.Listener;
 import net.bytebuddy.agent.builder.AgentBuilder.RedefinitionStrategy;
 import net.bytebuddy.agent.builder.AgentBuilder.Transformer.ForAdvice;
+import net.bytebuddy.asm.Advice;
 import net.bytebuddy.asm.MemberSubstitution;
 import net.bytebuddy.description.ByteCodeElement;
 import net.bytebuddy.description.method.MethodDescription;
@@ -51,6 +53,8 @@ import net.bytebuddy.matcher.ElementMatcher.Junction;
 import net.bytebuddy.matcher.ElementMatcher.Junction.AbstractBase;
 import net.bytebuddy.matcher.ElementMatchers;
 import net.bytebuddy.utility.JavaModule;
+import se.kth.castor.pankti.codemonkey.construction.solving.PlanStore;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
 import se.kth.castor.pankti.codemonkey.util.GlobalSwitches;
 import se.kth.castor.pankti.codemonkey.util.Statistics;
 
@@ -80,6 +84,44 @@ public class AgentMain {
    * Whether to collect usage statistics
    */
   public static Statistics statistics;
+  /**
+   * Settings for writing recorded invocations
+   */
+  public static GroupCommitWriter.Settings invocationWriterSettings;
+  /**
+   * Settings for buffering traced events
+   */
+  public static EventBuffers.Settings eventBufferSettings;
+  /**
+   * Decides which invocations of methods under test are recorded
+   */
+  public static RecordingSampler recordingSampler;
+  /**
+   * Whether receivers and parameters of methods under test are serialized off the application
+   * thread
+   */
+  public static boolean asyncSnapshots;
+  /**
+   * Whether structurally equal objects reuse their snippet and snippets are stored only once
+   */
+  public static boolean deduplicateSnippets;
+  /**
+   * Whether receivers whose reachable state did not change reuse their snippet from before the
+   * invocation
+   */
+  public static boolean receiverDelta;
+  /**
+   * Limits the work spent on serializing a single object graph
+   */
+  public static SerializationBudget serializationBudget;
+  /**
+   * Whether the Spoon model only contains the project types that are looked up
+   */
+  public static boolean lazyModel;
+  /**
+   * Static construction plans, shared with the prepare and generation phases
+   */
+  public static PlanStore planStore;
 
   public static void premain(String arguments, Instrumentation instrumentation) throws IOException {
     Path methodsToInstrumentPath = Path.of(arguments);
@@ -99,6 +141,15 @@ public class AgentMain {
         .map(Entry::getKey)
         .collect(Collectors.toSet());
     mutationTraceTypes = instrumentationConfiguration.mutationTraceTypes();
+    invocationWriterSettings = instrumentationConfiguration.invocationWriter();
+    eventBufferSettings = instrumentationConfiguration.eventBuffers();
+    asyncSnapshots = instrumentationConfiguration.asyncSnapshots();
+    deduplicateSnippets = instrumentationConfiguration.deduplicateSnippets();
+    receiverDelta = instrumentationConfiguration.receiverDelta();
+    serializationBudget = instrumentationConfiguration.serializationBudget();
+    lazyModel = instrumentationConfiguration.lazyModel();
+    planStore = PlanStore.load(dataPath.resolve(PlanStore.FILE_NAME));
+    setupPlanStoreSaver();
     statistics = instrumentationConfiguration.collectStatistics()
         ? new Json().fromJson(Files.readString(dataPath.resolve("stats.json")), Statistics.class)
         : null;
@@ -106,6 +157,9 @@ public class AgentMain {
     if (statistics != null) {
       setupStatisticsDumper(dataPath.resolve("stats.json"));
     }
+    recordingSampler = new RecordingSampler(
+        instrumentationConfiguration.recordingPolicy(), statistics
+    );
 
     Junction<TypeDescription> allTypesMatcher = matcherForRecordedMethodTypes(
         instrumentationConfiguration.methods()
@@ -146,8 +200,7 @@ public class AgentMain {
         .type(packagesToInstrumentMatcher)
         .and(allTypesMatcher)
         .transform(
-            new ForAdvice()
-                .include(Thread.currentThread().getContextClassLoader())
+            adviceWithMethodIds()
                 .advice(
                     matcherForRecordedMethods(instrumentationConfiguration.methods()),
                     "se.kth.castor.rockstofetch.instrument.aspects.MutInvocationPointcut"
@@ -169,8 +222,7 @@ public class AgentMain {
                 )
         )
         .transform(
-            new ForAdvice()
-                .include(Thread.currentThread().getContextClassLoader())
+            adviceWithMethodIds()
                 .advice(
                     isMethod().and(not(isStatic())).and(isAccessible)
                         .or(
@@ -202,6 +254,30 @@ public class AgentMain {
         .installOn(instrumentation);
   }
 
+  /**
+   * Creates an advice transformer that binds {@link MethodId} parameters to the dense id of the
+   * instrumented method.
+   *
+   * @return the transformer
+   */
+  private static ForAdvice adviceWithMethodIds() {
+    return new ForAdvice(
+        Advice.withCustomMapping().bind(MethodId.class, MethodIds.offsetMapping())
+    )
+        .include(Thread.currentThread().getContextClassLoader());
+  }
+
+  private static void setupPlanStoreSaver() {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        planStore.save();
+      } catch (IOException e) {
+        // Only a cache, the next phase solves the plans again
+        e.printStackTrace();
+      }
+    }));
+  }
+
   private static void setupStatisticsDumper(Path statisticsPath) {
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       try {
@@ -1,10 +1,14 @@
 package se.kth.castor.rockstofetch.instrument;
 
+import se.kth.castor.rockstofetch.instrument.MethodIds.MethodInfo;
 import se.kth.castor.rockstofetch.serialization.JavaSnippet;
 import se.kth.castor.rockstofetch.serialization.Json;
 import se.kth.castor.rockstofetch.serialization.RockySerializer;
 import se.kth.castor.rockstofetch.serialization.Serializers;
+import se.kth.castor.rockstofetch.serialization.SnippetStore;
 import se.kth.castor.rockstofetch.util.Mocks;
+import se.kth.castor.rockstofetch.util.ModelSnapshot;
+import se.kth.castor.rockstofetch.util.SourceIndex;
 import se.kth.castor.rockstofetch.util.SpoonAccessor;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -13,10 +17,15 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import se.kth.castor.pankti.codemonkey.construction.actions.Action;
 import se.kth.castor.pankti.codemonkey.construction.actions.ActionMockObject;
 import se.kth.castor.pankti.codemonkey.construction.actions.ActionObjectReference;
@@ -41,6 +50,13 @@ public class CaptureContextHolder {
   static final AtomicInteger UNIQUE_VARIABLE_SUFFIX;
   static final SpoonAccessor SPOON_ACCESSOR;
   private static final RockySerializer SERIALIZER;
+  private static final GroupCommitWriter.Sink INVOCATIONS_SINK;
+  private static final GroupCommitWriter.Sink NESTED_INVOCATIONS_SINK;
+  private static final GroupCommitWriter.Sink MOCKED_INVOCATIONS_SINK;
+  // Null if snapshots are serialized synchronously
+  private static final SnapshotSerializer SNAPSHOT_SERIALIZER;
+  // Null if snippets are not deduplicated
+  private static final SnippetCache SNIPPET_CACHE;
 
   static {
     IS_IN_AGENT_CODE = ThreadLocal.withInitial(() -> false);
@@ -52,9 +68,18 @@ public class CaptureContextHolder {
             return deque;
           });
       PERSISTENCE_DIR = AgentMain.dataPath;
-      JSON = new Json();
       UNIQUE_VARIABLE_SUFFIX = new AtomicInteger();
-      SPOON_ACCESSOR = new SpoonAccessor(AgentMain.projectPath);
+      if (AgentMain.lazyModel) {
+        SPOON_ACCESSOR = SpoonAccessor.lazy(
+            AgentMain.projectPath,
+            PERSISTENCE_DIR.resolve(SourceIndex.FILE_NAME),
+            PERSISTENCE_DIR.resolve(ModelSnapshot.FILE_NAME)
+        );
+      } else {
+        SPOON_ACCESSOR = SpoonAccessor.fromSnapshot(
+            AgentMain.projectPath, PERSISTENCE_DIR.resolve(ModelSnapshot.FILE_NAME)
+        );
+      }
       SERIALIZER = new RockySerializer(
           SPOON_ACCESSOR,
           AgentMain.mockConstructTypes,
@@ -64,8 +89,31 @@ public class CaptureContextHolder {
               .addHandler(ActionMockObject.class, new LookupMockHandler())
               .addHandler(ActionObjectReference.class, new MarkerObjectRefHandler()),
           UNIQUE_VARIABLE_SUFFIX,
+          AgentMain.planStore,
+          AgentMain.serializationBudget,
           AgentMain.statistics
       );
+      GroupCommitWriter writer = new GroupCommitWriter(
+          AgentMain.invocationWriterSettings, AgentMain.statistics
+      );
+      INVOCATIONS_SINK = writer.open(PERSISTENCE_DIR.resolve("invocations.json"));
+      NESTED_INVOCATIONS_SINK = writer.open(PERSISTENCE_DIR.resolve("nested-invocations.json"));
+      MOCKED_INVOCATIONS_SINK = writer.open(PERSISTENCE_DIR.resolve("mocked-invocations.json"));
+      if (AgentMain.deduplicateSnippets) {
+        JSON = new Json(SnippetStore.writingTo(
+            writer.open(PERSISTENCE_DIR.resolve(SnippetStore.FILE_NAME))::append
+        ));
+        SNIPPET_CACHE = new SnippetCache(
+            new ObjectFingerprinter(AgentMain.mockConstructTypes, AgentMain.mutationTraceTypes),
+            AgentMain.statistics
+        );
+      } else {
+        JSON = new Json();
+        SNIPPET_CACHE = null;
+      }
+      SNAPSHOT_SERIALIZER = AgentMain.asyncSnapshots
+          ? new SnapshotSerializer(AgentMain.statistics)
+          : null;
     }
   }
 
@@ -79,6 +127,14 @@ public class CaptureContextHolder {
     return guard;
   }
 
+  /**
+   * Enters agent code without allocating a guard. Only call this if
+   * {@link #isInAgentCode()} returned false and leave with {@code exitAgentCode(false)}.
+   */
+  public static void enterAgentCodeUnguarded() {
+    IS_IN_AGENT_CODE.set(true);
+  }
+
   public static void exitAgentCode(boolean previousValue) {
     IS_IN_AGENT_CODE.set(previousValue);
   }
@@ -184,7 +240,9 @@ public class CaptureContextHolder {
    * @return the serialized {@link JavaSnippet}
    */
   public static JavaSnippet toSnippet(Object o, Class<?> targetType, String why) {
-    return Serializers.toSnippet(SERIALIZER, o, targetType, why);
+    return cached(
+        o, targetType.getName(), () -> Serializers.toSnippet(SERIALIZER, o, targetType, why)
+    );
   }
 
   /**
@@ -196,52 +254,103 @@ public class CaptureContextHolder {
    * @return the serialized {@link JavaSnippet}
    */
   public static JavaSnippet toSnippet(Object o, CtTypeReference<?> assignedType, String why) {
-    return Serializers.toSnippet(SERIALIZER, o, assignedType, why);
+    return cached(
+        o, assignedType.toString(), () -> Serializers.toSnippet(SERIALIZER, o, assignedType, why)
+    );
   }
 
-  public synchronized static void persistInvocation(RecordedInvocation recordedInvocation) {
-    try {
-      String json = JSON.toJson(recordedInvocation);
-      if (!Files.exists(PERSISTENCE_DIR)) {
-        Files.createDirectories(PERSISTENCE_DIR);
-      }
-      Files.writeString(
-          PERSISTENCE_DIR.resolve("invocations.json"), json + System.lineSeparator(),
-          StandardOpenOption.CREATE,
-          StandardOpenOption.APPEND
-      );
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+  private static JavaSnippet cached(
+      Object o,
+      String targetType,
+      Supplier<JavaSnippet> serializer
+  ) {
+    if (SNIPPET_CACHE == null) {
+      return serializer.get();
     }
+    return SNIPPET_CACHE.get(o, targetType, serializer);
   }
 
-  public synchronized static void persistInvocation(RecordedNestedInvocation nestedInvocation) {
-    try {
-      String json = JSON.toJson(nestedInvocation);
-      if (!Files.exists(PERSISTENCE_DIR)) {
-        Files.createDirectories(PERSISTENCE_DIR);
-      }
-      Files.writeString(
-          PERSISTENCE_DIR.resolve("nested-invocations.json"), json + System.lineSeparator(),
-          StandardOpenOption.CREATE,
-          StandardOpenOption.APPEND
-      );
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+  /**
+   * Captures the state of a receiver before a MUT runs, if receiver deltas are enabled and pay off
+   * for the method.
+   *
+   * @param receiver the receiver
+   * @param methodInfo the invoked method
+   * @return the captured state or null if there is none
+   */
+  public static ReceiverState captureReceiverState(Object receiver, MethodInfo methodInfo) {
+    if (!AgentMain.receiverDelta) {
+      return null;
     }
+    return ReceiverState.capture(receiver, methodInfo.receiverDeltaGate()).orElse(null);
+  }
+
+  /**
+   * Checks if a receiver still reaches the state captured before the invocation. If so, the
+   * receiver snippet from before the invocation can be reused.
+   *
+   * @param before the state captured before the invocation, may be null
+   * @param receiverPost the receiver after the invocation
+   * @return true if the receiver is unchanged
+   */
+  public static boolean isReceiverUnchanged(ReceiverState before, Object receiverPost) {
+    if (before == null || !before.isUnchanged(receiverPost)) {
+      return false;
+    }
+    if (AgentMain.statistics != null) {
+      AgentMain.statistics.getGeneral().addToCounter("receiverPostUnchanged", 1);
+    }
+    return true;
+  }
+
+  /**
+   * Serializes a receiver that changed during the invocation.
+   *
+   * @param before the state captured before the invocation, may be null
+   * @param receiverPost the receiver after the invocation
+   * @return the serialized receiver
+   */
+  public static JavaSnippet toReceiverPostSnippet(ReceiverState before, Object receiverPost) {
+    Supplier<JavaSnippet> serializer =
+        () -> toSnippet(receiverPost, receiverPost.getClass(), "receiver_post");
+    return before == null ? serializer.get() : before.serializeChanged(serializer);
+  }
+
+  /**
+   * Serializes a receiver that changed during the invocation, asynchronously if configured.
+   *
+   * @param before the state captured before the invocation, may be null
+   * @param receiverPost the receiver after the invocation
+   * @return the serialized receiver
+   */
+  public static CompletableFuture<JavaSnippet> toReceiverPostSnippetLater(
+      ReceiverState before,
+      Object receiverPost
+  ) {
+    Class<?> type = receiverPost.getClass();
+    return serializeLater(
+        new Object[]{receiverPost},
+        snapshot -> before == null
+            ? toSnippet(snapshot[0], type, "receiver_post")
+            : before.serializeChanged(() -> toSnippet(snapshot[0], type, "receiver_post"))
+    );
+  }
+
+  public static void persistInvocation(RecordedInvocation recordedInvocation) {
+    persist(INVOCATIONS_SINK, recordedInvocation);
   }
 
-  public synchronized static void persistInvocation(RecordedMockedInvocation mockedInvocation) {
+  public static void persistInvocation(RecordedNestedInvocation nestedInvocation) {
+    persist(NESTED_INVOCATIONS_SINK, nestedInvocation);
+  }
+
+  public static void persistInvocation(RecordedMockedInvocation mockedInvocation) {
+    persist(MOCKED_INVOCATIONS_SINK, mockedInvocation);
+  }
+
+  private static void persist(GroupCommitWriter.Sink sink, Object invocation) {
     try {
-      String json = JSON.toJson(mockedInvocation);
-      if (!Files.exists(PERSISTENCE_DIR)) {
-        Files.createDirectories(PERSISTENCE_DIR);
-      }
-      Files.writeString(
-          PERSISTENCE_DIR.resolve("mocked-invocations.json"), json + System.lineSeparator(),
-          StandardOpenOption.CREATE,
-          StandardOpenOption.APPEND
-      );
+      sink.append(JSON.toJson(invocation));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -250,11 +359,11 @@ public class CaptureContextHolder {
   public static List<JavaSnippet> getParameterSnippets(
       Object receiver,
       Object[] parameters,
-      RecordedMethod recordedMethod
+      MethodInfo methodInfo
   ) {
-    CtMethod<?> method = SPOON_ACCESSOR.getMethod(receiver.getClass(), recordedMethod);
+    CtMethod<?> method = methodInfo.sourceMethod(SPOON_ACCESSOR, receiver.getClass());
     List<JavaSnippet> parameterSnippets = new ArrayList<>();
-    for (int i = 0; i < recordedMethod.parameterTypes().size(); i++) {
+    for (int i = 0; i < methodInfo.recordedMethod().parameterTypes().size(); i++) {
       Object value = parameters[i];
       CtParameter<?> ctParameter = method.getParameters().get(i);
       parameterSnippets.add(toSnippet(value, ctParameter.getType(), "param"));
@@ -265,12 +374,87 @@ public class CaptureContextHolder {
   public static JavaSnippet getReturnValueSnippet(
       Object receiver,
       Object returned,
-      RecordedMethod recordedMethod
+      MethodInfo methodInfo
   ) {
-    CtMethod<?> method = SPOON_ACCESSOR.getMethod(receiver.getClass(), recordedMethod);
+    CtMethod<?> method = methodInfo.sourceMethod(SPOON_ACCESSOR, receiver.getClass());
     return toSnippet(returned, method.getType(), "returned");
   }
 
+  /**
+   * Like {@link #getParameterSnippets(Object, Object[], MethodInfo)}, but only takes a snapshot of
+   * the parameters and serializes it later, if asynchronous snapshots are enabled.
+   *
+   * @param receiver the receiver of the invocation
+   * @param parameters the parameters of the invocation
+   * @param methodInfo the invoked method
+   * @return the serialized parameters
+   */
+  public static CompletableFuture<List<JavaSnippet>> getParameterSnippetsLater(
+      Object receiver,
+      Object[] parameters,
+      MethodInfo methodInfo
+  ) {
+    // Resolve the source method on this thread, so the snapshot only contains the parameters
+    CtMethod<?> method = methodInfo.sourceMethod(SPOON_ACCESSOR, receiver.getClass());
+    int parameterCount = methodInfo.recordedMethod().parameterTypes().size();
+    return serializeLater(parameters, snapshot -> {
+      List<JavaSnippet> parameterSnippets = new ArrayList<>();
+      for (int i = 0; i < parameterCount; i++) {
+        CtParameter<?> ctParameter = method.getParameters().get(i);
+        parameterSnippets.add(toSnippet(snapshot[i], ctParameter.getType(), "param"));
+      }
+      return parameterSnippets;
+    });
+  }
+
+  /**
+   * Like {@link #getReturnValueSnippet(Object, Object, MethodInfo)}, but only takes a snapshot of
+   * the returned value and serializes it later, if asynchronous snapshots are enabled.
+   *
+   * @param receiver the receiver of the invocation
+   * @param returned the returned value
+   * @param methodInfo the invoked method
+   * @return the serialized return value
+   */
+  public static CompletableFuture<JavaSnippet> getReturnValueSnippetLater(
+      Object receiver,
+      Object returned,
+      MethodInfo methodInfo
+  ) {
+    CtMethod<?> method = methodInfo.sourceMethod(SPOON_ACCESSOR, receiver.getClass());
+    return serializeLater(
+        new Object[]{returned},
+        snapshot -> toSnippet(snapshot[0], method.getType(), "returned")
+    );
+  }
+
+  /**
+   * Like {@link #toSnippet(Object, Class, String)}, but only takes a snapshot of the object and
+   * serializes it later, if asynchronous snapshots are enabled.
+   *
+   * @param o the object to serialize
+   * @param why a human-readable reason for <em>why</em> this object is being serialized (used
+   *     for log messages)
+   * @return the serialized {@link JavaSnippet}
+   */
+  public static CompletableFuture<JavaSnippet> toSnippetLater(
+      Object o,
+      Class<?> targetType,
+      String why
+  ) {
+    return serializeLater(new Object[]{o}, snapshot -> toSnippet(snapshot[0], targetType, why));
+  }
+
+  private static <T> CompletableFuture<T> serializeLater(
+      Object[] roots,
+      Function<Object[], T> serializer
+  ) {
+    if (SNAPSHOT_SERIALIZER == null) {
+      return CompletableFuture.completedFuture(serializer.apply(roots));
+    }
+    return SNAPSHOT_SERIALIZER.submit(roots, getEffectiveMappingParent(), serializer);
+  }
+
   /**
    * An entry in the MUT stack. Represents an invocation of a MUT.
    *
@@ -288,14 +472,29 @@ public class CaptureContextHolder {
       int nextId
   ) {
 
-    public Integer getId(Object receiver) {
+    // Snapshots register their mocks from the serializer thread
+    public synchronized Integer getId(Object receiver) {
       return objectToIdMap.get(receiver);
     }
 
-    public void registerObject(String name, Object object, int id) {
+    public synchronized void registerObject(String name, Object object, int id) {
       idToNameMap.put(id, name);
       objectToIdMap.put(object, id);
     }
+
+    /**
+     * {@return a mutable copy of the {@link #objectToIdMap()}}
+     */
+    public synchronized Map<Object, Integer> copyObjectToIdMap() {
+      return new IdentityHashMap<>(objectToIdMap);
+    }
+
+    /**
+     * {@return a mutable copy of the {@link #idToNameMap()}}
+     */
+    public synchronized Map<Integer, String> copyIdToNameMap() {
+      return new HashMap<>(idToNameMap);
+    }
   }
 
   public record AgentCodeGuard(boolean wasInAgentCode) implements AutoCloseable {
@@ -322,11 +521,15 @@ public class CaptureContextHolder {
         Action action, CtTypeReference<?> assigned, String suggestedName, Object value
     ) {
       Factory factory = assigned.getFactory();
-      ClaimedMethodEntry mappingParent = CaptureContextHolder.getEffectiveMappingParent();
-      Integer id = mappingParent.getId(value);
+      SnapshotContext snapshot = SnapshotContext.current();
+      ClaimedMethodEntry mappingParent = snapshot != null
+          ? snapshot.mappingParent()
+          : CaptureContextHolder.getEffectiveMappingParent();
+      Object original = SnapshotContext.original(value);
+      Integer id = mappingParent.getId(original);
       if (id == null) {
         id = NEW_MOCK_COUNTER.getAndIncrement();
-        mappingParent.registerObject("mock:" + suggestedName, value, id);
+        mappingParent.registerObject("mock:" + suggestedName, original, id);
       }
       // FIXME: Delete
       if (value != null) {
@@ -0,0 +1,197 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import se.kth.castor.pankti.codemonkey.util.Statistics;
+import se.kth.castor.rockstofetch.serialization.EventLogWriter;
+
+/**
+ * Buffers traced events per application thread and merges them for the single event writer.
+ * <p>
+ * Every thread appends to its own {@link EventRing}, so threads never contend with each other. The
+ * writer repeatedly picks the buffer whose next event has the oldest timestamp and writes a run of
+ * events from it, until another buffer holds an older event. Events are only written below a
+ * watermark: the oldest timestamp that was already taken, but whose event is not published yet.
+ * This way a thread that took a timestamp is never overtaken by younger events of other threads.
+ * What happens when a buffer is full is configured by the {@link FullPolicy}.
+ */
+public final class EventBuffers {
+
+  /**
+   * The maximum number of events written from one buffer before looking at the others again.
+   */
+  private static final int MAX_RUN_LENGTH = 256;
+
+  private final Settings settings;
+  private final LogicalClock clock;
+  private final Statistics statistics;
+  private final Path spillDirectory;
+  private final List<EventRing> rings;
+  private final ThreadLocal<EventRing> localRing;
+  private final AtomicLong dropped;
+  private final AtomicLong spilled;
+  private final AtomicLong spillFileCounter;
+
+  EventBuffers(Settings settings, LogicalClock clock, Path spillDirectory, Statistics statistics) {
+    this.settings = settings;
+    this.clock = clock;
+    this.statistics = statistics;
+    this.spillDirectory = spillDirectory;
+    this.rings = new CopyOnWriteArrayList<>();
+    this.localRing = ThreadLocal.withInitial(this::register);
+    this.dropped = new AtomicLong();
+    this.spilled = new AtomicLong();
+    this.spillFileCounter = new AtomicLong();
+  }
+
+  private EventRing register() {
+    EventRing ring = new EventRing(Thread.currentThread(), this, settings.capacity());
+    rings.add(ring);
+    return ring;
+  }
+
+  /**
+   * Returns the buffer of the calling thread.
+   *
+   * @return the buffer of the calling thread
+   */
+  EventRing local() {
+    return localRing.get();
+  }
+
+  /**
+   * Writes a run of events, starting with the oldest pending one. Must only be called by the
+   * writer.
+   *
+   * @param writer the writer to write to
+   * @return true if at least one event was written
+   * @throws IOException if writing fails
+   */
+  boolean drainInto(EventLogWriter writer) throws IOException {
+    // Read the clock first: rings registered afterwards only publish younger timestamps
+    long watermark = clock.current();
+    for (EventRing ring : rings) {
+      watermark = Math.min(watermark, ring.unpublishedSince());
+    }
+
+    EventRing oldest = null;
+    long oldestTimestamp = Long.MAX_VALUE;
+    long runnerUpTimestamp = Long.MAX_VALUE;
+
+    for (EventRing ring : rings) {
+      // Check before looking for events, a terminated owner can not publish anything new
+      boolean abandoned = ring.isAbandoned();
+      if (!ring.hasNext()) {
+        if (abandoned) {
+          rings.remove(ring);
+        }
+        continue;
+      }
+      long timestamp = ring.peekTimestamp();
+      if (timestamp < oldestTimestamp) {
+        runnerUpTimestamp = oldestTimestamp;
+        oldestTimestamp = timestamp;
+        oldest = ring;
+      } else if (timestamp < runnerUpTimestamp) {
+        runnerUpTimestamp = timestamp;
+      }
+    }
+
+    if (oldest == null || oldestTimestamp >= watermark) {
+      return false;
+    }
+    int written = 0;
+    do {
+      oldest.writeNext(writer);
+      written++;
+    } while (written < MAX_RUN_LENGTH
+             && oldest.hasNext()
+             && oldest.peekTimestamp() <= runnerUpTimestamp
+             && oldest.peekTimestamp() < watermark);
+    return true;
+  }
+
+  /**
+   * Checks whether any buffer still holds events. Must only be called by the writer.
+   *
+   * @return true if no buffer holds events
+   * @throws IOException if reading spilled events fails
+   */
+  boolean isEmpty() throws IOException {
+    for (EventRing ring : rings) {
+      if (ring.hasNext()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long size() {
+    return rings.stream().mapToLong(EventRing::size).sum();
+  }
+
+  long droppedCount() {
+    return dropped.get();
+  }
+
+  long spilledCount() {
+    return spilled.get();
+  }
+
+  FullPolicy fullPolicy() {
+    return settings.fullPolicy();
+  }
+
+  Path nextSpillFile() {
+    return spillDirectory.resolve("events-spill-" + spillFileCounter.getAndIncrement() + ".bin");
+  }
+
+  void onDropped() {
+    dropped.getAndIncrement();
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter("eventBufferDropped", 1);
+    }
+  }
+
+  void onSpilled() {
+    spilled.getAndIncrement();
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter("eventBufferSpilled", 1);
+    }
+  }
+
+  /**
+   * What an application thread does when its buffer is full.
+   */
+  public enum FullPolicy {
+    /**
+     * Wait until the writer made room.
+     */
+    BLOCK,
+    /**
+     * Drop the event and count it in the statistics.
+     */
+    DROP,
+    /**
+     * Write the event to a spill file, which the writer reads back once it caught up.
+     */
+    SPILL
+  }
+
+  /**
+   * Tuning knobs for the {@link EventBuffers}.
+   *
+   * @param capacity the number of events each thread can buffer, a power of two
+   * @param fullPolicy what to do if a buffer is full
+   */
+  public record Settings(int capacity, FullPolicy fullPolicy) {
+
+    public static Settings defaults() {
+      return new Settings(2048, FullPolicy.SPILL);
+    }
+  }
+
+}
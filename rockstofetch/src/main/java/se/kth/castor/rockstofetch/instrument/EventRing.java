@@ -0,0 +1,277 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import se.kth.castor.rockstofetch.instrument.EventBuffers.FullPolicy;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.ConstructEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.SetFieldEvent;
+import se.kth.castor.rockstofetch.serialization.EventLogReader;
+import se.kth.castor.rockstofetch.serialization.EventLogWriter;
+
+/**
+ * A bounded single-producer, single-consumer ring of preallocated event slots, owned by one
+ * application thread.
+ * <p>
+ * Field writes are by far the most frequent event. They are stored in primitive slot columns, so
+ * publishing one allocates nothing. All other events are stored as a reference. If the ring is
+ * full, the {@link FullPolicy} of the {@link EventBuffers} decides what happens. Spilled events are
+ * written to a file and read back by the consumer once the ring ran empty, so the events of a
+ * thread are always consumed in the order they were published.
+ * <p>
+ * The owner takes the timestamp of an event through {@link #nextTimestamp(LogicalClock)} right
+ * before publishing it, so the merge timestamps of a ring are increasing. Until the event is
+ * published, the ring reports the timestamp as unpublished and the consumer holds back younger
+ * events of other rings.
+ */
+final class EventRing {
+
+  private final Thread owner;
+  private final EventBuffers buffers;
+  private final int mask;
+  private final AtomicLong produced;
+  private final AtomicLong consumed;
+  private final AtomicLong unpublishedSince;
+  private final Event[] events;
+  private final long[] timestamps;
+  private final int[] receivers;
+  private final int[] newValueIds;
+  private final int[] oldValueIds;
+
+  // Guarded by this. Only the owner attaches a spill, only the consumer detaches it.
+  private volatile EventLogWriter spill;
+  private Path spillFile;
+
+  // Only accessed by the consumer
+  private Path drainedSpillFile;
+  private EventLogReader drainedSpill;
+  private Event drainedSpillHead;
+
+  EventRing(Thread owner, EventBuffers buffers, int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    this.owner = owner;
+    this.buffers = buffers;
+    this.mask = capacity - 1;
+    this.produced = new AtomicLong();
+    this.consumed = new AtomicLong();
+    this.unpublishedSince = new AtomicLong(Long.MAX_VALUE);
+    this.events = new Event[capacity];
+    this.timestamps = new long[capacity];
+    this.receivers = new int[capacity];
+    this.newValueIds = new int[capacity];
+    this.oldValueIds = new int[capacity];
+  }
+
+  /**
+   * Takes the timestamp of the next event of the owner, which must be published right after.
+   *
+   * @param clock the clock to take the timestamp from
+   * @return the timestamp
+   */
+  long nextTimestamp(LogicalClock clock) {
+    // Announce before taking it, the consumer reads the clock before the announcements
+    unpublishedSince.set(clock.current());
+    return clock.next();
+  }
+
+  /**
+   * {@return a lower bound of the timestamp the owner is about to publish, or
+   * {@link Long#MAX_VALUE}}
+   */
+  long unpublishedSince() {
+    return unpublishedSince.get();
+  }
+
+  void publish(Event event) {
+    try {
+      long sequence = produced.get();
+      if (spill == null && hasCapacity(sequence)) {
+        events[slot(sequence)] = event;
+        produced.setRelease(sequence + 1);
+        return;
+      }
+      overflow(event);
+    } finally {
+      unpublishedSince.setRelease(Long.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Publishes a field write without allocating an event.
+   *
+   * @param timestamp the timestamp of the write
+   * @param receiver the id of the receiver
+   * @param newValueId the id of the new value or {@link EventLogWriter#NO_ID}
+   * @param oldValueId the id of the old value or {@link EventLogWriter#NO_ID}
+   */
+  void publishSetField(long timestamp, int receiver, int newValueId, int oldValueId) {
+    try {
+      long sequence = produced.get();
+      if (spill == null && hasCapacity(sequence)) {
+        int slot = slot(sequence);
+        events[slot] = null;
+        timestamps[slot] = timestamp;
+        receivers[slot] = receiver;
+        newValueIds[slot] = newValueId;
+        oldValueIds[slot] = oldValueId;
+        produced.setRelease(sequence + 1);
+        return;
+      }
+      overflow(new SetFieldEvent(
+          timestamp,
+          receiver,
+          newValueId == EventLogWriter.NO_ID ? null : newValueId,
+          oldValueId == EventLogWriter.NO_ID ? null : oldValueId
+      ));
+    } finally {
+      unpublishedSince.setRelease(Long.MAX_VALUE);
+    }
+  }
+
+  private boolean hasCapacity(long sequence) {
+    return sequence - consumed.getAcquire() < events.length;
+  }
+
+  private int slot(long sequence) {
+    return (int) (sequence & mask);
+  }
+
+  private void overflow(Event event) {
+    switch (buffers.fullPolicy()) {
+      case BLOCK -> {
+        long sequence = produced.get();
+        while (!hasCapacity(sequence)) {
+          Thread.onSpinWait();
+          Thread.yield();
+        }
+        events[slot(sequence)] = event;
+        produced.setRelease(sequence + 1);
+      }
+      case DROP -> buffers.onDropped();
+      case SPILL -> spill(event);
+    }
+  }
+
+  private synchronized void spill(Event event) {
+    try {
+      if (spill == null) {
+        spillFile = buffers.nextSpillFile();
+        spill = EventLogWriter.append(spillFile);
+      }
+      spill.write(event);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    buffers.onSpilled();
+  }
+
+  /**
+   * Checks whether an event is ready to be consumed. Must only be called by the consumer.
+   *
+   * @return true if {@link #peekTimestamp()} and {@link #writeNext(EventLogWriter)} can be called
+   * @throws IOException if reading spilled events fails
+   */
+  boolean hasNext() throws IOException {
+    if (drainedSpill != null) {
+      if (drainedSpillHead != null) {
+        return true;
+      }
+      if (drainedSpill.hasNext()) {
+        drainedSpillHead = drainedSpill.next();
+        return true;
+      }
+      drainedSpill.close();
+      Files.deleteIfExists(drainedSpillFile);
+      drainedSpill = null;
+      drainedSpillFile = null;
+    }
+
+    // Read the spill first: everything published before it was attached is visible afterwards
+    EventLogWriter currentSpill = spill;
+    if (consumed.get() < produced.getAcquire()) {
+      return true;
+    }
+    if (currentSpill == null) {
+      return false;
+    }
+    detachSpill();
+    return hasNext();
+  }
+
+  private void detachSpill() throws IOException {
+    synchronized (this) {
+      spill.close();
+      drainedSpillFile = spillFile;
+      spill = null;
+      spillFile = null;
+    }
+    drainedSpill = new EventLogReader(drainedSpillFile);
+  }
+
+  /**
+   * Returns the timestamp the next event is merged by. Requires {@link #hasNext()} to be true.
+   *
+   * @return the merge timestamp of the next event
+   */
+  long peekTimestamp() {
+    if (drainedSpillHead != null) {
+      return mergeTimestamp(drainedSpillHead);
+    }
+    int slot = slot(consumed.get());
+    Event event = events[slot];
+    return event != null ? mergeTimestamp(event) : timestamps[slot];
+  }
+
+  // Constructions are published after the events of their constructor, at their end timestamp
+  private static long mergeTimestamp(Event event) {
+    if (event instanceof ConstructEvent construct) {
+      return construct.endTimestamp();
+    }
+    return event.timestamp();
+  }
+
+  /**
+   * Writes the next event. Requires {@link #hasNext()} to be true.
+   *
+   * @param writer the writer to write to
+   * @throws IOException if writing fails
+   */
+  void writeNext(EventLogWriter writer) throws IOException {
+    if (drainedSpillHead != null) {
+      writer.write(drainedSpillHead);
+      drainedSpillHead = null;
+      return;
+    }
+
+    long sequence = consumed.get();
+    int slot = slot(sequence);
+    Event event = events[slot];
+    if (event != null) {
+      events[slot] = null;
+      writer.write(event);
+    } else {
+      writer.writeSetField(
+          timestamps[slot], receivers[slot], newValueIds[slot], oldValueIds[slot]
+      );
+    }
+    consumed.setRelease(sequence + 1);
+  }
+
+  /**
+   * Returns whether the owning thread terminated and will therefore never publish again.
+   *
+   * @return true if the owner terminated
+   */
+  boolean isAbandoned() {
+    return !owner.isAlive();
+  }
+
+  long size() {
+    return Math.max(0, produced.get() - consumed.get());
+  }
+
+}
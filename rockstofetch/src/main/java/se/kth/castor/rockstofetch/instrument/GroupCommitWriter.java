@@ -0,0 +1,226 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import se.kth.castor.pankti.codemonkey.util.Statistics;
+
+/**
+ * Appends lines to files from a single background thread.
+ * <p>
+ * Every file has its own bounded ring that application threads enqueue into. One drainer keeps a
+ * channel per file open and commits whole groups of lines with a single write. A group is written
+ * once a ring holds {@link Settings#batchSize()} lines or the oldest pending line waited for
+ * {@link Settings#maxDelayMillis()}. If a ring is full, producers wait for up to
+ * {@link Settings#offerTimeoutMillis()} before the line is dropped. Readers have to cope with
+ * nested and mocked invocations whose parent line was dropped.
+ */
+public class GroupCommitWriter {
+
+  private final Settings settings;
+  private final Statistics statistics;
+  private final List<Sink> sinks;
+  private final AtomicBoolean shutdownRequested;
+  private final AtomicLong backpressured;
+  private final AtomicLong dropped;
+  private final AtomicLong groupsCommitted;
+  private final Thread drainer;
+
+  public GroupCommitWriter(Settings settings, Statistics statistics) {
+    this.settings = settings;
+    this.statistics = statistics;
+    this.sinks = new CopyOnWriteArrayList<>();
+    this.shutdownRequested = new AtomicBoolean(false);
+    this.backpressured = new AtomicLong();
+    this.dropped = new AtomicLong();
+    this.groupsCommitted = new AtomicLong();
+
+    this.drainer = new Thread(this::drain);
+    this.drainer.setName("invocation-writer");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+  }
+
+  /**
+   * Registers a new file to append to. The file and its parent directories are created lazily.
+   *
+   * @param file the file to append to
+   * @return the sink to enqueue lines into
+   */
+  public Sink open(Path file) {
+    Sink sink = new Sink(file, new ArrayBlockingQueue<>(settings.ringCapacity()));
+    sinks.add(sink);
+    return sink;
+  }
+
+  private void drain() {
+    try (var ignored = CaptureContextHolder.enterAgentCode()) {
+      while (!shutdownRequested.get()) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(settings.maxDelayMillis()));
+        for (Sink sink : sinks) {
+          sink.commitPending();
+        }
+      }
+      // Producers write synchronously after the shutdown request, drain the rest
+      for (Sink sink : sinks) {
+        sink.commitPending();
+      }
+    } catch (Throwable e) {
+      e.printStackTrace();
+      // Not much we can do...
+      System.err.flush();
+      Runtime.getRuntime().halt(1);
+    }
+  }
+
+  private void shutdown() {
+    try {
+      System.out.println("Shutting down " + drainer.getName());
+      shutdownRequested.set(true);
+      LockSupport.unpark(drainer);
+      drainer.join(5000);
+      System.out.printf(
+          "Shutdown completed for %s. Groups: %d, backpressured: %d, dropped: %d%n",
+          drainer.getName(), groupsCommitted.get(), backpressured.get(), dropped.get()
+      );
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void addToCounter(String name) {
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter(name, 1);
+    }
+  }
+
+  public class Sink {
+
+    private final Path file;
+    private final BlockingQueue<String> ring;
+    private FileChannel channel;
+
+    private Sink(Path file, BlockingQueue<String> ring) {
+      this.file = file;
+      this.ring = ring;
+    }
+
+    /**
+     * Enqueues a line for writing. Blocks if the ring is full, and drops the line if it stays
+     * full for longer than the configured timeout. After shutdown was requested, lines are written
+     * synchronously instead.
+     *
+     * @param line the line to append, without line separator
+     * @return false if the line was dropped
+     */
+    public boolean append(String line) {
+      if (shutdownRequested.get()) {
+        writeNow(line);
+        return true;
+      }
+      boolean enqueued = enqueue(line);
+      // The drainer might have done its final pass in the meantime
+      if (shutdownRequested.get()) {
+        writeNow(null);
+      }
+      return enqueued;
+    }
+
+    private boolean enqueue(String line) {
+      if (ring.offer(line)) {
+        if (ring.size() >= settings.batchSize()) {
+          LockSupport.unpark(drainer);
+        }
+        return true;
+      }
+
+      backpressured.getAndIncrement();
+      addToCounter("invocationWriterBackpressured");
+      LockSupport.unpark(drainer);
+      try {
+        if (ring.offer(line, settings.offerTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      dropped.getAndIncrement();
+      addToCounter("invocationWriterDropped");
+      return false;
+    }
+
+    private synchronized void writeNow(String line) {
+      try {
+        commitPending();
+        if (line != null) {
+          write(List.of(line));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private synchronized void commitPending() throws IOException {
+      List<String> group = new ArrayList<>(settings.batchSize());
+      while (!ring.isEmpty()) {
+        group.clear();
+        ring.drainTo(group, settings.batchSize());
+        write(group);
+        groupsCommitted.getAndIncrement();
+      }
+    }
+
+    private void write(List<String> lines) throws IOException {
+      if (channel == null) {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE
+        );
+      }
+      StringBuilder builder = new StringBuilder();
+      for (String line : lines) {
+        builder.append(line).append(System.lineSeparator());
+      }
+      ByteBuffer buffer = StandardCharsets.UTF_8.encode(builder.toString());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Tuning knobs for the {@link GroupCommitWriter}.
+   *
+   * @param ringCapacity the number of lines each file can buffer
+   * @param batchSize the number of pending lines that triggers a commit
+   * @param maxDelayMillis the maximum time a line waits before it is committed
+   * @param offerTimeoutMillis how long producers wait on a full ring before dropping the line
+   */
+  public record Settings(
+      int ringCapacity,
+      int batchSize,
+      long maxDelayMillis,
+      long offerTimeoutMillis
+  ) {
+
+    public static Settings defaults() {
+      return new Settings(4096, 64, 200, 1000);
+    }
+  }
+
+}
@@ -7,6 +7,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
 
 public record InstrumentationConfiguration(
     List<RecordedMethod> methods,
@@ -16,7 +17,15 @@ public record InstrumentationConfiguration(
     Set<String> packagesToInstrument,
     Path projectPath,
     Path dataPath,
-    boolean collectStatistics
+    boolean collectStatistics,
+    GroupCommitWriter.Settings invocationWriter,
+    EventBuffers.Settings eventBuffers,
+    RecordingPolicy recordingPolicy,
+    boolean asyncSnapshots,
+    boolean deduplicateSnippets,
+    boolean receiverDelta,
+    SerializationBudget serializationBudget,
+    boolean lazyModel
 ) {
 
   public InstrumentationConfiguration {
@@ -24,6 +33,18 @@ public record InstrumentationConfiguration(
     nestedMethods = List.copyOf(nestedMethods);
     classTypes = Map.copyOf(classTypes);
     mutationTraceTypes = Set.copyOf(mutationTraceTypes);
+    if (invocationWriter == null) {
+      invocationWriter = GroupCommitWriter.Settings.defaults();
+    }
+    if (eventBuffers == null) {
+      eventBuffers = EventBuffers.Settings.defaults();
+    }
+    if (recordingPolicy == null) {
+      recordingPolicy = RecordingPolicy.defaults();
+    }
+    if (serializationBudget == null) {
+      serializationBudget = SerializationBudget.defaults();
+    }
   }
 
   public boolean isMocked(RecordedMethod method) {
@@ -39,7 +60,15 @@ public record InstrumentationConfiguration(
       Set<String> packagesToInstrument,
       Path projectPath,
       Path dataPath,
-      boolean collectStatistics
+      boolean collectStatistics,
+      GroupCommitWriter.Settings invocationWriter,
+      EventBuffers.Settings eventBuffers,
+      RecordingPolicy recordingPolicy,
+      boolean asyncSnapshots,
+      boolean deduplicateSnippets,
+      boolean receiverDelta,
+      SerializationBudget serializationBudget,
+      boolean lazyModel
   ) {
     List<RecordedMethod> methods =
         configuration.getCandidates().stream()
@@ -64,7 +93,15 @@ public record InstrumentationConfiguration(
         packagesToInstrument,
         projectPath,
         dataPath,
-        collectStatistics
+        collectStatistics,
+        invocationWriter,
+        eventBuffers,
+        recordingPolicy,
+        asyncSnapshots,
+        deduplicateSnippets,
+        receiverDelta,
+        serializationBudget,
+        lazyModel
     );
   }
 
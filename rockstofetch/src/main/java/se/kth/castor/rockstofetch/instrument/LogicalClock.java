@@ -0,0 +1,30 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orders traced events. A single atomic counter hands out unique, monotonically increasing
+ * timestamps (consistent with happens-before), but does not serialize all instrumented threads.
+ */
+final class LogicalClock {
+
+  private final AtomicLong time;
+
+  LogicalClock() {
+    this.time = new AtomicLong();
+  }
+
+  /**
+   * {@return a timestamp no other call returned}
+   */
+  long next() {
+    return time.getAndIncrement();
+  }
+
+  /**
+   * {@return the timestamp the next call to {@link #next()} will return at the earliest}
+   */
+  long current() {
+    return time.get();
+  }
+}
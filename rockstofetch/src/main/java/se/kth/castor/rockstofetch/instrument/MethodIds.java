@@ -0,0 +1,202 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.bytebuddy.asm.Advice.OffsetMapping;
+import net.bytebuddy.asm.Advice.OffsetMapping.Target;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.implementation.bytecode.constant.IntegerConstant;
+import se.kth.castor.rockstofetch.instrument.aspects.MethodId;
+import se.kth.castor.rockstofetch.util.SpoonAccessor;
+import spoon.reflect.declaration.CtMethod;
+import spoon.reflect.reference.CtTypeReference;
+
+/**
+ * Assigns dense integer ids to instrumented methods when their class is transformed. The id is
+ * baked into the advice as a constant (see {@link MethodId}), so advice code can look up per-method
+ * state by indexing an array instead of building and hashing a key on every call.
+ * <p>
+ * Every id has a {@link MethodInfo} with the {@link RecordedMethod} and the Spoon elements of the
+ * method. The Spoon elements are resolved on first use, as the Spoon model is not available while
+ * classes are transformed.
+ */
+public final class MethodIds {
+
+  private static final int INITIAL_CAPACITY = 256;
+  private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+  // Guarded by IDS. Doubled when full and replaced, so advice can index it without locking.
+  private static volatile MethodInfo[] infos = new MethodInfo[INITIAL_CAPACITY];
+  // Written after the slot of the new id, so reading it first makes all assigned slots visible
+  private static volatile int count;
+
+  private MethodIds() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  /**
+   * Returns the id of an instrumented method, assigning the next free one on first request.
+   * Retransforming a class yields the same ids again.
+   *
+   * @param type the instrumented type
+   * @param method the instrumented method
+   * @return the id of the method
+   */
+  public static int idFor(TypeDescription type, MethodDescription method) {
+    String key = type.getName() + "#" + method.getInternalName() + method.getDescriptor();
+    Integer id = IDS.get(key);
+    if (id != null) {
+      return id;
+    }
+    synchronized (IDS) {
+      return IDS.computeIfAbsent(key, ignored -> {
+        int newId = count;
+        MethodInfo[] current = infos;
+        if (newId == current.length) {
+          current = Arrays.copyOf(current, current.length * 2);
+          infos = current;
+        }
+        current[newId] = new MethodInfo(
+            RecordedMethod.fromType(
+                type.getName(),
+                method.getInternalName(),
+                MethodTypeDesc.ofDescriptor(method.getDescriptor())
+            ),
+            method.getDescriptor()
+        );
+        count = newId + 1;
+        return newId;
+      });
+    }
+  }
+
+  /**
+   * Returns the information about a method. The method must have been instrumented already.
+   *
+   * @param id the id of the method
+   * @return the information about it
+   */
+  public static MethodInfo info(int id) {
+    if (id >= count) {
+      throw new IllegalArgumentException("Unknown method id: " + id);
+    }
+    return infos[id];
+  }
+
+  /**
+   * {@return the number of ids handed out so far}
+   */
+  public static int count() {
+    return count;
+  }
+
+  /**
+   * {@return an offset mapping binding {@link MethodId} parameters to the id of the instrumented
+   * method}
+   */
+  public static OffsetMapping offsetMapping() {
+    return (instrumentedType, instrumentedMethod, assigner, argumentHandler, sort) ->
+        new Target.ForStackManipulation(
+            IntegerConstant.forValue(idFor(instrumentedType, instrumentedMethod))
+        );
+  }
+
+  /**
+   * Everything the advice needs to know about an instrumented method. Lazily resolved values are
+   * idempotent, so racing threads at most compute them twice.
+   */
+  public static final class MethodInfo {
+
+    private final RecordedMethod recordedMethod;
+    private final String descriptor;
+    private volatile Method method;
+    private volatile List<CtTypeReference<?>> parameterTypes;
+    private volatile SourceMethod sourceMethod;
+    private final ReceiverState.Gate receiverDeltaGate = new ReceiverState.Gate();
+
+    private MethodInfo(RecordedMethod recordedMethod, String descriptor) {
+      this.recordedMethod = recordedMethod;
+      this.descriptor = descriptor;
+    }
+
+    public RecordedMethod recordedMethod() {
+      return recordedMethod;
+    }
+
+    /**
+     * {@return the gate deciding whether receiver states are captured for this method}
+     */
+    public ReceiverState.Gate receiverDeltaGate() {
+      return receiverDeltaGate;
+    }
+
+    /**
+     * Returns the reflective method.
+     *
+     * @param declaringClass the instrumented class, that declares the method
+     * @return the method
+     */
+    public Method method(Class<?> declaringClass) {
+      Method method = this.method;
+      if (method == null) {
+        method = Arrays.stream(declaringClass.getDeclaredMethods())
+            .filter(it -> it.getName().equals(recordedMethod.methodName()))
+            .filter(it -> descriptor.equals(
+                MethodType.methodType(it.getReturnType(), it.getParameterTypes())
+                    .toMethodDescriptorString()
+            ))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("Method not found: " + recordedMethod));
+        this.method = method;
+      }
+      return method;
+    }
+
+    /**
+     * Returns the parameter types of the parsed Spoon executable.
+     *
+     * @param spoonAccessor the accessor to parse the method with
+     * @param declaringClass the instrumented class, that declares the method
+     * @return the parameter types
+     */
+    public List<CtTypeReference<?>> parameterTypes(
+        SpoonAccessor spoonAccessor, Class<?> declaringClass
+    ) {
+      List<CtTypeReference<?>> parameterTypes = this.parameterTypes;
+      if (parameterTypes == null) {
+        parameterTypes = spoonAccessor.getParameterTypes(method(declaringClass));
+        this.parameterTypes = parameterTypes;
+      }
+      return parameterTypes;
+    }
+
+    /**
+     * Returns the method in the source model, as seen from the class of a receiver. The result for
+     * the last receiver class is cached, as a method is nearly always called on one type.
+     *
+     * @param spoonAccessor the accessor to look the method up with
+     * @param receiverClass the class of the receiver
+     * @return the method in the source model
+     */
+    public CtMethod<?> sourceMethod(SpoonAccessor spoonAccessor, Class<?> receiverClass) {
+      SourceMethod sourceMethod = this.sourceMethod;
+      if (sourceMethod == null || sourceMethod.receiverClass() != receiverClass) {
+        sourceMethod = new SourceMethod(
+            receiverClass, spoonAccessor.getMethod(receiverClass, recordedMethod)
+        );
+        this.sourceMethod = sourceMethod;
+      }
+      return sourceMethod.method();
+    }
+
+    private record SourceMethod(Class<?> receiverClass, CtMethod<?> method) {
+
+    }
+  }
+
+}
@@ -5,8 +5,8 @@ import static se.kth.castor.rockstofetch.util.Classes.className;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.annotation.JsonTypeInfo.Id;
-import com.google.common.collect.MapMaker;
 import se.kth.castor.rockstofetch.instrument.CaptureContextHolder.MarkerObjectRefHandler;
+import se.kth.castor.rockstofetch.instrument.MethodIds.MethodInfo;
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMethodEndEvent;
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMethodStartEvent;
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMutatorEvent;
@@ -26,30 +26,25 @@ import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ShortValue;
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.StringValue;
 import se.kth.castor.rockstofetch.serialization.JavaSnippet;
-import se.kth.castor.rockstofetch.serialization.Json;
+import se.kth.castor.rockstofetch.serialization.EventLogFormat;
+import se.kth.castor.rockstofetch.serialization.EventLogWriter;
 import se.kth.castor.rockstofetch.serialization.RockySerializer;
 import se.kth.castor.rockstofetch.serialization.Serializers;
-import se.kth.castor.rockstofetch.util.ClosableLock;
 import se.kth.castor.rockstofetch.util.SpoonAccessor;
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
-import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 import se.kth.castor.pankti.codemonkey.construction.actions.ActionObjectReference;
+import se.kth.castor.pankti.codemonkey.serialization.PrimitiveArrays;
 import se.kth.castor.pankti.codemonkey.serialization.UnknownActionHandler;
 import se.kth.castor.pankti.codemonkey.util.ClassUtil;
 import se.kth.castor.pankti.codemonkey.util.Statistics;
@@ -61,29 +56,28 @@ public class MutationTracingContextHolder {
 
   private static final RockySerializer CLEAN_SERIALIZER;
   private static final RockySerializer UNCLEANER_SERIALIZER;
-  private static final AtomicInteger OBJECT_ID_COUNTER;
   private static final AtomicInteger INVOCATION_ID_COUNTER;
-  private static final ConcurrentMap<Object, Integer> OBJECT_IDS;
-  private static final ClosableLock EVENT_LOCK;
+  private static final ObjectIdRegistry OBJECT_IDS;
+  private static final LogicalClock CLOCK;
   private static final SpoonAccessor SPOON_ACCESSOR;
-  private static long currentTime;
-  private static final Json JSON;
-  private static final AtomicReference<BlockingDeque<Event>> EVENT_QUEUE;
+  private static final long WRITER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+  private static final AtomicReference<EventBuffers> EVENT_BUFFERS;
 
   static {
     try (var ignored = CaptureContextHolder.enterAgentCode()) {
-      EVENT_LOCK = new ClosableLock(new ReentrantLock());
-      OBJECT_ID_COUNTER = new AtomicInteger();
+      CLOCK = new LogicalClock();
       INVOCATION_ID_COUNTER = new AtomicInteger();
-      // Weak-keys cause identity key comparisons
-      OBJECT_IDS = new MapMaker().weakKeys().makeMap();
-      JSON = new Json();
+      OBJECT_IDS = new ObjectIdRegistry();
       SPOON_ACCESSOR = CaptureContextHolder.SPOON_ACCESSOR;
-      EVENT_QUEUE = new AtomicReference<>(new LinkedBlockingDeque<>(256));
+      EVENT_BUFFERS = new AtomicReference<>(new EventBuffers(
+          AgentMain.eventBufferSettings, CLOCK, AgentMain.dataPath, AgentMain.statistics
+      ));
       CLEAN_SERIALIZER = new RockySerializer(
           SPOON_ACCESSOR,
           Set.of(), Set.of(), Set.of(), UnknownActionHandler.fail(),
           CaptureContextHolder.UNIQUE_VARIABLE_SUFFIX,
+          AgentMain.planStore,
+          AgentMain.serializationBudget,
           new FailStatisticSwallowStats(AgentMain.statistics)
       );
       UNCLEANER_SERIALIZER = new RockySerializer(
@@ -94,6 +88,8 @@ public class MutationTracingContextHolder {
           new UnknownActionHandler.SeparatingActions()
               .addHandler(ActionObjectReference.class, new MarkerObjectRefHandler()),
           CaptureContextHolder.UNIQUE_VARIABLE_SUFFIX,
+          AgentMain.planStore,
+          AgentMain.serializationBudget,
           AgentMain.statistics
       );
       spawnWriter();
@@ -106,115 +102,155 @@ public class MutationTracingContextHolder {
       List<Value> parameters,
       List<Object> fieldValues
   ) {
-    if (!OBJECT_IDS.containsKey(newObject)) {
-      OBJECT_IDS.put(newObject, OBJECT_ID_COUNTER.getAndIncrement());
-    }
+    int newId = OBJECT_IDS.getOrAssignConstructed(newObject);
     List<Integer> fieldIds = fieldValues.stream()
         .filter(Objects::nonNull)
         .filter(
             it -> !(it instanceof Number) && !(it instanceof Character) && !(it instanceof Boolean)
                   && !(it instanceof String)
         )
-        .map(it -> OBJECT_IDS.computeIfAbsent(it, ignored -> OBJECT_ID_COUNTER.getAndIncrement()))
+        .map(OBJECT_IDS::getOrAssign)
         .toList();
-    int newId = OBJECT_IDS.get(newObject);
+    EventBuffers buffers = EVENT_BUFFERS.getAcquire();
     ConstructEvent event = new ConstructEvent(
         timestamp,
-        getNextTimestamp(),
+        nextEventTimestamp(buffers),
         newId,
         Classes.className(newObject.getClass()),
         parameters,
         fieldIds
     );
-    persistEvent(event);
+    persistEvent(buffers, event);
   }
 
   public static void registerSetField(Object receiver, Object newValue, Object oldValue) {
-    long timestamp = getNextTimestamp();
-    Integer receiverId = OBJECT_IDS.get(receiver);
-    if (receiverId == null) {
-      System.out.println("Field receiver was unknown " + receiver.getClass() + " @ " + timestamp);
+    int receiverId = OBJECT_IDS.get(receiver);
+    if (receiverId == ObjectIdRegistry.NO_ID) {
+      System.out.println(
+          "Field receiver was unknown " + receiver.getClass() + " @ " + getCurrentTime()
+      );
       return;
     }
-    Integer newValueId = OBJECT_IDS.get(newValue);
+    int newValueId;
 
     // record the new value if it is a real object as we might call mutators on it
-    if (newValueId == null && newValue != null
+    if (newValue != null
         && !ClassUtil.isBoxed(newValue.getClass()) && newValue.getClass() != String.class) {
-      newValueId = OBJECT_ID_COUNTER.getAndIncrement();
-      OBJECT_IDS.put(newValue, newValueId);
+      newValueId = OBJECT_IDS.getOrAssign(newValue);
+    } else {
+      newValueId = OBJECT_IDS.get(newValue);
     }
-    SetFieldEvent event = new SetFieldEvent(
-        timestamp,
-        receiverId,
-        newValueId,
-        OBJECT_IDS.get(oldValue)
-    );
-    persistEvent(event);
+    int oldValueId = OBJECT_IDS.get(oldValue);
+    persistSetField(receiverId, newValueId, oldValueId);
+  }
+
+  /**
+   * Registers a write to a primitive field. Primitive values never have an object id, so neither
+   * the new nor the old value is needed.
+   *
+   * @param receiver the object whose field was written
+   */
+  public static void registerPrimitiveSetField(Object receiver) {
+    int receiverId = OBJECT_IDS.get(receiver);
+    if (receiverId == ObjectIdRegistry.NO_ID) {
+      System.out.println(
+          "Field receiver was unknown " + receiver.getClass() + " @ " + getCurrentTime()
+      );
+      return;
+    }
+    persistSetField(receiverId, EventLogWriter.NO_ID, EventLogWriter.NO_ID);
   }
 
   public static void registerCallMutator(Object receiver) {
-    long timestamp = getNextTimestamp();
-    Integer receiverId = OBJECT_IDS.get(receiver);
-    if (receiverId == null) {
+    int receiverId = OBJECT_IDS.get(receiver);
+    if (receiverId == ObjectIdRegistry.NO_ID) {
       System.out.println("Mutator receiver was unknown: " + receiver.getClass());
       return;
     }
-    CallMutatorEvent event = new CallMutatorEvent(timestamp, receiverId);
-    persistEvent(event);
+    EventBuffers buffers = EVENT_BUFFERS.getAcquire();
+    CallMutatorEvent event = new CallMutatorEvent(nextEventTimestamp(buffers), receiverId);
+    persistEvent(buffers, event);
   }
 
-  public static int startMethodCall(Object receiver, Method method, List<Value> parameters) {
-    long timestamp = getNextTimestamp();
-    Integer receiverId = receiver == null ? Integer.valueOf(-1) : OBJECT_IDS.get(receiver);
-    if (receiverId == null) {
-      System.out.println("Method receiver was unknown " + receiver.getClass() + " @ " + timestamp);
+  public static int startMethodCall(
+      Object receiver, RecordedMethod method, List<Value> parameters
+  ) {
+    int receiverId = receiver == null ? -1 : OBJECT_IDS.get(receiver);
+    if (receiverId == ObjectIdRegistry.NO_ID) {
+      System.out.println(
+          "Method receiver was unknown " + receiver.getClass() + " @ " + getCurrentTime()
+      );
       return -1;
     }
+    int invocationId = INVOCATION_ID_COUNTER.getAndIncrement();
+    EventBuffers buffers = EVENT_BUFFERS.getAcquire();
     CallMethodStartEvent event = new CallMethodStartEvent(
-        timestamp,
-        INVOCATION_ID_COUNTER.getAndIncrement(),
+        nextEventTimestamp(buffers),
+        invocationId,
         receiverId,
-        RecordedMethod.fromReflectMethod(method),
+        method,
         parameters
     );
-    persistEvent(event);
-    return event.methodInvocationId();
+    persistEvent(buffers, event);
+    return invocationId;
   }
 
   public static void endMethodCall(int receiver, int invocationId, Object returned) {
-    long timestamp = getNextTimestamp();
     // We only set this for static methods returning an instance, so it can never be a boxed value
     // or string.
     Integer returnId = returned == null ? null : getObjectId(returned);
     String returnedClass = returnId == null ? null : Classes.className(returned.getClass());
+    EventBuffers buffers = EVENT_BUFFERS.getAcquire();
     CallMethodEndEvent event = new CallMethodEndEvent(
         receiver,
-        timestamp,
+        nextEventTimestamp(buffers),
         invocationId,
         returnId,
         returnedClass
     );
-    persistEvent(event);
+    persistEvent(buffers, event);
   }
 
-  // Ordering between threads is not relevant, therefore we do not need to synchronize this access
-  private static void persistEvent(Event event) {
-    try {
-      BlockingDeque<Event> queue = EVENT_QUEUE.getAcquire();
-      if (queue != null) {
-        queue.put(event);
-      } else {
-        synchronized (EVENT_QUEUE) {
-          Files.writeString(
-              AgentMain.dataPath.resolve("events.json"),
-              JSON.toJson(event),
-              StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE
-          );
-        }
+  // Taken right before publishing. The writer holds back younger events of other threads until
+  // the event is in the buffer, so the merged log is ordered by timestamp.
+  private static long nextEventTimestamp(EventBuffers buffers) {
+    return buffers != null ? buffers.local().nextTimestamp(CLOCK) : CLOCK.next();
+  }
+
+  // Every thread appends to its own buffer, the writer merges them by timestamp
+  private static void persistEvent(EventBuffers buffers, Event event) {
+    if (buffers != null) {
+      buffers.local().publish(event);
+    } else {
+      persistAfterShutdown(event);
+    }
+  }
+
+  private static void persistSetField(int receiverId, int newValueId, int oldValueId) {
+    EventBuffers buffers = EVENT_BUFFERS.getAcquire();
+    if (buffers != null) {
+      EventRing ring = buffers.local();
+      ring.publishSetField(ring.nextTimestamp(CLOCK), receiverId, newValueId, oldValueId);
+    } else {
+      persistAfterShutdown(new SetFieldEvent(
+          CLOCK.next(),
+          receiverId,
+          newValueId == EventLogWriter.NO_ID ? null : newValueId,
+          oldValueId == EventLogWriter.NO_ID ? null : oldValueId
+      ));
+    }
+  }
+
+  private static void persistAfterShutdown(Event event) {
+    // The writer thread is gone, append a short segment of our own
+    synchronized (EVENT_BUFFERS) {
+      try (EventLogWriter writer = EventLogWriter.append(
+          AgentMain.dataPath.resolve(EventLogFormat.FILE_NAME)
+      )) {
+        writer.write(event);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
       }
-    } catch (InterruptedException | IOException e) {
-      throw new RuntimeException(e);
     }
   }
 
@@ -236,8 +272,10 @@ public class MutationTracingContextHolder {
     return result;
   }
 
-  public static List<Value> getMethodParams(Object[] parameters, Method method) {
-    List<CtTypeReference<?>> types = SPOON_ACCESSOR.getParameterTypes(method);
+  public static List<Value> getMethodParams(
+      Object[] parameters, MethodInfo method, Class<?> declaringClass
+  ) {
+    List<CtTypeReference<?>> types = method.parameterTypes(SPOON_ACCESSOR, declaringClass);
 
     List<Value> result = new ArrayList<>(types.size());
     for (int i = 0; i < types.size(); i++) {
@@ -248,22 +286,18 @@ public class MutationTracingContextHolder {
   }
 
   public static long getNextTimestamp() {
-    try (var ignored = EVENT_LOCK.lock()) {
-      return currentTime++;
-    }
+    return CLOCK.next();
   }
 
   public static long getCurrentTime() {
-    try (var ignored = EVENT_LOCK.lock()) {
-      return currentTime;
-    }
+    return CLOCK.current();
   }
 
   public static Integer getObjectId(Object o) {
     // Register it. The constructor might be called *after* `getObjectId`, as we can only get the
     // this instance at the end of the constructor invocation. We can then later on try to find the
     // corresponding construct event anyways...
-    return OBJECT_IDS.computeIfAbsent(o, ignored -> OBJECT_ID_COUNTER.getAndIncrement());
+    return OBJECT_IDS.getOrAssign(o);
   }
 
   @JsonTypeInfo(use = Id.NAME)
@@ -431,13 +465,15 @@ public class MutationTracingContextHolder {
         return new StringValue(s);
       }
 
-      if (o.getClass().isArray()) {
+      // Primitive arrays are encoded in bulk, others need a variable per element
+      if (o.getClass().isArray() && !PrimitiveArrays.canEncode(o)) {
         if (Array.getLength(o) > 15) {
           return new FailedValue(o.getClass().getName() + "@" + Array.getLength(o));
         }
       }
 
-      Integer id = OBJECT_IDS.get(o);
+      int rawId = OBJECT_IDS.get(o);
+      Integer id = rawId == ObjectIdRegistry.NO_ID ? null : rawId;
       JavaSnippet javaSnippet = getSnippet(o, type, CLEAN_SERIALIZER);
       if (!javaSnippet.statements().isEmpty()) {
         try {
@@ -603,9 +639,10 @@ public class MutationTracingContextHolder {
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       try {
         System.out.println("Shutting down " + thread.getName());
-        EVENT_QUEUE.setRelease(null);
+        EVENT_BUFFERS.setRelease(null);
         shutdownRequested.set(true);
-        thread.interrupt();
+        // Interrupting would close the channel of the writer
+        LockSupport.unpark(thread);
         thread.join(5000);
         System.out.println("Shutdown completed for " + thread.getName());
       } catch (InterruptedException e) {
@@ -617,21 +654,16 @@ public class MutationTracingContextHolder {
   private static Runnable drainEvents(AtomicBoolean shutDown) {
     return () -> {
       try (var ignored = CaptureContextHolder.enterAgentCode()) {
-        BlockingDeque<Event> queue = EVENT_QUEUE.get();
+        EventBuffers buffers = EVENT_BUFFERS.get();
 
-        synchronized (EVENT_QUEUE) {
-          try (BufferedWriter writer = Files.newBufferedWriter(
-              AgentMain.dataPath.resolve("events.json"),
-              StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE
+        synchronized (EVENT_BUFFERS) {
+          try (EventLogWriter writer = EventLogWriter.append(
+              AgentMain.dataPath.resolve(EventLogFormat.FILE_NAME)
           )) {
-            while (!shutDown.get() || !queue.isEmpty()) {
-              try {
-                Event event = queue.take();
-                writer.write(JSON.toJson(event));
-                writer.newLine();
-              } catch (InterruptedException ignored1) {
-                // just check again
-                System.out.println(Thread.currentThread().getName() + " was interrupted");
+            while (!shutDown.get() || !buffers.isEmpty()) {
+              if (!buffers.drainInto(writer)) {
+                writer.flush();
+                LockSupport.parkNanos(WRITER_PARK_NANOS);
               }
             }
           } catch (Throwable e) {
@@ -642,8 +674,10 @@ public class MutationTracingContextHolder {
           }
         }
 
-        System.out.println(
-            Thread.currentThread().getName() + " is done. Queue size: " + queue.size()
+        System.out.printf(
+            "%s is done. Buffered: %d, dropped: %d, spilled: %d%n",
+            Thread.currentThread().getName(),
+            buffers.size(), buffers.droppedCount(), buffers.spilledCount()
         );
       }
     };
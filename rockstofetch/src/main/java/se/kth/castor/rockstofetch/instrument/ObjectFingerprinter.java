@@ -0,0 +1,217 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Computes a structural hash of object graphs. Two graphs with the same fingerprint have the same
+ * classes, the same values and the same sharing of objects, so they serialize to equivalent
+ * snippets.
+ * <p>
+ * This only holds if serialization does not depend on the identity of an object. Graphs
+ * containing such objects have no fingerprint:
+ * <ul>
+ *   <li>mocked types, as mocks are looked up by identity</li>
+ *   <li>mutation traced types, as they are referenced by their object id</li>
+ *   <li>types with public static fields they could be stored in, as identical instances are
+ *   replaced by a field read</li>
+ *   <li>JDK types that are neither values nor collections, as we can not look inside</li>
+ * </ul>
+ * Graphs that are too large or too deep have no fingerprint either.
+ */
+final class ObjectFingerprinter {
+
+  private static final int MAX_OBJECTS = 10_000;
+  private static final int MAX_DEPTH = 256;
+
+  private final Set<String> mockTypes;
+  private final Set<String> mutationTraceTypes;
+  private final ClassValue<Boolean> fingerprintable;
+
+  ObjectFingerprinter(Set<String> mockTypes, Set<String> mutationTraceTypes) {
+    this.mockTypes = Set.copyOf(mockTypes);
+    this.mutationTraceTypes = Set.copyOf(mutationTraceTypes);
+    this.fingerprintable = new ClassValue<>() {
+      @Override
+      protected Boolean computeValue(Class<?> type) {
+        return isFingerprintable(type);
+      }
+    };
+  }
+
+  /**
+   * Computes the fingerprint of an object graph.
+   *
+   * @param root the root of the graph
+   * @param targetType the type the root is assigned to
+   * @return the fingerprint or an empty optional if the graph has none
+   */
+  @SuppressWarnings("UnstableApiUsage")
+  Optional<String> fingerprint(Object root, String targetType) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    putString(hasher, targetType);
+    if (!new Walk(hasher).visit(root, 0)) {
+      return Optional.empty();
+    }
+    return Optional.of(hasher.hash().toString());
+  }
+
+  private boolean isFingerprintable(Class<?> type) {
+    if (type.isHidden() || mockTypes.contains(type.getName()) || isMutationTraced(type)) {
+      return false;
+    }
+    if (ObjectGraphCopier.INSTANCE_FIELDS.get(type).isEmpty()) {
+      return false;
+    }
+    // Mirrors the candidates of MutationUseStaticFieldInstance
+    try {
+      for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+        for (Field field : current.getFields()) {
+          int modifiers = field.getModifiers();
+          if (Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers)
+              && field.getType().isAssignableFrom(type)) {
+            return false;
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isMutationTraced(Class<?> type) {
+    if (mutationTraceTypes.isEmpty()) {
+      return false;
+    }
+    Deque<Class<?>> pending = new ArrayDeque<>(List.of(type));
+    while (!pending.isEmpty()) {
+      Class<?> current = pending.removeFirst();
+      if (mutationTraceTypes.contains(current.getName())) {
+        return true;
+      }
+      if (current.getSuperclass() != null) {
+        pending.addLast(current.getSuperclass());
+      }
+      pending.addAll(List.of(current.getInterfaces()));
+    }
+    return false;
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static void putString(Hasher hasher, String value) {
+    hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private class Walk {
+
+    private final Hasher hasher;
+    // Sharing matters, the serializer reuses variables for identical objects
+    private final Map<Object, Integer> visited;
+
+    private Walk(Hasher hasher) {
+      this.hasher = hasher;
+      this.visited = new IdentityHashMap<>();
+    }
+
+    private boolean visit(Object value, int depth) {
+      if (value == null) {
+        hasher.putByte((byte) 0);
+        return true;
+      }
+      Class<?> type = value.getClass();
+      if (ObjectGraphCopier.isValue(value)) {
+        hasher.putByte((byte) 1);
+        putString(hasher, type.getName());
+        putString(hasher, value instanceof Enum<?> constant ? constant.name() : value.toString());
+        return true;
+      }
+      Integer index = visited.get(value);
+      if (index != null) {
+        hasher.putByte((byte) 2).putInt(index);
+        return true;
+      }
+      if (visited.size() >= MAX_OBJECTS || depth >= MAX_DEPTH) {
+        return false;
+      }
+      visited.put(value, visited.size());
+
+      hasher.putByte((byte) 3);
+      putString(hasher, type.getName());
+      if (type.isArray()) {
+        return visitArray(value, depth);
+      }
+      if (ObjectGraphCopier.isJdkType(type)) {
+        if (value instanceof Collection<?> collection) {
+          hasher.putInt(collection.size());
+          for (Object element : collection) {
+            if (!visit(element, depth + 1)) {
+              return false;
+            }
+          }
+          return true;
+        }
+        if (value instanceof Map<?, ?> map) {
+          hasher.putInt(map.size());
+          for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!visit(entry.getKey(), depth + 1) || !visit(entry.getValue(), depth + 1)) {
+              return false;
+            }
+          }
+          return true;
+        }
+        return false;
+      }
+      if (!fingerprintable.get(type)) {
+        return false;
+      }
+      try {
+        for (Field field : ObjectGraphCopier.INSTANCE_FIELDS.get(type).orElseThrow()) {
+          if (field.getType().isPrimitive()) {
+            putString(hasher, String.valueOf(field.get(value)));
+          } else if (!visit(field.get(value), depth + 1)) {
+            return false;
+          }
+        }
+      } catch (IllegalAccessException e) {
+        return false;
+      }
+      return true;
+    }
+
+    private boolean visitArray(Object array, int depth) {
+      int length = Array.getLength(array);
+      hasher.putInt(length);
+      if (array instanceof byte[] bytes) {
+        hasher.putBytes(bytes);
+        return true;
+      }
+      if (array.getClass().getComponentType().isPrimitive()) {
+        for (int i = 0; i < length; i++) {
+          putString(hasher, String.valueOf(Array.get(array, i)));
+        }
+        return true;
+      }
+      for (Object element : (Object[]) array) {
+        if (!visit(element, depth + 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,271 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.objenesis.Objenesis;
+import org.objenesis.ObjenesisStd;
+import org.objenesis.instantiator.ObjectInstantiator;
+
+/**
+ * Copies object graphs reflectively, so they can be serialized later while the application keeps
+ * mutating the originals.
+ * <p>
+ * Application objects are allocated through objenesis without running a constructor and get all
+ * their fields copied. Records are rebuilt through their canonical constructor. JDK collections
+ * and maps are rebuilt through their public no-arg constructor. Strings, boxed primitives, big
+ * numbers, enums and classes are immutable and shared. Graphs that can not be copied faithfully
+ * (inaccessible or hidden types, other JDK types that might be mutable, unmodifiable JDK
+ * collections, too large or too deep graphs) are rejected with a {@link NotCopyableException}.
+ */
+final class ObjectGraphCopier {
+
+  private static final int MAX_OBJECTS = 10_000;
+  private static final int MAX_DEPTH = 256;
+  // Exact classes, subclasses of BigInteger and BigDecimal can be mutable
+  private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(
+      String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+      Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class
+  );
+
+  // Instantiators are cached per class in ALLOCATORS already
+  private static final Objenesis OBJENESIS = new ObjenesisStd(false);
+  private static final ClassValue<Optional<ObjectInstantiator<?>>> ALLOCATORS =
+      new ClassValue<>() {
+        @Override
+        protected Optional<ObjectInstantiator<?>> computeValue(Class<?> type) {
+          try {
+            return Optional.of(OBJENESIS.getInstantiatorOf(type));
+          } catch (RuntimeException e) {
+            return Optional.empty();
+          }
+        }
+      };
+  static final ClassValue<Optional<List<Field>>> INSTANCE_FIELDS = new ClassValue<>() {
+    @Override
+    protected Optional<List<Field>> computeValue(Class<?> type) {
+      List<Field> fields = new ArrayList<>();
+      try {
+        for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+          for (Field field : current.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+              field.setAccessible(true);
+              fields.add(field);
+            }
+          }
+        }
+      } catch (RuntimeException e) {
+        // Most likely a JDK super class whose module is not open to us
+        return Optional.empty();
+      }
+      return Optional.of(List.copyOf(fields));
+    }
+  };
+  private static final ClassValue<Optional<Constructor<?>>> NO_ARG_CONSTRUCTORS =
+      new ClassValue<>() {
+        @Override
+        protected Optional<Constructor<?>> computeValue(Class<?> type) {
+          try {
+            return Optional.of(type.getConstructor());
+          } catch (NoSuchMethodException | SecurityException e) {
+            return Optional.empty();
+          }
+        }
+      };
+
+  private final Map<Object, Object> copies;
+  private final Map<Object, Object> originals;
+
+  ObjectGraphCopier() {
+    this.copies = new IdentityHashMap<>();
+    this.originals = new IdentityHashMap<>();
+  }
+
+  /**
+   * Copies all roots. Objects reachable from several roots are copied only once.
+   *
+   * @param roots the roots to copy
+   * @return the copies, in the same order
+   * @throws NotCopyableException if any graph can not be copied
+   */
+  Object[] copyAll(Object[] roots) throws NotCopyableException {
+    Object[] result = new Object[roots.length];
+    for (int i = 0; i < roots.length; i++) {
+      result[i] = copy(roots[i], 0);
+    }
+    return result;
+  }
+
+  /**
+   * {@return a map from every copied object to its original}
+   */
+  Map<Object, Object> originals() {
+    return originals;
+  }
+
+  private Object copy(Object value, int depth) throws NotCopyableException {
+    if (value == null || isValue(value)) {
+      return value;
+    }
+    Object existing = copies.get(value);
+    if (existing != null) {
+      return existing;
+    }
+    if (copies.size() >= MAX_OBJECTS || depth >= MAX_DEPTH) {
+      throw new NotCopyableException("Graph is too large");
+    }
+
+    Class<?> type = value.getClass();
+    try {
+      if (type.isArray()) {
+        return copyArray(value, depth);
+      }
+      if (isJdkType(type)) {
+        if (value instanceof Collection<?> collection) {
+          return copyCollection(collection, depth);
+        }
+        if (value instanceof Map<?, ?> map) {
+          return copyMap(map, depth);
+        }
+        // Might be mutable (StringBuilder, Date, atomics, buffers, ...) and we can not copy it
+        throw new NotCopyableException("JDK type " + type.getName());
+      }
+      if (type.isHidden()) {
+        throw new NotCopyableException("Hidden type " + type.getName());
+      }
+      if (type.isRecord()) {
+        return copyRecord(value, depth);
+      }
+      return copyObject(value, depth);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      throw new NotCopyableException(type.getName() + ": " + e);
+    }
+  }
+
+  private Object copyArray(Object array, int depth) throws NotCopyableException {
+    int length = Array.getLength(array);
+    Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+    register(array, copy);
+    if (array.getClass().getComponentType().isPrimitive()) {
+      System.arraycopy(array, 0, copy, 0, length);
+      return copy;
+    }
+    Object[] source = (Object[]) array;
+    Object[] target = (Object[]) copy;
+    for (int i = 0; i < length; i++) {
+      target[i] = copy(source[i], depth + 1);
+    }
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object copyCollection(Collection<?> collection, int depth)
+      throws ReflectiveOperationException, NotCopyableException {
+    Collection<Object> copy = (Collection<Object>) newJdkInstance(collection.getClass());
+    register(collection, copy);
+    for (Object element : collection) {
+      copy.add(copy(element, depth + 1));
+    }
+    return copy;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object copyMap(Map<?, ?> map, int depth)
+      throws ReflectiveOperationException, NotCopyableException {
+    Map<Object, Object> copy = (Map<Object, Object>) newJdkInstance(map.getClass());
+    register(map, copy);
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      copy.put(copy(entry.getKey(), depth + 1), copy(entry.getValue(), depth + 1));
+    }
+    return copy;
+  }
+
+  private Object newJdkInstance(Class<?> type)
+      throws ReflectiveOperationException, NotCopyableException {
+    // Sorted collections would lose their comparator, unmodifiable ones have no such constructor
+    if (java.util.SortedMap.class.isAssignableFrom(type)
+        || java.util.SortedSet.class.isAssignableFrom(type)) {
+      throw new NotCopyableException("Sorted collection " + type.getName());
+    }
+    Constructor<?> constructor = NO_ARG_CONSTRUCTORS.get(type)
+        .orElseThrow(() -> new NotCopyableException("No public constructor " + type.getName()));
+    return constructor.newInstance();
+  }
+
+  private Object copyRecord(Object record, int depth)
+      throws ReflectiveOperationException, NotCopyableException {
+    RecordComponent[] components = record.getClass().getRecordComponents();
+    Class<?>[] types = new Class<?>[components.length];
+    Object[] values = new Object[components.length];
+    for (int i = 0; i < components.length; i++) {
+      types[i] = components[i].getType();
+      components[i].getAccessor().setAccessible(true);
+      values[i] = copy(components[i].getAccessor().invoke(record), depth + 1);
+    }
+    Constructor<?> constructor = record.getClass().getDeclaredConstructor(types);
+    constructor.setAccessible(true);
+    Object copy = constructor.newInstance(values);
+    register(record, copy);
+    return copy;
+  }
+
+  private Object copyObject(Object object, int depth)
+      throws ReflectiveOperationException, NotCopyableException {
+    Class<?> type = object.getClass();
+    ObjectInstantiator<?> allocator = ALLOCATORS.get(type)
+        .orElseThrow(() -> new NotCopyableException("Can not allocate " + type.getName()));
+    List<Field> fields = INSTANCE_FIELDS.get(type)
+        .orElseThrow(() -> new NotCopyableException("Inaccessible fields in " + type.getName()));
+
+    Object copy = allocator.newInstance();
+    register(object, copy);
+    for (Field field : fields) {
+      Object fieldValue = field.get(object);
+      field.set(copy, field.getType().isPrimitive() ? fieldValue : copy(fieldValue, depth + 1));
+    }
+    return copy;
+  }
+
+  private void register(Object original, Object copy) {
+    copies.put(original, copy);
+    originals.put(copy, original);
+  }
+
+  /**
+   * {@return true if the object is immutable and can be shared between original and copy}
+   *
+   * @param value the object to check
+   */
+  static boolean isValue(Object value) {
+    return IMMUTABLE_TYPES.contains(value.getClass())
+           || value instanceof Enum<?>
+           || value instanceof Class<?>;
+  }
+
+  static boolean isJdkType(Class<?> type) {
+    ClassLoader loader = type.getClassLoader();
+    return loader == null || loader == ClassLoader.getPlatformClassLoader();
+  }
+
+  /**
+   * Thrown if an object graph can not be copied faithfully.
+   */
+  static class NotCopyableException extends Exception {
+
+    NotCopyableException(String message) {
+      super(message, null, false, false);
+    }
+  }
+
+}
@@ -0,0 +1,228 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import se.kth.castor.rockstofetch.serialization.EventLogWriter;
+
+/**
+ * Hands out integer ids for objects based on their identity, without keeping the objects alive.
+ * <p>
+ * Objects are spread over striped segments by their identity hash code. Every segment is a chained
+ * hash table of weak references that carry the id of their referent, so ids are never boxed.
+ * Lookups are lock free, inserts only lock their segment. Entries of collected objects are expunged
+ * through a reference queue whenever a new id is assigned.
+ * <p>
+ * Each thread additionally remembers the object it constructed last, as the following events of
+ * that thread most likely refer to it.
+ */
+final class ObjectIdRegistry {
+
+  /**
+   * Returned by {@link #get(Object)} for objects that have no id.
+   */
+  static final int NO_ID = EventLogWriter.NO_ID;
+
+  private static final int SEGMENT_BITS = 6;
+  private static final int INITIAL_SEGMENT_CAPACITY = 64;
+  private static final int MAX_EXPUNGED_PER_INSERT = 16;
+
+  private final Segment[] segments;
+  private final ReferenceQueue<Object> staleEntries;
+  private final AtomicInteger idCounter;
+  private final ThreadLocal<IdRef> lastConstructed;
+
+  ObjectIdRegistry() {
+    this.segments = new Segment[1 << SEGMENT_BITS];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+    this.staleEntries = new ReferenceQueue<>();
+    this.idCounter = new AtomicInteger();
+    this.lastConstructed = new ThreadLocal<>();
+  }
+
+  /**
+   * Looks up the id of an object without assigning one.
+   *
+   * @param object the object to look up, may be null
+   * @return the id of the object or {@link #NO_ID}
+   */
+  int get(Object object) {
+    if (object == null) {
+      return NO_ID;
+    }
+    IdRef last = lastConstructed.get();
+    if (last != null && last.refersTo(object)) {
+      return last.id;
+    }
+    int hash = System.identityHashCode(object);
+    IdRef ref = segmentFor(hash).find(object, hash);
+    return ref == null ? NO_ID : ref.id;
+  }
+
+  /**
+   * Returns the id of an object, assigning a new one if it has none yet.
+   *
+   * @param object the object to look up
+   * @return the id of the object
+   */
+  int getOrAssign(Object object) {
+    return entry(object).id;
+  }
+
+  /**
+   * Returns the id of an object whose constructor just finished, assigning a new one if needed.
+   * The object is remembered for the calling thread, so its next lookups skip the table.
+   *
+   * @param object the constructed object
+   * @return the id of the object
+   */
+  int getOrAssignConstructed(Object object) {
+    IdRef ref = entry(object);
+    lastConstructed.set(ref);
+    return ref.id;
+  }
+
+  private IdRef entry(Object object) {
+    IdRef last = lastConstructed.get();
+    if (last != null && last.refersTo(object)) {
+      return last;
+    }
+    int hash = System.identityHashCode(object);
+    Segment segment = segmentFor(hash);
+    IdRef ref = segment.find(object, hash);
+    if (ref != null) {
+      return ref;
+    }
+    expungeStaleEntries();
+    return segment.findOrInsert(object, hash);
+  }
+
+  private void expungeStaleEntries() {
+    for (int i = 0; i < MAX_EXPUNGED_PER_INSERT; i++) {
+      Reference<?> stale = staleEntries.poll();
+      if (stale == null) {
+        return;
+      }
+      IdRef ref = (IdRef) stale;
+      segmentFor(ref.hash).remove(ref);
+    }
+  }
+
+  private Segment segmentFor(int hash) {
+    return segments[spread(hash) & (segments.length - 1)];
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int indexFor(int hash, int tableLength) {
+    return (spread(hash) >>> SEGMENT_BITS) & (tableLength - 1);
+  }
+
+  /**
+   * A chained hash table. Entries are immutable once published, writers copy the part of a chain
+   * they change so concurrent readers always see a consistent chain.
+   */
+  private final class Segment {
+
+    private volatile AtomicReferenceArray<IdRef> table;
+    private int size;
+
+    private Segment() {
+      this.table = new AtomicReferenceArray<>(INITIAL_SEGMENT_CAPACITY);
+    }
+
+    private IdRef find(Object object, int hash) {
+      AtomicReferenceArray<IdRef> table = this.table;
+      IdRef ref = table.getAcquire(indexFor(hash, table.length()));
+      while (ref != null) {
+        if (ref.hash == hash && ref.refersTo(object)) {
+          return ref;
+        }
+        ref = ref.next;
+      }
+      return null;
+    }
+
+    private synchronized IdRef findOrInsert(Object object, int hash) {
+      IdRef existing = find(object, hash);
+      if (existing != null) {
+        return existing;
+      }
+      if (size >= table.length() - (table.length() >>> 2)) {
+        resize();
+      }
+      AtomicReferenceArray<IdRef> table = this.table;
+      int index = indexFor(hash, table.length());
+      IdRef ref = new IdRef(object, hash, idCounter.getAndIncrement(), table.get(index));
+      table.setRelease(index, ref);
+      size++;
+      return ref;
+    }
+
+    private synchronized void remove(IdRef stale) {
+      AtomicReferenceArray<IdRef> table = this.table;
+      int index = indexFor(stale.hash, table.length());
+      IdRef head = table.get(index);
+      IdRef ref = head;
+      while (ref != null && ref != stale) {
+        ref = ref.next;
+      }
+      if (ref == null) {
+        // Already dropped by a resize or an earlier removal
+        return;
+      }
+
+      IdRef newHead = stale.next;
+      for (IdRef current = head; current != stale; current = current.next) {
+        Object referent = current.get();
+        if (referent == null) {
+          size--;
+          continue;
+        }
+        newHead = new IdRef(referent, current.hash, current.id, newHead);
+      }
+      table.setRelease(index, newHead);
+      size--;
+    }
+
+    private void resize() {
+      AtomicReferenceArray<IdRef> oldTable = this.table;
+      AtomicReferenceArray<IdRef> newTable = new AtomicReferenceArray<>(oldTable.length() * 2);
+      int live = 0;
+      for (int i = 0; i < oldTable.length(); i++) {
+        for (IdRef ref = oldTable.get(i); ref != null; ref = ref.next) {
+          Object referent = ref.get();
+          if (referent == null) {
+            continue;
+          }
+          int index = indexFor(ref.hash, newTable.length());
+          newTable.set(index, new IdRef(referent, ref.hash, ref.id, newTable.get(index)));
+          live++;
+        }
+      }
+      size = live;
+      this.table = newTable;
+    }
+  }
+
+  private final class IdRef extends WeakReference<Object> {
+
+    private final int hash;
+    private final int id;
+    private final IdRef next;
+
+    private IdRef(Object referent, int hash, int id, IdRef next) {
+      super(referent, staleEntries);
+      this.hash = hash;
+      this.id = id;
+      this.next = next;
+    }
+  }
+
+}
@@ -0,0 +1,302 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * The state reachable from a receiver before a method under test ran. If the receiver reaches
+ * exactly the same state afterwards, i.e. the same objects with the same field values, its
+ * snippet from before the invocation also describes it after the invocation and does not need to
+ * be serialized again.
+ * <p>
+ * Objects are compared by identity, values by equality. The state is kept as a flat list of the
+ * objects and values in the order they are reached, so references to the original objects are
+ * retained, but nothing is copied. JDK types that are neither values nor collections can not be
+ * inspected, receivers reaching them have no state. The same goes for receivers reaching more than
+ * {@value #MAX_OBJECTS} objects.
+ * <p>
+ * Capturing and checking the state walks the receiver twice on the application thread, which only
+ * pays off if the walks are cheaper than the serializations they avoid. Every method therefore has
+ * a {@link Gate} that decides from measurements whether its receivers are captured at all.
+ */
+public final class ReceiverState {
+
+  private static final int MAX_OBJECTS = 10_000;
+  private static final int MAX_DEPTH = 256;
+
+  private final List<Object> reached;
+  private final Gate gate;
+  // Set if the gate waits for the duration of the serialization after a failed check
+  private boolean awaitingSerialization;
+
+  private ReceiverState(List<Object> reached, Gate gate) {
+    this.reached = reached;
+    this.gate = gate;
+  }
+
+  /**
+   * Captures the state reachable from a receiver, if its gate still allows it.
+   *
+   * @param receiver the receiver
+   * @param gate the gate of the invoked method
+   * @return the state or an empty optional if it is not captured
+   */
+  public static Optional<ReceiverState> capture(Object receiver, Gate gate) {
+    if (gate.isClosed()) {
+      return Optional.empty();
+    }
+    if (!gate.isProbing()) {
+      return walk(receiver).map(reached -> new ReceiverState(reached, gate));
+    }
+    long start = System.nanoTime();
+    Optional<List<Object>> reached = walk(receiver);
+    gate.recordCapture(System.nanoTime() - start, reached.isPresent());
+    return reached.map(it -> new ReceiverState(it, gate));
+  }
+
+  /**
+   * Checks if a receiver still reaches the captured state.
+   *
+   * @param receiver the receiver, usually the one the state was captured from
+   * @return true if the reachable state is exactly the same
+   */
+  public boolean isUnchanged(Object receiver) {
+    if (!gate.isProbing()) {
+      return walk(receiver).map(reached::equals).orElse(false);
+    }
+    long start = System.nanoTime();
+    boolean unchanged = walk(receiver).map(reached::equals).orElse(false);
+    awaitingSerialization = gate.recordCheck(System.nanoTime() - start, unchanged);
+    return unchanged;
+  }
+
+  /**
+   * Serializes the receiver after a failed check, timing it for the gate if it asked for it.
+   *
+   * @param serializer the serializer for the receiver
+   * @param <T> the type of the serialized receiver
+   * @return the serialized receiver
+   */
+  public <T> T serializeChanged(Supplier<T> serializer) {
+    if (!awaitingSerialization) {
+      return serializer.get();
+    }
+    long start = System.nanoTime();
+    try {
+      return serializer.get();
+    } finally {
+      gate.recordSerialization(System.nanoTime() - start);
+    }
+  }
+
+  private static Optional<List<Object>> walk(Object root) {
+    List<Object> reached = new ArrayList<>();
+    if (!visit(root, reached, new IdentityHashMap<>(), 0)) {
+      return Optional.empty();
+    }
+    return Optional.of(reached);
+  }
+
+  private static boolean visit(
+      Object value,
+      List<Object> reached,
+      Map<Object, Boolean> visited,
+      int depth
+  ) {
+    if (value == null) {
+      reached.add(null);
+      return true;
+    }
+    if (ObjectGraphCopier.isValue(value)) {
+      // Some JDK numbers, like the atomic ones, are mutable and do not implement equals
+      reached.add(
+          value instanceof Number ? new NumberValue(value.getClass(), value.toString()) : value
+      );
+      return true;
+    }
+    reached.add(new Identity(value));
+    if (visited.put(value, Boolean.TRUE) != null) {
+      return true;
+    }
+    if (visited.size() > MAX_OBJECTS || depth >= MAX_DEPTH) {
+      return false;
+    }
+
+    Class<?> type = value.getClass();
+    if (type.isArray()) {
+      if (type.getComponentType().isPrimitive()) {
+        reached.add(new PrimitiveArray(copyPrimitiveArray(value)));
+        return true;
+      }
+      reached.add(Array.getLength(value));
+      for (Object element : (Object[]) value) {
+        if (!visit(element, reached, visited, depth + 1)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (ObjectGraphCopier.isJdkType(type)) {
+      if (value instanceof Collection<?> collection) {
+        reached.add(collection.size());
+        for (Object element : collection) {
+          if (!visit(element, reached, visited, depth + 1)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (value instanceof Map<?, ?> map) {
+        reached.add(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          if (!visit(entry.getKey(), reached, visited, depth + 1)
+              || !visit(entry.getValue(), reached, visited, depth + 1)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      return false;
+    }
+
+    Optional<List<Field>> fields = ObjectGraphCopier.INSTANCE_FIELDS.get(type);
+    if (fields.isEmpty()) {
+      return false;
+    }
+    try {
+      for (Field field : fields.get()) {
+        if (field.getType().isPrimitive()) {
+          reached.add(field.get(value));
+        } else if (!visit(field.get(value), reached, visited, depth + 1)) {
+          return false;
+        }
+      }
+    } catch (IllegalAccessException e) {
+      return false;
+    }
+    return true;
+  }
+
+  private static Object copyPrimitiveArray(Object array) {
+    int length = Array.getLength(array);
+    Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+    System.arraycopy(array, 0, copy, 0, length);
+    return copy;
+  }
+
+  private record NumberValue(Class<?> type, String value) {
+
+  }
+
+  private record Identity(Object object) {
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Identity other && other.object == object;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(object);
+    }
+  }
+
+  private record PrimitiveArray(Object array) {
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof PrimitiveArray other && Objects.deepEquals(other.array, array);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.deepHashCode(new Object[]{array});
+    }
+  }
+
+  /**
+   * Decides whether capturing the receivers of one method pays off. The first
+   * {@value #PROBATION} invocations are measured: the time spent walking the receiver and the
+   * time serializing it when it changed. Afterwards the gate stays open only if the serializations
+   * saved by the unchanged receivers took longer than all walks. The serializations may run on
+   * another thread, so this compares the total work, not the latency of the application thread.
+   */
+  public static final class Gate {
+
+    private static final int PROBATION = 32;
+    private static final int PROBING = 0;
+    private static final int OPEN = 1;
+    private static final int CLOSED = 2;
+
+    private volatile int state = PROBING;
+    // Guarded by this
+    private int outcomes;
+    private int unchanged;
+    private int pendingSerializations;
+    private int serializations;
+    private long walkNanos;
+    private long serializationNanos;
+
+    boolean isProbing() {
+      return state == PROBING;
+    }
+
+    boolean isClosed() {
+      return state == CLOSED;
+    }
+
+    private synchronized void recordCapture(long nanos, boolean captured) {
+      walkNanos += nanos;
+      if (!captured) {
+        // Nothing to compare against, the serialization of the receiver can not be saved
+        outcomes++;
+      }
+      decideIfMeasured();
+    }
+
+    private synchronized boolean recordCheck(long nanos, boolean isUnchanged) {
+      walkNanos += nanos;
+      outcomes++;
+      if (isUnchanged) {
+        unchanged++;
+      } else {
+        pendingSerializations++;
+      }
+      decideIfMeasured();
+      return !isUnchanged;
+    }
+
+    private synchronized void recordSerialization(long nanos) {
+      serializationNanos += nanos;
+      serializations++;
+      pendingSerializations--;
+      decideIfMeasured();
+    }
+
+    private void decideIfMeasured() {
+      if (state != PROBING || outcomes < PROBATION || pendingSerializations > 0) {
+        return;
+      }
+      boolean paysOff;
+      if (serializations == 0) {
+        paysOff = unchanged > 0;
+      } else {
+        paysOff = unchanged * (serializationNanos / serializations) > walkNanos;
+      }
+      state = paysOff ? OPEN : CLOSED;
+      if (!paysOff && AgentMain.statistics != null) {
+        AgentMain.statistics.getGeneral().addToCounter("receiverDeltaDisabledMethods", 1);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+package se.kth.castor.rockstofetch.instrument;
+
+/**
+ * Decides which invocations of a method under test are recorded.
+ *
+ * @param kind the sampling strategy
+ * @param limit the maximum number of recorded invocations (or distinct input shapes) per method. A
+ *     non-positive value means no limit, except for {@link Kind#FIRST_N} and
+ *     {@link Kind#RESERVOIR}, which need one.
+ * @param intervalMillis the minimum time between two recordings of the same method, only used by
+ *     {@link Kind#TIME_BASED}
+ */
+public record RecordingPolicy(Kind kind, int limit, long intervalMillis) {
+
+  public RecordingPolicy {
+    if ((kind == Kind.FIRST_N || kind == Kind.RESERVOIR) && limit <= 0) {
+      throw new IllegalArgumentException(kind + " needs a positive limit, got " + limit);
+    }
+  }
+
+  public static RecordingPolicy defaults() {
+    return new RecordingPolicy(Kind.FIRST_N, 10, 0);
+  }
+
+  public enum Kind {
+    /**
+     * Record the first {@code limit} invocations.
+     */
+    FIRST_N,
+    /**
+     * Record the n-th invocation with probability {@code limit / n}, which spreads the recordings
+     * over the whole run. As invocations are streamed to disk, earlier samples are never evicted,
+     * so about {@code limit * (1 + ln(n / limit))} invocations are recorded.
+     */
+    RESERVOIR,
+    /**
+     * Record at most one invocation every {@code intervalMillis}.
+     */
+    TIME_BASED,
+    /**
+     * Record the first invocation for every distinct input shape. The shape consists of the runtime
+     * classes of the receiver and the arguments, null arguments and the magnitude of array
+     * lengths.
+     */
+    INPUT_SHAPE
+  }
+
+}
@@ -0,0 +1,193 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import se.kth.castor.pankti.codemonkey.util.Statistics;
+
+/**
+ * Applies the {@link RecordingPolicy} to invocations of methods under test. Every method has its
+ * own slot, indexed by its {@link MethodIds method id}, so deciding to skip an invocation is an
+ * array access and an atomic read or two.
+ */
+public class RecordingSampler {
+
+  private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Slot[].class);
+
+  private final RecordingPolicy policy;
+  private final Statistics statistics;
+  // Written under the lock, replaced by a larger copy when full
+  private volatile Slot[] slots;
+
+  public RecordingSampler(RecordingPolicy policy, Statistics statistics) {
+    this.policy = policy;
+    this.statistics = statistics;
+    this.slots = new Slot[MethodIds.count()];
+  }
+
+  /**
+   * Decides whether an invocation should be recorded.
+   *
+   * @param methodId the id of the invoked method
+   * @param receiver the receiver of the invocation
+   * @param arguments the arguments of the invocation
+   * @return true if the invocation should be recorded
+   */
+  public boolean shouldRecord(int methodId, Object receiver, Object[] arguments) {
+    Slot slot = slot(methodId);
+    if (!slot.invoked.get() && slot.invoked.compareAndSet(false, true) && statistics != null) {
+      // on first invocation, we count you
+      statistics.getGeneral().addInvokedMut();
+    }
+    return slot.shouldRecord(receiver, arguments);
+  }
+
+  private Slot slot(int methodId) {
+    Slot[] slots = this.slots;
+    if (methodId < slots.length) {
+      Slot slot = (Slot) SLOT.getAcquire(slots, methodId);
+      if (slot != null) {
+        return slot;
+      }
+    }
+    return createSlot(methodId);
+  }
+
+  private synchronized Slot createSlot(int methodId) {
+    Slot[] current = this.slots;
+    if (methodId < current.length && current[methodId] != null) {
+      return current[methodId];
+    }
+    Slot slot = newSlot();
+    if (methodId < current.length) {
+      // Released, so unsynchronized readers never see a partially constructed slot
+      SLOT.setRelease(current, methodId, slot);
+      return slot;
+    }
+    // Grow geometrically and at least to all ids handed out so far, so filling the slots one id
+    // at a time copies the array only a logarithmic number of times
+    int capacity = Math.max(methodId + 1, Math.max(current.length * 2, MethodIds.count()));
+    Slot[] copy = Arrays.copyOf(current, capacity);
+    copy[methodId] = slot;
+    this.slots = copy;
+    return slot;
+  }
+
+  private Slot newSlot() {
+    return switch (policy.kind()) {
+      case FIRST_N -> new FirstN(policy.limit());
+      case RESERVOIR -> new Reservoir(policy.limit());
+      case TIME_BASED -> new TimeBased(policy.limit(), policy.intervalMillis());
+      case INPUT_SHAPE -> new InputShape(policy.limit());
+    };
+  }
+
+  private abstract static class Slot {
+
+    private final AtomicBoolean invoked = new AtomicBoolean();
+
+    abstract boolean shouldRecord(Object receiver, Object[] arguments);
+  }
+
+  private static class FirstN extends Slot {
+
+    private final int limit;
+    private final AtomicInteger recorded;
+
+    private FirstN(int limit) {
+      this.limit = limit;
+      this.recorded = new AtomicInteger();
+    }
+
+    @Override
+    boolean shouldRecord(Object receiver, Object[] arguments) {
+      // Stop counting once the limit is reached, this keeps the cache line shared
+      if (recorded.get() >= limit) {
+        return false;
+      }
+      return recorded.getAndIncrement() < limit;
+    }
+  }
+
+  private static class Reservoir extends Slot {
+
+    private final int limit;
+    private final AtomicLong seen;
+
+    private Reservoir(int limit) {
+      this.limit = limit;
+      this.seen = new AtomicLong();
+    }
+
+    @Override
+    boolean shouldRecord(Object receiver, Object[] arguments) {
+      long n = seen.incrementAndGet();
+      return n <= limit || ThreadLocalRandom.current().nextLong(n) < limit;
+    }
+  }
+
+  private static class TimeBased extends Slot {
+
+    private final int limit;
+    private final long intervalNanos;
+    private final AtomicLong nextAllowed;
+    private final AtomicInteger recorded;
+
+    private TimeBased(int limit, long intervalMillis) {
+      this.limit = limit;
+      this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+      this.nextAllowed = new AtomicLong(System.nanoTime());
+      this.recorded = new AtomicInteger();
+    }
+
+    @Override
+    boolean shouldRecord(Object receiver, Object[] arguments) {
+      long now = System.nanoTime();
+      long next = nextAllowed.get();
+      if (now - next < 0 || !nextAllowed.compareAndSet(next, now + intervalNanos)) {
+        return false;
+      }
+      return limit <= 0 || recorded.getAndIncrement() < limit;
+    }
+  }
+
+  private static class InputShape extends Slot {
+
+    private final int limit;
+    private final Set<Integer> seenShapes;
+
+    private InputShape(int limit) {
+      this.limit = limit;
+      this.seenShapes = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    boolean shouldRecord(Object receiver, Object[] arguments) {
+      if (limit > 0 && seenShapes.size() >= limit) {
+        return false;
+      }
+      return seenShapes.add(shapeHash(receiver, arguments));
+    }
+
+    private static int shapeHash(Object receiver, Object[] arguments) {
+      int hash = receiver.getClass().hashCode();
+      for (Object argument : arguments) {
+        hash = 31 * hash + (argument == null ? 0 : argument.getClass().hashCode());
+        if (argument != null && argument.getClass().isArray()) {
+          // Only the order of magnitude, arrays of similar sizes share a shape
+          hash = 31 * hash + (32 - Integer.numberOfLeadingZeros(Array.getLength(argument)));
+        }
+      }
+      return hash;
+    }
+  }
+
+}
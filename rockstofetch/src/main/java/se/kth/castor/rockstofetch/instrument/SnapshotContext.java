@@ -0,0 +1,72 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import se.kth.castor.rockstofetch.instrument.CaptureContextHolder.ClaimedMethodEntry;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The application state at the time a snapshot was taken. Snapshots are serialized on a different
+ * thread and at a later time, so everything that depends on object identity, the MUT stack or the
+ * current time has to be looked up here instead.
+ */
+public final class SnapshotContext {
+
+  private static final ThreadLocal<SnapshotContext> CURRENT = new ThreadLocal<>();
+
+  private final Map<Object, Object> originals;
+  private final ClaimedMethodEntry mappingParent;
+  private final long timestamp;
+
+  SnapshotContext(Map<Object, Object> originals, ClaimedMethodEntry mappingParent, long timestamp) {
+    this.originals = originals;
+    this.mappingParent = mappingParent;
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * {@return the context of the snapshot currently being serialized on this thread or null if
+   * live objects are serialized}
+   */
+  public static SnapshotContext current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Returns the original of a copied object.
+   *
+   * @param object the object, which might be a copy from the current snapshot
+   * @return the original object or the object itself, if it is no copy
+   */
+  public static Object original(Object object) {
+    SnapshotContext context = CURRENT.get();
+    if (context == null || object == null) {
+      return object;
+    }
+    return context.originals.getOrDefault(object, object);
+  }
+
+  /**
+   * {@return the effective MUT entry when the snapshot was taken}
+   */
+  public ClaimedMethodEntry mappingParent() {
+    return mappingParent;
+  }
+
+  /**
+   * {@return the mutation tracing time when the snapshot was taken}
+   */
+  public long timestamp() {
+    return timestamp;
+  }
+
+  <T> T run(Supplier<T> action) {
+    SnapshotContext previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return action.get();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import se.kth.castor.rockstofetch.instrument.CaptureContextHolder.ClaimedMethodEntry;
+import se.kth.castor.rockstofetch.instrument.ObjectGraphCopier.NotCopyableException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import se.kth.castor.pankti.codemonkey.util.Statistics;
+
+/**
+ * Serializes objects off the application thread. The application thread only copies the object
+ * graph, a single background thread turns the copy into snippets.
+ * <p>
+ * If the queue is full, the application thread serializes the snapshot itself. Graphs that can not
+ * be copied are serialized synchronously on the application thread, as if this class did not
+ * exist.
+ */
+final class SnapshotSerializer {
+
+  private static final int QUEUE_CAPACITY = 1024;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+  private final ThreadPoolExecutor executor;
+  private final Statistics statistics;
+
+  SnapshotSerializer(Statistics statistics) {
+    this.statistics = statistics;
+    this.executor = new ThreadPoolExecutor(
+        1, 1,
+        0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+        runnable -> {
+          Thread thread = new Thread(runnable);
+          thread.setName("snapshot-serializer");
+          thread.setDaemon(true);
+          return thread;
+        },
+        // Also runs everything submitted after the shutdown hook started
+        (runnable, executor) -> runnable.run()
+    );
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+  }
+
+  /**
+   * Takes a snapshot of some objects and serializes it later.
+   *
+   * @param roots the objects to snapshot
+   * @param mappingParent the currently effective MUT entry
+   * @param serializer the serializer, receiving the snapshots of the roots in the same order
+   * @param <T> the type of the result
+   * @return the serialized result
+   */
+  <T> CompletableFuture<T> submit(
+      Object[] roots,
+      ClaimedMethodEntry mappingParent,
+      Function<Object[], T> serializer
+  ) {
+    ObjectGraphCopier copier = new ObjectGraphCopier();
+    Object[] copies;
+    try {
+      copies = copier.copyAll(roots);
+    } catch (NotCopyableException e) {
+      if (statistics != null) {
+        statistics.getGeneral().addToCounter("snapshotFallback", 1);
+      }
+      return CompletableFuture.completedFuture(serializer.apply(roots));
+    }
+    // Do not start mutation tracing just to read its clock
+    long timestamp = AgentMain.mutationTraceTypes.isEmpty()
+        ? 0
+        : MutationTracingContextHolder.getCurrentTime();
+    SnapshotContext context = new SnapshotContext(copier.originals(), mappingParent, timestamp);
+
+    CompletableFuture<T> result = new CompletableFuture<>();
+    executor.execute(() -> {
+      try (var ignored = CaptureContextHolder.enterAgentCode()) {
+        result.complete(context.run(() -> serializer.apply(copies)));
+      } catch (Throwable e) {
+        e.printStackTrace();
+        // Not much we can do...
+        Runtime.getRuntime().halt(8);
+      }
+    });
+    return result;
+  }
+
+  private void shutdown() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        System.out.println("Snapshot serializer did not finish, dropping pending snapshots");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
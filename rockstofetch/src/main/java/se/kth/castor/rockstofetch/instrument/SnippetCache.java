@@ -0,0 +1,67 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import se.kth.castor.rockstofetch.serialization.JavaSnippet;
+import se.kth.castor.rockstofetch.serialization.SnippetStore;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import se.kth.castor.pankti.codemonkey.util.Statistics;
+
+/**
+ * Reuses the snippet of a structurally equal object graph instead of serializing it again. Equal
+ * graphs therefore also get textually equal snippets, which the {@link SnippetStore} writes only
+ * once.
+ * <p>
+ * Failed serializations, i.e. snippets without statements, are not cached. They might have failed
+ * for transient reasons, e.g. a time budget exhausted during a GC pause.
+ */
+final class SnippetCache {
+
+  private static final int MAX_ENTRIES = 10_000;
+
+  private final ObjectFingerprinter fingerprinter;
+  private final Map<String, JavaSnippet> snippets;
+  private final Statistics statistics;
+
+  SnippetCache(ObjectFingerprinter fingerprinter, Statistics statistics) {
+    this.fingerprinter = fingerprinter;
+    this.snippets = new ConcurrentHashMap<>();
+    this.statistics = statistics;
+  }
+
+  /**
+   * Returns the snippet for an object, serializing it only if no equal graph was seen before.
+   *
+   * @param o the object to serialize
+   * @param targetType the type the object is assigned to
+   * @param serializer serializes the object
+   * @return the snippet
+   */
+  JavaSnippet get(Object o, String targetType, Supplier<JavaSnippet> serializer) {
+    Optional<String> fingerprint = o == null
+        ? Optional.empty()
+        : fingerprinter.fingerprint(o, targetType);
+    if (fingerprint.isEmpty()) {
+      return serializer.get();
+    }
+    JavaSnippet cached = snippets.get(fingerprint.get());
+    if (cached != null) {
+      addToCounter("snippetCacheHit");
+      return cached;
+    }
+    addToCounter("snippetCacheMiss");
+    JavaSnippet snippet = serializer.get();
+    if (!snippet.statements().isEmpty() && snippets.size() < MAX_ENTRIES) {
+      snippets.put(fingerprint.get(), snippet);
+    }
+    return snippet;
+  }
+
+  private void addToCounter(String name) {
+    if (statistics != null) {
+      statistics.getGeneral().addToCounter(name, 1);
+    }
+  }
+
+}
@@ -0,0 +1,17 @@
+package se.kth.castor.rockstofetch.instrument.aspects;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import se.kth.castor.rockstofetch.instrument.MethodIds;
+
+/**
+ * Binds an {@code int} advice parameter to the dense id of the instrumented method, as assigned by
+ * {@link MethodIds}. The id is a constant in the instrumented code.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MethodId {
+
+}
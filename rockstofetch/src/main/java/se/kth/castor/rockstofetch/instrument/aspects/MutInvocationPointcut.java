@@ -1,15 +1,15 @@
 package se.kth.castor.rockstofetch.instrument.aspects;
 
-import static se.kth.castor.rockstofetch.instrument.CaptureContextHolder.toSnippet;
-
 import se.kth.castor.rockstofetch.instrument.AgentMain;
 import se.kth.castor.rockstofetch.instrument.CaptureContextHolder;
 import se.kth.castor.rockstofetch.instrument.CaptureContextHolder.ClaimedMethodEntry;
+import se.kth.castor.rockstofetch.instrument.MethodIds;
+import se.kth.castor.rockstofetch.instrument.MethodIds.MethodInfo;
+import se.kth.castor.rockstofetch.instrument.ReceiverState;
 import se.kth.castor.rockstofetch.instrument.RecordedInvocation;
 import se.kth.castor.rockstofetch.instrument.RecordedMethod;
 import se.kth.castor.rockstofetch.serialization.JavaSnippet;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -18,50 +18,39 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner.Typing;
 
 public class MutInvocationPointcut {
 
-  public static final Map<String, Integer> finishedTracing = new ConcurrentHashMap<>();
-
   @Advice.OnMethodEnter(inline = false)
   public static PendingRecordedInvocation onBefore(
+      @MethodId int methodId,
       @Advice.This Object receiver,
-      @Advice.Origin Method method,
-      @Advice.Origin("#t") String declaringType,
-      @Advice.Origin("#m") String methodName,
-      @Advice.Origin("#s") String signature,
       @Advice.AllArguments Object[] parameters
   ) {
     if (CaptureContextHolder.isInAgentCode()) {
       return null;
     }
-    int invokeCount = finishedTracing.merge(
-        declaringType + methodName + signature, 1, Integer::sum
-    );
-    if (invokeCount > 10) {
+    if (!AgentMain.recordingSampler.shouldRecord(methodId, receiver, parameters)) {
       return null;
     }
-    if (invokeCount == 1 && AgentMain.statistics != null) {
-      // on first invocation, we count you
-      AgentMain.statistics.getGeneral().addInvokedMut();
-    }
     try (var ignored = CaptureContextHolder.enterAgentCode()) {
-      RecordedMethod recordedMethod = RecordedMethod.fromReflectMethod(method);
+      MethodInfo methodInfo = MethodIds.info(methodId);
+      RecordedMethod recordedMethod = methodInfo.recordedMethod();
 
       UUID myUuid = UUID.randomUUID();
       System.err.println(
           "  ".repeat(CaptureContextHolder.peekMutDepth()) + "(+) "
-          + method.getName()
+          + recordedMethod.methodName()
           + " (normal)"
       );
 
       ClaimedMethodEntry parentMut = CaptureContextHolder.getEffectiveMappingParent();
-      Map<Object, Integer> myObjectToIdMap = new IdentityHashMap<>(
-          parentMut != null ? parentMut.objectToIdMap() : Map.of()
-      );
+      Map<Object, Integer> myObjectToIdMap = parentMut != null
+          ? parentMut.copyObjectToIdMap()
+          : new IdentityHashMap<>();
       int nextId = parentMut != null ? parentMut.nextId() : 0;
       var idToNameMap = captureParametersAndFields(
           myObjectToIdMap,
@@ -82,8 +71,9 @@ public class MutInvocationPointcut {
           parentMut == null ? null : parentMut.invocationId(),
           myUuid,
           recordedMethod,
-          CaptureContextHolder.getParameterSnippets(receiver, parameters, recordedMethod),
-          CaptureContextHolder.toSnippet(receiver, receiver.getClass(), "receiver")
+          CaptureContextHolder.getParameterSnippetsLater(receiver, parameters, methodInfo),
+          CaptureContextHolder.toSnippetLater(receiver, receiver.getClass(), "receiver"),
+          CaptureContextHolder.captureReceiverState(receiver, methodInfo)
       );
     } catch (Exception e) {
       e.printStackTrace();
@@ -143,6 +133,7 @@ public class MutInvocationPointcut {
 
   @Advice.OnMethodExit(onThrowable = Throwable.class, inline = false)
   public static void onReturn(
+      @MethodId int methodId,
       @Advice.This Object receiverPost,
       @Advice.Origin("#r") String returnType,
       @Advice.Origin("#m") String methodName,
@@ -169,20 +160,19 @@ public class MutInvocationPointcut {
         return;
       }
 
+      CompletableFuture<JavaSnippet> returnSnippet;
       if (returnType.equals("void")) {
-        CaptureContextHolder.persistInvocation(
-            pendingInvocation.finishedVoidMethod(receiverPost, entry.idToNameMap())
+        returnSnippet = CompletableFuture.completedFuture(
+            new JavaSnippet(List.of(), void.class, void.class.getName(), 0)
         );
       } else {
-        JavaSnippet returnSnippet = CaptureContextHolder.getReturnValueSnippet(
-            receiverPost, returned, pendingInvocation.recordedMethod()
+        returnSnippet = CaptureContextHolder.getReturnValueSnippetLater(
+            receiverPost, returned, MethodIds.info(methodId)
         );
-        CaptureContextHolder.persistInvocation(pendingInvocation.finishedWithValue(
-            receiverPost,
-            returnSnippet,
-            entry.idToNameMap()
-        ));
       }
+      // Persisted once all snapshots are serialized, right away if they are synchronous
+      pendingInvocation.finished(receiverPost, returnSnippet, entry)
+          .thenAccept(CaptureContextHolder::persistInvocation);
 
       CaptureContextHolder.popMutInvocation(entry);
 
@@ -202,41 +192,36 @@ public class MutInvocationPointcut {
       UUID parentInvocationId,
       UUID invocationId,
       RecordedMethod recordedMethod,
-      List<JavaSnippet> parameters,
-      JavaSnippet receiverPre
+      CompletableFuture<List<JavaSnippet>> parameters,
+      CompletableFuture<JavaSnippet> receiverPre,
+      ReceiverState receiverState
   ) {
 
-    public RecordedInvocation finishedVoidMethod(
-        Object receiverPost,
-        Map<Integer, String> idToNameMap
-    ) {
-      return new RecordedInvocation(
-          parentInvocationId,
-          invocationId,
-          recordedMethod,
-          parameters,
-          idToNameMap,
-          receiverPre,
-          CaptureContextHolder.toSnippet(receiverPost, receiverPost.getClass(), "receiver_post"),
-          new JavaSnippet(List.of(), void.class, void.class.getName(), 0)
-      );
-    }
-
-    public RecordedInvocation finishedWithValue(
+    public CompletableFuture<RecordedInvocation> finished(
         Object receiverPost,
-        JavaSnippet returned,
-        Map<Integer, String> idToNameMap
+        CompletableFuture<JavaSnippet> returned,
+        ClaimedMethodEntry entry
     ) {
-      return new RecordedInvocation(
-          parentInvocationId,
-          invocationId,
-          recordedMethod,
-          parameters,
-          idToNameMap,
-          receiverPre,
-          CaptureContextHolder.toSnippet(receiverPost, receiverPost.getClass(), "receiver_post"),
-          returned
-      );
+      CompletableFuture<JavaSnippet> receiverPostSnippet;
+      if (CaptureContextHolder.isReceiverUnchanged(receiverState, receiverPost)) {
+        receiverPostSnippet = receiverPre;
+      } else {
+        receiverPostSnippet = CaptureContextHolder.toReceiverPostSnippetLater(
+            receiverState, receiverPost
+        );
+      }
+      return CompletableFuture.allOf(parameters, receiverPre, receiverPostSnippet, returned)
+          .thenApply(ignored -> new RecordedInvocation(
+              parentInvocationId,
+              invocationId,
+              recordedMethod,
+              parameters.join(),
+              // Serializing the snapshots might have registered mocks
+              entry.copyIdToNameMap(),
+              receiverPre.join(),
+              receiverPostSnippet.join(),
+              returned.join()
+          ));
     }
 
   }
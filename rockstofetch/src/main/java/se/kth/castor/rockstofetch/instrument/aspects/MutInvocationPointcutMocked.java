@@ -1,10 +1,11 @@
 package se.kth.castor.rockstofetch.instrument.aspects;
 
 import se.kth.castor.rockstofetch.instrument.CaptureContextHolder;
+import se.kth.castor.rockstofetch.instrument.MethodIds;
+import se.kth.castor.rockstofetch.instrument.MethodIds.MethodInfo;
 import se.kth.castor.rockstofetch.instrument.RecordedMethod;
 import se.kth.castor.rockstofetch.instrument.RecordedMockedInvocation;
 import se.kth.castor.rockstofetch.serialization.JavaSnippet;
-import java.lang.reflect.Method;
 import java.util.UUID;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
@@ -13,8 +14,8 @@ public class MutInvocationPointcutMocked {
 
   @Advice.OnMethodEnter(inline = false)
   public static PendingRecordedMockedInvocation onBefore(
-      @Advice.This Object receiver,
-      @Advice.Origin Method method
+      @MethodId int methodId,
+      @Advice.This Object receiver
   ) {
     if (CaptureContextHolder.isInAgentCode()) {
       return null;
@@ -34,13 +35,14 @@ public class MutInvocationPointcutMocked {
       if (targetId == null) {
         System.err.println(
             "  ".repeat(CaptureContextHolder.peekMutDepth()) + "(🧗) "
-            + method.getName()
+            + MethodIds.info(methodId).recordedMethod().methodName()
             + " (mock)"
         );
         return null;
       }
 
-      RecordedMethod recordedMethod = RecordedMethod.fromReflectMethod(method);
+      MethodInfo methodInfo = MethodIds.info(methodId);
+      RecordedMethod recordedMethod = methodInfo.recordedMethod();
       PendingRecordedMockedInvocation invocation = new PendingRecordedMockedInvocation(
           CaptureContextHolder.getCurrentMut().invocationId(),
           recordedMethod,
@@ -49,7 +51,7 @@ public class MutInvocationPointcutMocked {
 
       System.err.print(
           "  ".repeat(CaptureContextHolder.peekMutDepth()) + "(+) "
-          + method.getName()
+          + recordedMethod.methodName()
           + " (mock)"
       );
 
@@ -65,6 +67,7 @@ public class MutInvocationPointcutMocked {
 
   @Advice.OnMethodExit(onThrowable = Throwable.class, inline = false)
   public static void onReturn(
+      @MethodId int methodId,
       @Advice.This Object receiverPost,
       @Advice.Origin("#m") String methodName,
       @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object returned,
@@ -92,7 +95,7 @@ public class MutInvocationPointcutMocked {
       );
 
       JavaSnippet returnSnippet = CaptureContextHolder.getReturnValueSnippet(
-          receiverPost, returned, pendingInvocation.method()
+          receiverPost, returned, MethodIds.info(methodId)
       );
       CaptureContextHolder.persistInvocation(pendingInvocation.finished(returnSnippet));
     }
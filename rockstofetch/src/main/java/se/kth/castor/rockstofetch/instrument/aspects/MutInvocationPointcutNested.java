@@ -3,10 +3,12 @@ package se.kth.castor.rockstofetch.instrument.aspects;
 import static se.kth.castor.rockstofetch.instrument.CaptureContextHolder.toSnippet;
 
 import se.kth.castor.rockstofetch.instrument.CaptureContextHolder;
+import se.kth.castor.rockstofetch.instrument.MethodIds;
+import se.kth.castor.rockstofetch.instrument.MethodIds.MethodInfo;
+import se.kth.castor.rockstofetch.instrument.ReceiverState;
 import se.kth.castor.rockstofetch.instrument.RecordedMethod;
 import se.kth.castor.rockstofetch.instrument.RecordedNestedInvocation;
 import se.kth.castor.rockstofetch.serialization.JavaSnippet;
-import java.lang.reflect.Method;
 import java.util.List;
 import java.util.UUID;
 import net.bytebuddy.asm.Advice;
@@ -16,8 +18,8 @@ public class MutInvocationPointcutNested {
 
   @Advice.OnMethodEnter(inline = false)
   public static PendingRecordedNestedInvocation onBefore(
+      @MethodId int methodId,
       @Advice.This Object receiver,
-      @Advice.Origin Method method,
       @Advice.AllArguments Object[] parameters
   ) {
     if (CaptureContextHolder.isInAgentCode()) {
@@ -39,17 +41,18 @@ public class MutInvocationPointcutNested {
       if (targetId == null) {
         System.err.println(
             "  ".repeat(CaptureContextHolder.peekMutDepth()) + "(🧗) "
-            + method.getName()
+            + MethodIds.info(methodId).recordedMethod().methodName()
             + " (nested)"
         );
         return null;
       }
 
-      RecordedMethod recordedMethod = RecordedMethod.fromReflectMethod(method);
+      MethodInfo methodInfo = MethodIds.info(methodId);
+      RecordedMethod recordedMethod = methodInfo.recordedMethod();
 
       System.err.print(
           "  ".repeat(CaptureContextHolder.peekMutDepth()) + "(+) "
-          + method.getName()
+          + recordedMethod.methodName()
           + " (nested)"
       );
 
@@ -60,8 +63,9 @@ public class MutInvocationPointcutNested {
       return new PendingRecordedNestedInvocation(
           CaptureContextHolder.getCurrentMut().invocationId(),
           recordedMethod,
-          CaptureContextHolder.getParameterSnippets(receiver, parameters, recordedMethod),
+          CaptureContextHolder.getParameterSnippets(receiver, parameters, methodInfo),
           CaptureContextHolder.toSnippet(receiver, receiver.getClass(), "receiver"),
+          CaptureContextHolder.captureReceiverState(receiver, methodInfo),
           targetId
       );
     }
@@ -69,6 +73,7 @@ public class MutInvocationPointcutNested {
 
   @Advice.OnMethodExit(onThrowable = Throwable.class, inline = false)
   public static void onReturn(
+      @MethodId int methodId,
       @Advice.This Object receiverPost,
       @Advice.Origin("#m") String methodName,
       @Advice.Return(typing = Assigner.Typing.DYNAMIC) Object returned,
@@ -94,7 +99,7 @@ public class MutInvocationPointcutNested {
           + " (nested)"
       );
       JavaSnippet returnSnippet = CaptureContextHolder.getReturnValueSnippet(
-          receiverPost, returned, pendingInvocation.method()
+          receiverPost, returned, MethodIds.info(methodId)
       );
       CaptureContextHolder.persistInvocation(pendingInvocation.finished(
           receiverPost,
@@ -108,6 +113,7 @@ public class MutInvocationPointcutNested {
       RecordedMethod method,
       List<JavaSnippet> parameters,
       JavaSnippet receiverPre,
+      ReceiverState receiverState,
       int targetId
   ) {
 
@@ -115,12 +121,18 @@ public class MutInvocationPointcutNested {
         Object receiverPost,
         JavaSnippet returned
     ) {
+      JavaSnippet receiverPostSnippet = receiverPre;
+      if (!CaptureContextHolder.isReceiverUnchanged(receiverState, receiverPost)) {
+        receiverPostSnippet = CaptureContextHolder.toReceiverPostSnippet(
+            receiverState, receiverPost
+        );
+      }
       return new RecordedNestedInvocation(
           parentInvocationId,
           method,
           parameters,
           receiverPre,
-          CaptureContextHolder.toSnippet(receiverPost, receiverPost.getClass(), "receiver_post"),
+          receiverPostSnippet,
           returned,
           targetId
       );
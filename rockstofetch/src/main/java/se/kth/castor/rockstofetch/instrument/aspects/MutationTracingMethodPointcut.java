@@ -1,8 +1,9 @@
 package se.kth.castor.rockstofetch.instrument.aspects;
 
 import se.kth.castor.rockstofetch.instrument.CaptureContextHolder;
+import se.kth.castor.rockstofetch.instrument.MethodIds;
+import se.kth.castor.rockstofetch.instrument.MethodIds.MethodInfo;
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder;
-import java.lang.reflect.Method;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.implementation.bytecode.assign.Assigner.Typing;
 import se.kth.castor.pankti.codemonkey.util.ClassUtil;
@@ -11,16 +12,20 @@ public class MutationTracingMethodPointcut {
 
   @Advice.OnMethodEnter(inline = false)
   public static PendingInvocation onMethodEnter(
+      @MethodId int methodId,
       @Advice.This(optional = true) Object receiver,
-      @Advice.Origin Method method,
+      @Advice.Origin Class<?> declaringClass,
       @Advice.AllArguments Object[] parameters
   ) {
     if (CaptureContextHolder.isInAgentCode()) {
       return null;
     }
     try (var ignored = CaptureContextHolder.enterAgentCode()) {
+      MethodInfo method = MethodIds.info(methodId);
       int invocationId = MutationTracingContextHolder.startMethodCall(
-          receiver, method, MutationTracingContextHolder.getMethodParams(parameters, method)
+          receiver,
+          method.recordedMethod(),
+          MutationTracingContextHolder.getMethodParams(parameters, method, declaringClass)
       );
       if (invocationId < 0) {
         return null;
@@ -14,7 +14,8 @@ public class MutationTracingSubstitutionPointcut {
       return;
     }
 
-    try (var ignored = CaptureContextHolder.enterAgentCode()) {
+    CaptureContextHolder.enterAgentCodeUnguarded();
+    try {
       MutationTracingContextHolder.registerSetField(
           receiver,
           newValue,
@@ -24,6 +25,31 @@ public class MutationTracingSubstitutionPointcut {
       e.printStackTrace();
       Runtime.getRuntime().halt(6);
       throw e;
+    } finally {
+      CaptureContextHolder.exitAgentCode(false);
+    }
+  }
+
+  /**
+   * Called for writes to primitive instance fields. Primitive values are never tracked, so they
+   * are not passed (and boxed) at all.
+   *
+   * @param receiver the object whose field was written
+   */
+  public static void onPrimitiveFieldWrite(Object receiver) {
+    if (CaptureContextHolder.isInAgentCode()) {
+      return;
+    }
+
+    CaptureContextHolder.enterAgentCodeUnguarded();
+    try {
+      MutationTracingContextHolder.registerPrimitiveSetField(receiver);
+    } catch (Exception e) {
+      e.printStackTrace();
+      Runtime.getRuntime().halt(6);
+      throw e;
+    } finally {
+      CaptureContextHolder.exitAgentCode(false);
     }
   }
 
@@ -30,12 +30,16 @@ import net.bytebuddy.utility.JavaConstant.MethodHandle;
 public class SetFieldTraceFactory {
 
   private static final Method TRACE_METHOD;
+  private static final Method PRIMITIVE_TRACE_METHOD;
 
   static {
     try {
       TRACE_METHOD = MutationTracingSubstitutionPointcut.class.getMethod(
           "onFieldWrite", Object.class, Object.class, Object.class
       );
+      PRIMITIVE_TRACE_METHOD = MutationTracingSubstitutionPointcut.class.getMethod(
+          "onPrimitiveFieldWrite", Object.class
+      );
     } catch (NoSuchMethodException e) {
       throw new RuntimeException("Did not find mutation trace method", e);
     }
@@ -81,6 +85,19 @@ public class SetFieldTraceFactory {
 
       manipulations.add(Removal.of(current));
 
+      // A static field has no receiver that could have an id, the event would be dropped anyway
+      if (fieldDescription.isStatic() && fieldDescription.getType().isPrimitive()) {
+        return new Simple(new Compound(manipulations), new ForLoadedType(void.class));
+      }
+
+      // Primitive values never have an id, only pass the receiver to not box them
+      if (!fieldDescription.isStatic() && fieldDescription.getType().isPrimitive()) {
+        manipulations.add(MethodVariableAccess.of(parameters.get(0)).loadFrom(offsets.get(0)));
+        manipulations.add(MethodInvocation.invoke(new ForLoadedMethod(PRIMITIVE_TRACE_METHOD)));
+
+        return new Simple(new Compound(manipulations), new ForLoadedType(void.class));
+      }
+
       if (fieldDescription.isStatic()) {
         manipulations.add(MethodVariableAccess.of(parameters.get(0)).loadFrom(offsets.get(0)));
         manipulations.add(new PrimitiveTypeAwareAssigner(assigner).assign(
@@ -0,0 +1,69 @@
+package se.kth.castor.rockstofetch.serialization;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.stream.Stream;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event;
+
+/**
+ * Converts between the binary event log and the line based JSON format used by older traces.
+ */
+public class EventLogConverter {
+
+  private final Json json;
+
+  public EventLogConverter() {
+    this.json = new Json();
+  }
+
+  /**
+   * Converts the given file to the other format, placing the result next to it. The direction is
+   * derived from the file extension.
+   *
+   * @param file the events file to convert
+   * @return the path of the converted file
+   * @throws IOException if reading or writing fails
+   */
+  public Path convert(Path file) throws IOException {
+    String fileName = file.getFileName().toString();
+    if (fileName.endsWith(".json")) {
+      Path target = file.resolveSibling(EventLogFormat.FILE_NAME);
+      jsonToBinary(file, target);
+      return target;
+    }
+    Path target = file.resolveSibling(EventLogFormat.JSON_FILE_NAME);
+    binaryToJson(file, target);
+    return target;
+  }
+
+  public void jsonToBinary(Path source, Path target) throws IOException {
+    Files.deleteIfExists(target);
+    try (
+        Stream<String> lines = Files.lines(source);
+        EventLogWriter writer = EventLogWriter.append(target)
+    ) {
+      for (String line : (Iterable<String>) lines::iterator) {
+        if (line.isBlank()) {
+          continue;
+        }
+        writer.write(Objects.requireNonNull(json.fromJson(line, Event.class)));
+      }
+    }
+  }
+
+  public void binaryToJson(Path source, Path target) throws IOException {
+    try (
+        Stream<Event> events = EventLogReader.readEvents(source);
+        BufferedWriter writer = Files.newBufferedWriter(target)
+    ) {
+      for (Event event : (Iterable<Event>) events::iterator) {
+        writer.write(json.toJson(event));
+        writer.newLine();
+      }
+    }
+  }
+
+}
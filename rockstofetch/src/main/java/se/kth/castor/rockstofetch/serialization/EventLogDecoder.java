@@ -0,0 +1,202 @@
+package se.kth.castor.rockstofetch.serialization;
+
+import static se.kth.castor.rockstofetch.serialization.EventLogFormat.unZigZag;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMethodEndEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMethodStartEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMutatorEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.ConstructEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.SetFieldEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.BooleanValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ByteValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.CharacterValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.DoubleValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.FailedValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.FloatValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.IntegerValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.LongValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.NullValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ReferenceValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.SerializedValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ShortValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.StringValue;
+import se.kth.castor.rockstofetch.instrument.RecordedMethod;
+
+/**
+ * Decodes the event records of a contiguous region of the event log. The interned tables must
+ * already contain every definition the region references, so independent regions can be decoded
+ * concurrently.
+ */
+final class EventLogDecoder {
+
+  private final List<String> strings;
+  private final List<RecordedMethod> methods;
+  private byte[] scratch;
+
+  EventLogDecoder(List<String> strings, List<RecordedMethod> methods) {
+    this.strings = strings;
+    this.methods = methods;
+    this.scratch = new byte[256];
+  }
+
+  /**
+   * Decodes all events in the given region. Definition and segment records are skipped.
+   *
+   * @param region the records, read from its position to its limit
+   * @return the decoded events in file order
+   * @throws IOException if a record is malformed
+   */
+  List<Event> decodeAll(ByteBuffer region) throws IOException {
+    List<Event> events = new ArrayList<>();
+    while (region.hasRemaining()) {
+      byte tag = region.get();
+      int length = (int) readVarLong(region);
+      int end = region.position() + length;
+      if (EventLogFormat.isEventTag(tag)) {
+        events.add(decodeEvent(tag, region));
+      }
+      region.position(end);
+    }
+    return events;
+  }
+
+  private Event decodeEvent(byte tag, ByteBuffer payload) throws IOException {
+    long timestamp = readVarLong(payload);
+    return switch (tag) {
+      case EventLogFormat.TAG_CONSTRUCT -> {
+        long endTimestamp = timestamp + readVarLong(payload);
+        int newObject = readInt(payload);
+        String clazz = readString(payload);
+        List<Value> parameters = readValues(payload);
+        int fieldCount = (int) readVarLong(payload);
+        List<Integer> fieldIds = new ArrayList<>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+          fieldIds.add(readInt(payload));
+        }
+        yield new ConstructEvent(timestamp, endTimestamp, newObject, clazz, parameters, fieldIds);
+      }
+      case EventLogFormat.TAG_METHOD_START -> {
+        int invocationId = readInt(payload);
+        int receiver = readInt(payload);
+        RecordedMethod method = methods.get((int) readVarLong(payload));
+        yield new CallMethodStartEvent(
+            timestamp, invocationId, receiver, method, readValues(payload)
+        );
+      }
+      case EventLogFormat.TAG_METHOD_END -> {
+        int invocationId = readInt(payload);
+        int receiver = readInt(payload);
+        Integer returnedId = readNullableInt(payload);
+        int returnedClass = (int) readVarLong(payload);
+        yield new CallMethodEndEvent(
+            receiver,
+            timestamp,
+            invocationId,
+            returnedId,
+            returnedClass == 0 ? null : strings.get(returnedClass - 1)
+        );
+      }
+      case EventLogFormat.TAG_SET_FIELD -> {
+        int receiver = readInt(payload);
+        Integer newValueId = readNullableInt(payload);
+        Integer oldValueId = readNullableInt(payload);
+        yield new SetFieldEvent(timestamp, receiver, newValueId, oldValueId);
+      }
+      case EventLogFormat.TAG_CALL_MUTATOR -> new CallMutatorEvent(timestamp, readInt(payload));
+      default -> throw new IOException("Unknown record tag " + tag);
+    };
+  }
+
+  private List<Value> readValues(ByteBuffer payload) throws IOException {
+    int count = (int) readVarLong(payload);
+    List<Value> values = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      values.add(readValue(payload));
+    }
+    return values;
+  }
+
+  private Value readValue(ByteBuffer payload) throws IOException {
+    byte type = payload.get();
+    return switch (type) {
+      case EventLogFormat.VALUE_NULL -> new NullValue(readString(payload));
+      case EventLogFormat.VALUE_BOOLEAN -> new BooleanValue(payload.get() != 0);
+      case EventLogFormat.VALUE_CHARACTER -> new CharacterValue((char) readVarLong(payload));
+      case EventLogFormat.VALUE_BYTE -> new ByteValue(payload.get());
+      case EventLogFormat.VALUE_SHORT -> new ShortValue((short) readInt(payload));
+      case EventLogFormat.VALUE_INTEGER -> new IntegerValue(readInt(payload));
+      case EventLogFormat.VALUE_LONG -> new LongValue(unZigZag(readVarLong(payload)));
+      case EventLogFormat.VALUE_FLOAT -> new FloatValue(Float.intBitsToFloat(payload.getInt()));
+      case EventLogFormat.VALUE_DOUBLE -> new DoubleValue(
+          Double.longBitsToDouble(payload.getLong())
+      );
+      case EventLogFormat.VALUE_STRING -> new StringValue(readInlineString(payload));
+      case EventLogFormat.VALUE_FAILED -> new FailedValue(readString(payload));
+      case EventLogFormat.VALUE_SERIALIZED -> {
+        String clazz = readString(payload);
+        Integer id = readNullableInt(payload);
+        int statementCount = (int) readVarLong(payload);
+        List<String> statements = new ArrayList<>(statementCount);
+        for (int i = 0; i < statementCount; i++) {
+          statements.add(readInlineString(payload));
+        }
+        JavaSnippet snippet = new JavaSnippet(
+            statements,
+            readString(payload),
+            readString(payload),
+            (int) readVarLong(payload)
+        );
+        yield new SerializedValue(clazz, id, snippet);
+      }
+      case EventLogFormat.VALUE_REFERENCE -> {
+        String clazz = readString(payload);
+        yield new ReferenceValue(clazz, readInt(payload));
+      }
+      default -> throw new IOException("Unknown value type " + type);
+    };
+  }
+
+  private String readString(ByteBuffer payload) {
+    return strings.get((int) readVarLong(payload));
+  }
+
+  private String readInlineString(ByteBuffer payload) {
+    int length = (int) readVarLong(payload);
+    if (scratch.length < length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    payload.get(scratch, 0, length);
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  private static int readInt(ByteBuffer payload) {
+    return (int) unZigZag(readVarLong(payload));
+  }
+
+  private static Integer readNullableInt(ByteBuffer payload) {
+    long raw = readVarLong(payload);
+    if (raw == 0) {
+      return null;
+    }
+    return (int) unZigZag(raw - 1);
+  }
+
+  static long readVarLong(ByteBuffer buffer) {
+    long result = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer.get();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+  }
+
+}
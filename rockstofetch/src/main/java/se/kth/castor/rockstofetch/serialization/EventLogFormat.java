@@ -0,0 +1,66 @@
+package se.kth.castor.rockstofetch.serialization;
+
+/**
+ * Constants of the binary event log written by the agent.
+ * <p>
+ * The log is a sequence of records. Every record starts with a one byte tag, followed by the
+ * payload length as an unsigned varint and the payload itself. The length prefix allows readers to
+ * skip records without decoding them.
+ * <p>
+ * Class names and {@link se.kth.castor.rockstofetch.instrument.RecordedMethod}s are interned: the
+ * first time they are used a {@link #TAG_STRING} or {@link #TAG_METHOD} record defines them and
+ * assigns the next free id of the respective table. Events then only reference that id. Every
+ * writer session starts with a {@link #TAG_SEGMENT} record, which resets both tables. This allows
+ * appending to an existing log.
+ */
+public final class EventLogFormat {
+
+  public static final String FILE_NAME = "events.bin";
+  public static final String JSON_FILE_NAME = "events.json";
+
+  public static final int VERSION = 1;
+  /**
+   * {@code RTFE}, the payload of every segment record.
+   */
+  public static final int MAGIC = 0x52544645;
+
+  public static final byte TAG_SEGMENT = 0;
+  public static final byte TAG_STRING = 1;
+  public static final byte TAG_METHOD = 2;
+  public static final byte TAG_CONSTRUCT = 10;
+  public static final byte TAG_METHOD_START = 11;
+  public static final byte TAG_METHOD_END = 12;
+  public static final byte TAG_SET_FIELD = 13;
+  public static final byte TAG_CALL_MUTATOR = 14;
+
+  public static final byte VALUE_NULL = 0;
+  public static final byte VALUE_BOOLEAN = 1;
+  public static final byte VALUE_CHARACTER = 2;
+  public static final byte VALUE_BYTE = 3;
+  public static final byte VALUE_SHORT = 4;
+  public static final byte VALUE_INTEGER = 5;
+  public static final byte VALUE_LONG = 6;
+  public static final byte VALUE_FLOAT = 7;
+  public static final byte VALUE_DOUBLE = 8;
+  public static final byte VALUE_STRING = 9;
+  public static final byte VALUE_FAILED = 10;
+  public static final byte VALUE_SERIALIZED = 11;
+  public static final byte VALUE_REFERENCE = 12;
+
+  private EventLogFormat() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  public static boolean isEventTag(byte tag) {
+    return tag >= TAG_CONSTRUCT && tag <= TAG_CALL_MUTATOR;
+  }
+
+  static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+}
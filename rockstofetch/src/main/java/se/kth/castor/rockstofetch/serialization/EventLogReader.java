@@ -0,0 +1,293 @@
+package se.kth.castor.rockstofetch.serialization;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event;
+import se.kth.castor.rockstofetch.instrument.RecordedMethod;
+
+/**
+ * Reads events written by an {@link EventLogWriter}.
+ * <p>
+ * The file is memory mapped and decoded straight from the mapping. The calling thread only walks
+ * the record headers and the (small) definition records, cutting the log into chunks of event
+ * records. The chunks are then decoded in parallel, while events are still handed out lazily and
+ * in file order.
+ */
+public class EventLogReader implements Iterator<Event>, Closeable {
+
+  /**
+   * The maximum size of a single mapping. Records never span two mappings.
+   */
+  private static final long WINDOW_SIZE = 1L << 30;
+  private static final int CHUNK_SIZE = 1 << 22;
+  /**
+   * One byte tag and at most ten bytes of varint length.
+   */
+  private static final int MAX_HEADER_SIZE = 11;
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final int maxChunksInFlight;
+  private final Deque<CompletableFuture<List<Event>>> chunksInFlight;
+  private final Tables tables;
+
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long position;
+  private Iterator<Event> current;
+
+  public EventLogReader(Path file) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.fileSize = channel.size();
+    this.maxChunksInFlight = Math.max(2, ForkJoinPool.getCommonPoolParallelism() * 2);
+    this.chunksInFlight = new ArrayDeque<>();
+    this.tables = new Tables();
+    this.current = Collections.emptyIterator();
+  }
+
+  /**
+   * Reads events in a lazy stream. The caller needs to close the stream.
+   *
+   * @param file the event log to read
+   * @return a stream with all events
+   * @throws IOException if the file can not be opened
+   */
+  public static Stream<Event> readEvents(Path file) throws IOException {
+    EventLogReader reader = new EventLogReader(file);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                reader, Spliterator.ORDERED | Spliterator.NONNULL
+            ),
+            false
+        )
+        .onClose(() -> {
+          try {
+            reader.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      try {
+        fillChunksInFlight();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (chunksInFlight.isEmpty()) {
+        return false;
+      }
+      try {
+        current = chunksInFlight.removeFirst().join().iterator();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof UncheckedIOException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Event next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  private void fillChunksInFlight() throws IOException {
+    while (chunksInFlight.size() < maxChunksInFlight) {
+      ByteBuffer chunk = nextChunk();
+      if (chunk == null) {
+        return;
+      }
+      EventLogDecoder decoder = tables.decoder();
+      chunksInFlight.addLast(CompletableFuture.supplyAsync(() -> {
+        try {
+          return decoder.decodeAll(chunk);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }));
+    }
+  }
+
+  /**
+   * Walks the record headers from the current position on and returns the next chunk of records.
+   * Definitions are applied to the tables on the way. A chunk never spans a segment boundary or
+   * two mappings.
+   *
+   * @return the next chunk or null, if the end of the file was reached
+   * @throws IOException if the file is malformed
+   */
+  private ByteBuffer nextChunk() throws IOException {
+    int chunkStart = -1;
+    int chunkEnd = -1;
+
+    while (position < fileSize) {
+      if (!isMapped(position, Math.min(MAX_HEADER_SIZE, fileSize - position))) {
+        if (chunkStart >= 0) {
+          break;
+        }
+        map(position);
+      }
+      int index = (int) (position - windowStart);
+      byte tag = window.get(index);
+
+      long length = 0;
+      int headerSize = 1;
+      for (int shift = 0; ; shift += 7) {
+        if (headerSize >= MAX_HEADER_SIZE || position + headerSize >= fileSize) {
+          throw new EOFException("Truncated record header at " + position);
+        }
+        byte b = window.get(index + headerSize++);
+        length |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          break;
+        }
+      }
+      long recordSize = headerSize + length;
+      if (position + recordSize > fileSize) {
+        throw new EOFException("Truncated record with tag " + tag + " at " + position);
+      }
+
+      boolean segmentStart = tag == EventLogFormat.TAG_SEGMENT;
+      boolean outsideWindow = !isMapped(position, recordSize);
+      if (chunkStart >= 0 && (segmentStart || outsideWindow)) {
+        break;
+      }
+      if (outsideWindow) {
+        if (recordSize > WINDOW_SIZE) {
+          throw new IOException("Record at " + position + " is too large: " + recordSize);
+        }
+        map(position);
+        continue;
+      }
+
+      if (!EventLogFormat.isEventTag(tag)) {
+        tables.apply(tag, window.slice(index + headerSize, (int) length));
+      }
+      if (!segmentStart && chunkStart < 0) {
+        chunkStart = index;
+      }
+      position += recordSize;
+
+      if (chunkStart >= 0) {
+        chunkEnd = (int) (position - windowStart);
+        if (chunkEnd - chunkStart >= CHUNK_SIZE) {
+          break;
+        }
+      }
+    }
+
+    if (chunkStart < 0) {
+      return null;
+    }
+    return window.slice(chunkStart, chunkEnd - chunkStart);
+  }
+
+  private boolean isMapped(long start, long length) {
+    return window != null
+           && start >= windowStart
+           && start + length <= windowStart + window.capacity();
+  }
+
+  private void map(long start) throws IOException {
+    windowStart = start;
+    window = channel.map(MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunksInFlight.forEach(it -> it.cancel(false));
+    chunksInFlight.clear();
+    channel.close();
+  }
+
+  /**
+   * The interned tables of the current segment. Decoders receive immutable snapshots, so the
+   * scanning thread can keep appending definitions while earlier chunks are still decoded.
+   */
+  private static class Tables {
+
+    private final List<String> strings;
+    private final List<RecordedMethod> methods;
+    private List<String> stringSnapshot;
+    private List<RecordedMethod> methodSnapshot;
+
+    private Tables() {
+      this.strings = new ArrayList<>();
+      this.methods = new ArrayList<>();
+    }
+
+    private void apply(byte tag, ByteBuffer payload) throws IOException {
+      switch (tag) {
+        case EventLogFormat.TAG_SEGMENT -> {
+          if (payload.getInt() != EventLogFormat.MAGIC) {
+            throw new IOException("Not an event log segment");
+          }
+          long version = EventLogDecoder.readVarLong(payload);
+          if (version != EventLogFormat.VERSION) {
+            throw new IOException("Unsupported event log version " + version);
+          }
+          strings.clear();
+          methods.clear();
+        }
+        case EventLogFormat.TAG_STRING -> strings.add(
+            StandardCharsets.UTF_8.decode(payload).toString()
+        );
+        case EventLogFormat.TAG_METHOD -> {
+          String declaringClass = strings.get((int) EventLogDecoder.readVarLong(payload));
+          String name = strings.get((int) EventLogDecoder.readVarLong(payload));
+          int parameterCount = (int) EventLogDecoder.readVarLong(payload);
+          List<String> parameterTypes = new ArrayList<>(parameterCount);
+          for (int i = 0; i < parameterCount; i++) {
+            parameterTypes.add(strings.get((int) EventLogDecoder.readVarLong(payload)));
+          }
+          methods.add(new RecordedMethod(declaringClass, name, List.copyOf(parameterTypes)));
+        }
+        default -> throw new IOException("Unknown record tag " + tag);
+      }
+      stringSnapshot = null;
+      methodSnapshot = null;
+    }
+
+    private EventLogDecoder decoder() {
+      if (stringSnapshot == null) {
+        stringSnapshot = List.copyOf(strings);
+        methodSnapshot = List.copyOf(methods);
+      }
+      // Decoders keep a scratch buffer, so every chunk gets its own instance
+      return new EventLogDecoder(stringSnapshot, methodSnapshot);
+    }
+  }
+
+}
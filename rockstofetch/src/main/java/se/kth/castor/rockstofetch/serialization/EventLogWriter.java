@@ -0,0 +1,339 @@
+package se.kth.castor.rockstofetch.serialization;
+
+import static se.kth.castor.rockstofetch.serialization.EventLogFormat.zigZag;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMethodEndEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMethodStartEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.CallMutatorEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.ConstructEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Event.SetFieldEvent;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.BooleanValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ByteValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.CharacterValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.DoubleValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.FailedValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.FloatValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.IntegerValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.LongValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.NullValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ReferenceValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.SerializedValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.ShortValue;
+import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder.Value.StringValue;
+import se.kth.castor.rockstofetch.instrument.RecordedMethod;
+
+/**
+ * Writes events in the binary format described in {@link EventLogFormat}. Instances are not thread
+ * safe.
+ */
+public class EventLogWriter implements Closeable {
+
+  /**
+   * Marks an absent id in {@link #writeSetField(long, int, int, int)}.
+   */
+  public static final int NO_ID = Integer.MIN_VALUE;
+
+  private final OutputStream out;
+  private final Map<String, Integer> strings;
+  private final Map<RecordedMethod, Integer> methods;
+  private final Buffer payload;
+  private final Buffer definition;
+
+  public EventLogWriter(OutputStream out) throws IOException {
+    this.out = out;
+    this.strings = new HashMap<>();
+    this.methods = new HashMap<>();
+    this.payload = new Buffer();
+    this.definition = new Buffer();
+
+    definition.writeInt(EventLogFormat.MAGIC);
+    definition.writeVarLong(EventLogFormat.VERSION);
+    writeRecord(EventLogFormat.TAG_SEGMENT, definition);
+  }
+
+  /**
+   * Opens a writer appending to the given file, creating it if needed.
+   *
+   * @param file the file to write to
+   * @return the writer
+   * @throws IOException if the file could not be opened
+   */
+  public static EventLogWriter append(Path file) throws IOException {
+    return new EventLogWriter(new BufferedOutputStream(
+        Files.newOutputStream(
+            file,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE
+        ),
+        1 << 16
+    ));
+  }
+
+  public void write(Event event) throws IOException {
+    payload.reset();
+    byte tag;
+    if (event instanceof ConstructEvent e) {
+      payload.writeVarLong(e.timestamp());
+      payload.writeVarLong(e.endTimestamp() - e.timestamp());
+      payload.writeVarLong(zigZag(e.newObject()));
+      payload.writeVarLong(internString(e.clazz()));
+      writeValues(e.parameters());
+      payload.writeVarLong(e.fieldIds().size());
+      for (Integer fieldId : e.fieldIds()) {
+        payload.writeVarLong(zigZag(fieldId));
+      }
+      tag = EventLogFormat.TAG_CONSTRUCT;
+    } else if (event instanceof CallMethodStartEvent e) {
+      payload.writeVarLong(e.timestamp());
+      payload.writeVarLong(zigZag(e.methodInvocationId()));
+      payload.writeVarLong(zigZag(e.receiver()));
+      payload.writeVarLong(internMethod(e.method()));
+      writeValues(e.parameters());
+      tag = EventLogFormat.TAG_METHOD_START;
+    } else if (event instanceof CallMethodEndEvent e) {
+      payload.writeVarLong(e.timestamp());
+      payload.writeVarLong(zigZag(e.methodInvocationId()));
+      payload.writeVarLong(zigZag(e.receiver()));
+      writeNullableInt(e.returnedId());
+      payload.writeVarLong(e.returnedClass() == null ? 0 : internString(e.returnedClass()) + 1);
+      tag = EventLogFormat.TAG_METHOD_END;
+    } else if (event instanceof SetFieldEvent e) {
+      writeSetField(
+          e.timestamp(),
+          e.receiver(),
+          e.newValueId() == null ? NO_ID : e.newValueId(),
+          e.oldValueId() == null ? NO_ID : e.oldValueId()
+      );
+      return;
+    } else if (event instanceof CallMutatorEvent e) {
+      payload.writeVarLong(e.timestamp());
+      payload.writeVarLong(zigZag(e.receiver()));
+      tag = EventLogFormat.TAG_CALL_MUTATOR;
+    } else {
+      throw new IllegalArgumentException("Unknown event type " + event.getClass());
+    }
+    writeRecord(tag, payload);
+  }
+
+  /**
+   * Writes a {@link SetFieldEvent} without requiring an event instance.
+   *
+   * @param timestamp the timestamp of the write
+   * @param receiver the id of the receiver
+   * @param newValueId the id of the new value or {@link #NO_ID}
+   * @param oldValueId the id of the old value or {@link #NO_ID}
+   * @throws IOException if writing fails
+   */
+  public void writeSetField(long timestamp, int receiver, int newValueId, int oldValueId)
+      throws IOException {
+    payload.reset();
+    payload.writeVarLong(timestamp);
+    payload.writeVarLong(zigZag(receiver));
+    writeNullableInt(newValueId);
+    writeNullableInt(oldValueId);
+    writeRecord(EventLogFormat.TAG_SET_FIELD, payload);
+  }
+
+  private void writeValues(List<Value> values) throws IOException {
+    payload.writeVarLong(values.size());
+    for (Value value : values) {
+      writeValue(value);
+    }
+  }
+
+  private void writeValue(Value value) throws IOException {
+    if (value instanceof NullValue v) {
+      payload.write(EventLogFormat.VALUE_NULL);
+      payload.writeVarLong(internString(v.clazz()));
+    } else if (value instanceof BooleanValue v) {
+      payload.write(EventLogFormat.VALUE_BOOLEAN);
+      payload.write(v.value() ? 1 : 0);
+    } else if (value instanceof CharacterValue v) {
+      payload.write(EventLogFormat.VALUE_CHARACTER);
+      payload.writeVarLong(v.value());
+    } else if (value instanceof ByteValue v) {
+      payload.write(EventLogFormat.VALUE_BYTE);
+      payload.write(v.value());
+    } else if (value instanceof ShortValue v) {
+      payload.write(EventLogFormat.VALUE_SHORT);
+      payload.writeVarLong(zigZag(v.value()));
+    } else if (value instanceof IntegerValue v) {
+      payload.write(EventLogFormat.VALUE_INTEGER);
+      payload.writeVarLong(zigZag(v.value()));
+    } else if (value instanceof LongValue v) {
+      payload.write(EventLogFormat.VALUE_LONG);
+      payload.writeVarLong(zigZag(v.value()));
+    } else if (value instanceof FloatValue v) {
+      payload.write(EventLogFormat.VALUE_FLOAT);
+      payload.writeInt(Float.floatToRawIntBits(v.value()));
+    } else if (value instanceof DoubleValue v) {
+      payload.write(EventLogFormat.VALUE_DOUBLE);
+      payload.writeLong(Double.doubleToRawLongBits(v.value()));
+    } else if (value instanceof StringValue v) {
+      payload.write(EventLogFormat.VALUE_STRING);
+      payload.writeString(v.value());
+    } else if (value instanceof FailedValue v) {
+      payload.write(EventLogFormat.VALUE_FAILED);
+      payload.writeVarLong(internString(v.clazz()));
+    } else if (value instanceof SerializedValue v) {
+      payload.write(EventLogFormat.VALUE_SERIALIZED);
+      payload.writeVarLong(internString(v.clazz()));
+      writeNullableInt(v.id());
+      JavaSnippet snippet = v.snippet();
+      payload.writeVarLong(snippet.statements().size());
+      for (String statement : snippet.statements()) {
+        payload.writeString(statement);
+      }
+      payload.writeVarLong(internString(snippet.dynamicType()));
+      payload.writeVarLong(internString(snippet.staticType()));
+      payload.writeVarLong(snippet.containedObjects());
+    } else if (value instanceof ReferenceValue v) {
+      payload.write(EventLogFormat.VALUE_REFERENCE);
+      payload.writeVarLong(internString(v.clazz()));
+      payload.writeVarLong(zigZag(v.referenceId()));
+    } else {
+      throw new IllegalArgumentException("Unknown value type " + value.getClass());
+    }
+  }
+
+  private void writeNullableInt(Integer value) {
+    payload.writeVarLong(value == null ? 0 : zigZag(value) + 1);
+  }
+
+  private void writeNullableInt(int value) {
+    payload.writeVarLong(value == NO_ID ? 0 : zigZag(value) + 1);
+  }
+
+  private int internString(String value) throws IOException {
+    Integer id = strings.get(value);
+    if (id != null) {
+      return id;
+    }
+    id = strings.size();
+    strings.put(value, id);
+
+    Buffer buffer = new Buffer();
+    buffer.writeRaw(value.getBytes(StandardCharsets.UTF_8));
+    writeRecord(EventLogFormat.TAG_STRING, buffer);
+
+    return id;
+  }
+
+  private int internMethod(RecordedMethod method) throws IOException {
+    Integer id = methods.get(method);
+    if (id != null) {
+      return id;
+    }
+
+    // Intern all names first, so their definitions precede the method record
+    int declaringClass = internString(method.declaringClassName());
+    int name = internString(method.methodName());
+    int[] parameterTypes = new int[method.parameterTypes().size()];
+    for (int i = 0; i < parameterTypes.length; i++) {
+      parameterTypes[i] = internString(method.parameterTypes().get(i));
+    }
+
+    definition.reset();
+    definition.writeVarLong(declaringClass);
+    definition.writeVarLong(name);
+    definition.writeVarLong(parameterTypes.length);
+    for (int parameterType : parameterTypes) {
+      definition.writeVarLong(parameterType);
+    }
+    writeRecord(EventLogFormat.TAG_METHOD, definition);
+
+    id = methods.size();
+    methods.put(method, id);
+    return id;
+  }
+
+  private void writeRecord(byte tag, Buffer buffer) throws IOException {
+    out.write(tag);
+    long length = buffer.size;
+    while ((length & ~0x7FL) != 0) {
+      out.write((int) ((length & 0x7F) | 0x80));
+      length >>>= 7;
+    }
+    out.write((int) length);
+    out.write(buffer.bytes, 0, buffer.size);
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  private static class Buffer {
+
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    void reset() {
+      size = 0;
+    }
+
+    void write(int b) {
+      ensureCapacity(1);
+      bytes[size++] = (byte) b;
+    }
+
+    void writeRaw(byte[] data) {
+      ensureCapacity(data.length);
+      System.arraycopy(data, 0, bytes, size, data.length);
+      size += data.length;
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        bytes[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        bytes[size++] = (byte) (value >>> shift);
+      }
+    }
+
+    void writeString(String value) {
+      byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(encoded.length);
+      writeRaw(encoded);
+    }
+
+    private void ensureCapacity(int additional) {
+      if (size + additional > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+      }
+    }
+  }
+
+}
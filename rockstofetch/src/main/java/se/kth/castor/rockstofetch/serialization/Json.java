@@ -3,16 +3,34 @@ package se.kth.castor.rockstofetch.serialization;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class Json {
 
   private final ObjectMapper objectMapper = new ObjectMapper();
 
+  public Json() {
+  }
+
+  /**
+   * Creates a json instance that writes and reads snippets through a {@link SnippetStore}.
+   *
+   * @param snippets the store to use
+   */
+  public Json(SnippetStore snippets) {
+    objectMapper.registerModule(snippets.jacksonModule());
+  }
+
   public <T> T fromJson(String input, Class<T> clazz) throws IOException {
     return objectMapper.readValue(input, clazz);
   }
 
+  public <T> T fromJson(ByteBuffer input, Class<T> clazz) throws IOException {
+    return objectMapper.readValue(new ByteBufferBackedInputStream(input.duplicate()), clazz);
+  }
+
   public String toJson(Object value) throws IOException {
     return objectMapper.writeValueAsString(value);
   }
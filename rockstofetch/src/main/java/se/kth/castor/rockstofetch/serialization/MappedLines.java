@@ -0,0 +1,168 @@
+package se.kth.castor.rockstofetch.serialization;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits a line based file into views of a memory mapping, so lines can be parsed without copying
+ * them into strings first.
+ * <p>
+ * Lines are found lazily while the stream is consumed. Parallel streams split the mapping at line
+ * boundaries, so every thread scans only its own part of the file for line breaks.
+ */
+public final class MappedLines {
+
+  /**
+   * The maximum size of a single mapping. Lines never span two mappings.
+   */
+  private static final long WINDOW_SIZE = 1L << 30;
+  /**
+   * Ranges smaller than this are not split any further, as parsing them is quicker than handing
+   * them to another thread.
+   */
+  private static final int MIN_SPLIT_SIZE = 1 << 16;
+
+  private MappedLines() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  /**
+   * Maps the file and returns a stream with a view for every non-empty line. The views stay valid
+   * after the stream is consumed, the mapping is released once they are unreachable.
+   *
+   * @param file the file to read
+   * @return a lazy stream of all non-empty lines, in file order
+   * @throws IOException if the file can not be mapped or contains a line longer than 1 GiB
+   */
+  public static Stream<ByteBuffer> lines(Path file) throws IOException {
+    Stream<ByteBuffer> lines = Stream.empty();
+    for (ByteBuffer window : windows(file)) {
+      lines = Stream.concat(
+          lines, StreamSupport.stream(new LineSpliterator(window, 0, window.limit()), false)
+      );
+    }
+    return lines;
+  }
+
+  /**
+   * Maps the file in windows of at most {@link #WINDOW_SIZE} bytes that end at a line break, only
+   * the last window may end in the middle of a line.
+   */
+  private static List<ByteBuffer> windows(Path file) throws IOException {
+    List<ByteBuffer> windows = new ArrayList<>();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      long windowStart = 0;
+
+      while (windowStart < fileSize) {
+        long windowSize = Math.min(WINDOW_SIZE, fileSize - windowStart);
+        MappedByteBuffer window = channel.map(MapMode.READ_ONLY, windowStart, windowSize);
+        int windowEnd = window.limit();
+
+        if (windowStart + windowSize < fileSize) {
+          // Remap the partial last line as part of the next window
+          windowEnd = lastLineBreak(window) + 1;
+          if (windowEnd == 0) {
+            throw new IOException("Line at " + windowStart + " is longer than " + WINDOW_SIZE);
+          }
+        }
+        windows.add(window.slice(0, windowEnd));
+        windowStart += windowEnd;
+      }
+    }
+
+    return windows;
+  }
+
+  private static int lastLineBreak(ByteBuffer window) {
+    for (int i = window.limit() - 1; i >= 0; i--) {
+      if (window.get(i) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The lines in a range of a window. The range always starts at the beginning of a line.
+   */
+  private static final class LineSpliterator implements Spliterator<ByteBuffer> {
+
+    private final ByteBuffer window;
+    private final int end;
+    private int position;
+
+    private LineSpliterator(ByteBuffer window, int position, int end) {
+      this.window = window;
+      this.position = position;
+      this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+      while (position < end) {
+        int lineStart = position;
+        int lineEnd = lineBreak(lineStart);
+        position = lineEnd + 1;
+        if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r') {
+          lineEnd--;
+        }
+        if (lineEnd > lineStart) {
+          action.accept(window.slice(lineStart, lineEnd - lineStart));
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public Spliterator<ByteBuffer> trySplit() {
+      if (end - position < MIN_SPLIT_SIZE) {
+        return null;
+      }
+      int middle = lineBreak(position + (end - position) / 2);
+      if (middle >= end - 1) {
+        return null;
+      }
+      LineSpliterator prefix = new LineSpliterator(window, position, middle + 1);
+      position = middle + 1;
+      return prefix;
+    }
+
+    /**
+     * {@return the index of the next line break at or after the index, or the end of the range}
+     */
+    private int lineBreak(int from) {
+      for (int i = from; i < end; i++) {
+        if (window.get(i) == '\n') {
+          return i;
+        }
+      }
+      return end;
+    }
+
+    @Override
+    public long estimateSize() {
+      // Bytes, not lines, as the number of lines is unknown until they are found
+      return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL | IMMUTABLE;
+    }
+  }
+
+}
@@ -1,8 +1,8 @@
 package se.kth.castor.rockstofetch.serialization;
 
 import se.kth.castor.rockstofetch.instrument.MutationTracingContextHolder;
+import se.kth.castor.rockstofetch.instrument.SnapshotContext;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import se.kth.castor.pankti.codemonkey.construction.actions.ActionObjectReference;
@@ -19,7 +19,7 @@ public class MutationUseObjectReference implements MutationStrategy {
     this.mutationTraceTypes = Collections.newSetFromMap(new ConcurrentHashMap<>());
     this.mutationTraceTypes.addAll(mutationTraceTypes);
 
-    this.nonMutationTraceTypes = new HashSet<>();
+    this.nonMutationTraceTypes = Collections.newSetFromMap(new ConcurrentHashMap<>());
   }
 
   @Override
@@ -51,8 +51,12 @@ public class MutationUseObjectReference implements MutationStrategy {
   }
 
   private static Result resultFromLookup(SolvingState state, Object instance) {
-    long timestamp = MutationTracingContextHolder.getCurrentTime();
-    Integer objectId = MutationTracingContextHolder.getObjectId(instance);
+    // Snapshots reference the original object at the time they were taken
+    SnapshotContext snapshot = SnapshotContext.current();
+    long timestamp = snapshot != null
+        ? snapshot.timestamp()
+        : MutationTracingContextHolder.getCurrentTime();
+    Integer objectId = MutationTracingContextHolder.getObjectId(SnapshotContext.original(instance));
     if (objectId == null) {
       return Result.failedDynamic();
     }
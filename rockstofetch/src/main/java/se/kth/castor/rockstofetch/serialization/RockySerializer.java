@@ -21,7 +21,10 @@ import se.kth.castor.pankti.codemonkey.construction.solving.MutationStrategy;
 import se.kth.castor.pankti.codemonkey.construction.solving.MutationUseEnumConstant;
 import se.kth.castor.pankti.codemonkey.construction.solving.MutationUseStandardCharset;
 import se.kth.castor.pankti.codemonkey.construction.solving.MutationUseStaticFieldInstance;
+import se.kth.castor.pankti.codemonkey.construction.solving.PlanStore;
 import se.kth.castor.pankti.codemonkey.construction.solving.SolvingState;
+import se.kth.castor.pankti.codemonkey.serialization.InbuiltTypeHandlers;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
 import se.kth.castor.pankti.codemonkey.serialization.Serializer;
 import se.kth.castor.pankti.codemonkey.serialization.Serializer.Serialized;
 import se.kth.castor.pankti.codemonkey.serialization.UnknownActionHandler;
@@ -42,6 +45,7 @@ public class RockySerializer {
   private final SpoonAccessor spoonAccessor;
   private final Statistics statistics;
   private final ThreadLocal<Statistics> activeStatistics;
+  private final PlanStore planStore;
 
   public RockySerializer(
       SpoonAccessor spoonAccessor,
@@ -49,12 +53,13 @@ public class RockySerializer {
       Set<String> fixmeConstructTypes,
       Set<String> mutationTraceTypes,
       UnknownActionHandler unknownActionHandler,
+      PlanStore planStore,
       Statistics statistics
   ) {
     this(
         spoonAccessor, mockConstructTypes, fixmeConstructTypes, mutationTraceTypes,
-        unknownActionHandler, new AtomicInteger(),
-        statistics
+        unknownActionHandler, new AtomicInteger(), planStore,
+        SerializationBudget.unlimited(), statistics
     );
   }
 
@@ -65,10 +70,13 @@ public class RockySerializer {
       Set<String> mutationTraceTypes,
       UnknownActionHandler unknownActionHandler,
       AtomicInteger uniqueVariableSuffix,
+      PlanStore planStore,
+      SerializationBudget budget,
       Statistics statistics
   ) {
     this.activeStatistics = new ThreadLocal<>();
     this.statistics = statistics;
+    this.planStore = planStore;
     this.mutations = new ArrayList<>(List.of(
         new MutationBindConstructorParameter(),
         new MutationCallDefaultConstructor(),
@@ -94,9 +102,12 @@ public class RockySerializer {
         ClassConstructionSolver.cached((ctClass, instance) -> new ClassConstructionSolver(
             mutations,
             SolvingState.constructType(ctClass),
-            activeStatistics::get
+            activeStatistics::get,
+            planStore
         )),
-        unknownActionHandler
+        unknownActionHandler,
+        InbuiltTypeHandlers.defaults(),
+        budget
     );
     this.uniqueVariableSuffix = uniqueVariableSuffix;
     this.spoonAccessor = spoonAccessor;
@@ -144,7 +155,9 @@ public class RockySerializer {
             "Arrays not supported in solve static serialization. Ask for the component type."
         );
       }
-      return new ClassConstructionSolver(this.mutations, SolvingState.constructType(type), null)
+      return new ClassConstructionSolver(
+          this.mutations, SolvingState.constructType(type), null, planStore
+      )
           .solveStatic()
           .state();
     } catch (TodoError e) {
@@ -0,0 +1,223 @@
+package se.kth.castor.rockstofetch.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Stores every distinct {@link JavaSnippet} only once.
+ * <p>
+ * Snippets are addressed by a hash of their content. The first time a snippet is written, its
+ * definition is appended to {@value #FILE_NAME} and the invocation only contains the hash. Every
+ * later occurrence of the same snippet is just the hash. Small snippets are always written inline,
+ * as the hash would not be much shorter. Readers accept both forms, so traces written without a
+ * store can still be read.
+ * <p>
+ * The definitions file has one {@link StoredSnippet} per line.
+ */
+public class SnippetStore {
+
+  public static final String FILE_NAME = "snippets.json";
+  private static final int MIN_REFERENCED_LENGTH = 128;
+  // Marks a definition that is being written, compared by identity
+  private static final JavaSnippet PENDING = new JavaSnippet(
+      List.of(), Object.class, Object.class, 0
+  );
+
+  private final Json json;
+  private final Map<String, JavaSnippet> snippets;
+  private final Predicate<String> definitionSink;
+
+  private SnippetStore(Map<String, JavaSnippet> snippets, Predicate<String> definitionSink) {
+    this.json = new Json();
+    this.snippets = snippets;
+    this.definitionSink = definitionSink;
+  }
+
+  /**
+   * Creates a store for recording.
+   *
+   * @param definitionSink appends a line to the definitions file, returns false if it was dropped
+   * @return the new store
+   */
+  public static SnippetStore writingTo(Predicate<String> definitionSink) {
+    return new SnippetStore(new ConcurrentHashMap<>(), definitionSink);
+  }
+
+  /**
+   * Loads all snippet definitions for reading. The file does not need to exist.
+   *
+   * @param file the definitions file
+   * @return the loaded store
+   * @throws IOException if the file could not be read
+   */
+  public static SnippetStore load(Path file) throws IOException {
+    Map<String, JavaSnippet> snippets = new ConcurrentHashMap<>();
+    if (Files.exists(file)) {
+      Json json = new Json();
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (line.isBlank()) {
+          continue;
+        }
+        StoredSnippet stored = json.fromJson(line, StoredSnippet.class);
+        snippets.put(stored.hash(), stored.snippet());
+      }
+    }
+    return new SnippetStore(snippets, null);
+  }
+
+  /**
+   * {@return the number of distinct snippets}
+   */
+  public int size() {
+    return (int) snippets.values().stream().filter(it -> it != PENDING).count();
+  }
+
+  /**
+   * {@return a Jackson module writing and reading snippets through this store}
+   */
+  SimpleModule jacksonModule() {
+    SimpleModule module = new SimpleModule("SnippetStore");
+    module.addSerializer(JavaSnippet.class, new SnippetSerializer());
+    module.addDeserializer(JavaSnippet.class, new SnippetDeserializer());
+    return module;
+  }
+
+  /**
+   * Makes sure the definition of a snippet is written.
+   *
+   * @param snippet the snippet to reference
+   * @return the hash to reference the snippet by or null if it needs to be written inline
+   */
+  private String reference(JavaSnippet snippet) {
+    if (definitionSink == null || length(snippet) < MIN_REFERENCED_LENGTH) {
+      return null;
+    }
+    String hash = hash(snippet);
+    JavaSnippet known = snippets.putIfAbsent(hash, PENDING);
+    if (known == PENDING) {
+      // The definition might still be dropped, so the hash must not be used yet
+      return null;
+    }
+    if (known != null) {
+      return hash;
+    }
+    boolean written = false;
+    try {
+      written = definitionSink.test(json.toJson(new StoredSnippet(hash, snippet)));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (written) {
+        // Only published once written, so every referenced hash has a definition
+        snippets.put(hash, snippet);
+      } else {
+        // Try again next time, this occurrence is written inline
+        snippets.remove(hash, PENDING);
+      }
+    }
+    return written ? hash : null;
+  }
+
+  private JavaSnippet resolve(String hash) {
+    JavaSnippet snippet = snippets.get(hash);
+    if (snippet == null) {
+      // The definition was dropped while recording. This fails just the affected test.
+      System.err.println("Unknown snippet " + hash);
+      return new JavaSnippet(List.of(), Object.class, Object.class, 0);
+    }
+    return snippet;
+  }
+
+  private static int length(JavaSnippet snippet) {
+    int length = 0;
+    for (String statement : snippet.statements()) {
+      length += statement.length();
+    }
+    return length;
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static String hash(JavaSnippet snippet) {
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(snippet.dynamicType(), StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(snippet.staticType(), StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putInt(snippet.containedObjects());
+    for (String statement : snippet.statements()) {
+      hasher.putString(statement, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  private class SnippetSerializer extends JsonSerializer<JavaSnippet> {
+
+    @Override
+    public void serialize(JavaSnippet value, JsonGenerator gen, SerializerProvider serializers)
+        throws IOException {
+      String hash = reference(value);
+      if (hash != null) {
+        gen.writeString(hash);
+        return;
+      }
+      gen.writeStartObject();
+      gen.writeArrayFieldStart("statements");
+      for (String statement : value.statements()) {
+        gen.writeString(statement);
+      }
+      gen.writeEndArray();
+      gen.writeStringField("dynamicType", value.dynamicType());
+      gen.writeStringField("staticType", value.staticType());
+      gen.writeNumberField("containedObjects", value.containedObjects());
+      gen.writeEndObject();
+    }
+  }
+
+  private class SnippetDeserializer extends JsonDeserializer<JavaSnippet> {
+
+    @Override
+    public JavaSnippet deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      JsonNode node = p.getCodec().readTree(p);
+      if (node.isTextual()) {
+        return resolve(node.asText());
+      }
+      List<String> statements = new ArrayList<>();
+      node.get("statements").forEach(it -> statements.add(it.asText()));
+      return new JavaSnippet(
+          statements,
+          node.get("dynamicType").asText(),
+          node.get("staticType").asText(),
+          node.get("containedObjects").asInt()
+      );
+    }
+  }
+
+  /**
+   * A line in the definitions file.
+   *
+   * @param hash the hash of the snippet
+   * @param snippet the snippet
+   */
+  public record StoredSnippet(String hash, JavaSnippet snippet) {
+
+  }
+
+}
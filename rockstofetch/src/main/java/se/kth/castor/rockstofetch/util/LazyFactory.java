@@ -0,0 +1,103 @@
+package se.kth.castor.rockstofetch.util;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import spoon.compiler.SpoonModelBuilder;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.FactoryImpl;
+import spoon.reflect.factory.TypeFactory;
+import spoon.support.DefaultCoreFactory;
+import spoon.support.StandardEnvironment;
+import spoon.support.compiler.jdt.JDTBasedSpoonCompiler;
+
+/**
+ * A factory whose model starts out empty. The compilation unit of a project type is parsed the
+ * first time the type is looked up through {@link #Type()}, which is also how references resolve
+ * their declaration. Types outside the project are shadow types built through reflection, just
+ * like in a complete model.
+ * <p>
+ * As the model only contains what was looked up so far, it must not be traversed as a whole.
+ */
+final class LazyFactory extends FactoryImpl {
+
+  private final SourceIndex index;
+  private final LazyTypeFactory types;
+  // Names that were looked up and whose source, if any, is part of the model
+  private final Set<String> lookedUp;
+  private final Set<Path> parsed;
+  private boolean parsing;
+
+  LazyFactory(SourceIndex index) {
+    super(new DefaultCoreFactory(), new StandardEnvironment());
+    this.index = index;
+    this.types = new LazyTypeFactory(this);
+    this.lookedUp = new HashSet<>();
+    this.parsed = new HashSet<>();
+
+    getEnvironment().setComplianceLevel(17);
+    getEnvironment().setNoClasspath(true);
+    getEnvironment().setAutoImports(false);
+    getEnvironment().setSourceClasspath(index.getClasspath().toArray(String[]::new));
+  }
+
+  @Override
+  public TypeFactory Type() {
+    // Called by the super constructor, before our fields are initialized
+    return types != null ? types : super.Type();
+  }
+
+  // Must hold the lock of this factory
+  private void ensureLoaded(String qualifiedName) {
+    // The compiler looks up referenced types while parsing, they are loaded once requested
+    if (parsing || !lookedUp.add(qualifiedName)) {
+      return;
+    }
+    Optional<Path> source = index.findSource(qualifiedName);
+    if (source.isPresent() && parsed.add(source.get())) {
+      parse(source.get());
+    }
+  }
+
+  private void parse(Path source) {
+    parsing = true;
+    try {
+      SpoonModelBuilder compiler = new JDTBasedSpoonCompiler(this);
+      compiler.addInputSource(source.toFile());
+      compiler.build();
+    } catch (RuntimeException e) {
+      System.err.println("Could not parse " + source + ": " + e);
+    } finally {
+      parsing = false;
+    }
+  }
+
+  private static class LazyTypeFactory extends TypeFactory {
+
+    private final LazyFactory lazyFactory;
+
+    LazyTypeFactory(LazyFactory factory) {
+      super(factory);
+      this.lazyFactory = factory;
+    }
+
+    @Override
+    public <T> CtType<T> get(String qualifiedName) {
+      // Same lock as the shared types, as parsing modifies the model
+      synchronized (lazyFactory) {
+        lazyFactory.ensureLoaded(qualifiedName);
+        return super.get(qualifiedName);
+      }
+    }
+
+    @Override
+    public <T> CtType<T> get(Class<?> cl) {
+      synchronized (lazyFactory) {
+        lazyFactory.ensureLoaded(cl.getName());
+        return super.get(cl);
+      }
+    }
+  }
+
+}
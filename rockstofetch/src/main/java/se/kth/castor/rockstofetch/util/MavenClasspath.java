@@ -0,0 +1,151 @@
+package se.kth.castor.rockstofetch.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import spoon.MavenLauncher;
+import spoon.MavenLauncher.SOURCE_TYPE;
+
+/**
+ * Resolves the classpath of a Maven project, including test dependencies, and caches it.
+ * <p>
+ * Resolving asks Maven for the dependencies of every module, which is slow. Resolved classpaths
+ * are therefore kept in memory and in a cache directory below the user's home, so that all phases
+ * and all runs share them. The cache is keyed by the location of the project and the content of
+ * all its {@code pom.xml} files. A cached classpath is also resolved again if one of its entries
+ * no longer exists, e.g. after the local repository was cleaned.
+ */
+public final class MavenClasspath {
+
+  private static final Path CACHE_DIRECTORY = Path.of(
+      System.getProperty("user.home"), ".cache", "rockstofetch", "classpaths"
+  );
+  private static final Map<String, List<String>> RESOLVED = new ConcurrentHashMap<>();
+
+  private MavenClasspath() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  /**
+   * Resolves the classpath of a project.
+   *
+   * @param projectPath the root of the Maven project
+   * @return the classpath entries
+   */
+  public static String[] resolve(Path projectPath) {
+    Path project = projectPath.toAbsolutePath().normalize();
+    String key;
+    try {
+      key = pomHash(project);
+    } catch (IOException e) {
+      System.err.println("Could not hash poms of " + project + ": " + e);
+      return resolveWithMaven(project).toArray(String[]::new);
+    }
+    return RESOLVED.computeIfAbsent(key, ignored -> resolveCached(project, key))
+        .toArray(String[]::new);
+  }
+
+  private static List<String> resolveCached(Path project, String key) {
+    Path cacheFile = CACHE_DIRECTORY.resolve(key + ".txt");
+    Optional<List<String>> cached = load(cacheFile);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    List<String> classpath = resolveWithMaven(project);
+    save(cacheFile, classpath);
+    return classpath;
+  }
+
+  private static List<String> resolveWithMaven(Path project) {
+    String[] classpath = new MavenLauncher(
+        project.toString(), SOURCE_TYPE.ALL_SOURCE, Pattern.compile(".+")
+    )
+        .getEnvironment()
+        .getSourceClasspath();
+    return classpath == null ? List.of() : List.of(classpath);
+  }
+
+  private static Optional<List<String>> load(Path cacheFile) {
+    if (!Files.isRegularFile(cacheFile)) {
+      return Optional.empty();
+    }
+    try {
+      List<String> classpath = Files.readAllLines(cacheFile);
+      if (!classpath.stream().map(Path::of).allMatch(Files::exists)) {
+        return Optional.empty();
+      }
+      return Optional.of(List.copyOf(classpath));
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not load cached classpath " + cacheFile + ": " + e);
+      return Optional.empty();
+    }
+  }
+
+  private static void save(Path cacheFile, List<String> classpath) {
+    try {
+      Files.createDirectories(CACHE_DIRECTORY);
+      // Replace atomically, other phases might be resolving the same project right now
+      Path temp = Files.createTempFile(CACHE_DIRECTORY, cacheFile.getFileName().toString(), ".tmp");
+      try {
+        Files.write(temp, classpath);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(temp);
+        throw e;
+      }
+      Files.move(
+          temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+      );
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not cache classpath " + cacheFile + ": " + e);
+    }
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static String pomHash(Path project) throws IOException {
+    List<Path> poms = new ArrayList<>();
+    Files.walkFileTree(project, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        String name = dir.getFileName().toString();
+        if (!dir.equals(project) && (name.equals("target") || name.startsWith("."))) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (file.getFileName().toString().equals("pom.xml")) {
+          poms.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    poms.sort(null);
+
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(project.toString(), StandardCharsets.UTF_8)
+        .putByte((byte) 0);
+    for (Path pom : poms) {
+      hasher.putString(project.relativize(pom).toString(), StandardCharsets.UTF_8)
+          .putByte((byte) 0)
+          .putBytes(Files.readAllBytes(pom))
+          .putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+}
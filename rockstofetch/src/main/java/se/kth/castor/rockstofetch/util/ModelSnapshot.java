@@ -0,0 +1,144 @@
+package se.kth.castor.rockstofetch.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import spoon.reflect.factory.Factory;
+import spoon.support.SerializationModelStreamer;
+
+/**
+ * A snapshot of the Spoon model of a project, so that the agent and the generator do not need to
+ * build the model again after {@code Prepare} did.
+ * <p>
+ * The snapshot is the factory as serialized by Spoon, prefixed with a hash of the sources it was
+ * built from. These are all Java files below a {@code src/main} directory and all {@code pom.xml}
+ * files outside of {@code target} directories, plus the Java files below
+ * {@code target/generated-sources}, which Spoon's {@code MavenLauncher} adds to the application
+ * sources. A snapshot whose hash does not match the current sources is ignored.
+ */
+public final class ModelSnapshot {
+
+  public static final String FILE_NAME = "spoon-model.bin";
+
+  private ModelSnapshot() {
+    throw new UnsupportedOperationException("No instantiation");
+  }
+
+  /**
+   * Loads a snapshot, if it exists and matches the sources of the project.
+   *
+   * @param file the snapshot file
+   * @param projectPath the project the model was built from
+   * @return the factory of the model or an empty optional if there is no usable snapshot
+   */
+  public static Optional<Factory> load(Path file, Path projectPath) {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      String hash = new DataInputStream(in).readUTF();
+      if (!hash.equals(sourceHash(projectPath))) {
+        return Optional.empty();
+      }
+      return Optional.of(new SerializationModelStreamer().load(in));
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not load model snapshot " + file + ": " + e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Loads a snapshot without checking it against the sources, for when it was just {@link #load
+   * loaded} or saved by the same process. Hashing the sources again takes as long as reading them.
+   *
+   * @param file the snapshot file
+   * @return the factory of the model
+   * @throws IllegalStateException if the snapshot can not be loaded
+   */
+  public static Factory loadValidated(Path file) {
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+      // Skip the hash of the sources
+      new DataInputStream(in).readUTF();
+      return new SerializationModelStreamer().load(in);
+    } catch (IOException | RuntimeException e) {
+      throw new IllegalStateException("Could not load validated model snapshot " + file, e);
+    }
+  }
+
+  /**
+   * Saves a snapshot of a model. Failures are reported, but not fatal, as the model can always be
+   * built again.
+   *
+   * @param file the snapshot file
+   * @param projectPath the project the model was built from
+   * @param factory the factory of the model
+   */
+  public static void save(Path file, Path projectPath, Factory factory) {
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      // Replace atomically, other processes might be reading the snapshot right now
+      Path temp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF(sourceHash(projectPath));
+        data.flush();
+        new SerializationModelStreamer().save(factory, out);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(temp);
+        throw e;
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not save model snapshot " + file + ": " + e);
+    }
+  }
+
+  @SuppressWarnings("UnstableApiUsage")
+  private static String sourceHash(Path projectPath) throws IOException {
+    List<Path> sources;
+    try (Stream<Path> files = Files.walk(projectPath)) {
+      sources = files
+          .filter(Files::isRegularFile)
+          .filter(it -> isModelSource(projectPath.relativize(it)))
+          .sorted()
+          .toList();
+    }
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (Path source : sources) {
+      hasher.putString(projectPath.relativize(source).toString(), StandardCharsets.UTF_8)
+          .putByte((byte) 0)
+          .putBytes(Files.readAllBytes(source))
+          .putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static boolean isModelSource(Path relativeFile) {
+    String path = "/" + relativeFile.toString().replace('\\', '/');
+    if (path.contains("/target/generated-sources/")) {
+      return path.endsWith(".java");
+    }
+    if (path.contains("/target/")) {
+      return false;
+    }
+    if (relativeFile.getFileName().toString().equals("pom.xml")) {
+      return true;
+    }
+    return path.endsWith(".java") && path.contains("/src/main/");
+  }
+
+}
@@ -0,0 +1,153 @@
+package se.kth.castor.rockstofetch.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import spoon.reflect.cu.SourcePosition;
+import spoon.reflect.declaration.CtType;
+import spoon.reflect.factory.Factory;
+
+/**
+ * Maps the qualified names of the top-level types of a project to their source files, so that the
+ * agent can parse only the compilation units it actually needs. Written by {@code Prepare} from
+ * the complete model.
+ * <p>
+ * The index also stores the classpath to resolve the parsed sources against: the source classpath
+ * of the model and the compiled classes of all modules of the project.
+ */
+public final class SourceIndex {
+
+  public static final String FILE_NAME = "source-index.txt";
+
+  private static final String CLASSPATH_PREFIX = "classpath\t";
+  private static final String TYPE_PREFIX = "type\t";
+
+  private final Map<String, Path> sources;
+  private final List<String> classpath;
+
+  private SourceIndex(Map<String, Path> sources, List<String> classpath) {
+    this.sources = Map.copyOf(sources);
+    this.classpath = List.copyOf(classpath);
+  }
+
+  /**
+   * Writes the index of a complete model. Failures are reported, but not fatal, as the agent can
+   * always build the complete model instead.
+   *
+   * @param file the index file
+   * @param projectPath the project the model was built from
+   * @param factory the factory of the model
+   */
+  public static void write(Path file, Path projectPath, Factory factory) {
+    try {
+      List<String> lines = new ArrayList<>();
+      for (String entry : classpath(projectPath, factory)) {
+        lines.add(CLASSPATH_PREFIX + entry);
+      }
+      for (CtType<?> type : factory.getModel().getAllTypes()) {
+        SourcePosition position = type.getPosition();
+        if (position.isValidPosition() && position.getFile() != null) {
+          lines.add(
+              TYPE_PREFIX + type.getQualifiedName() + "\t" + position.getFile().getAbsolutePath()
+          );
+        }
+      }
+
+      Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      // Replace atomically, the agent might be starting up right now
+      Path temp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+      try {
+        Files.write(temp, lines);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(temp);
+        throw e;
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not write source index " + file + ": " + e);
+    }
+  }
+
+  /**
+   * Loads an index.
+   *
+   * @param file the index file
+   * @return the index or an empty optional if there is no readable index
+   */
+  public static Optional<SourceIndex> load(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    Map<String, Path> sources = new HashMap<>();
+    List<String> classpath = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(file)) {
+        if (line.startsWith(CLASSPATH_PREFIX)) {
+          classpath.add(line.substring(CLASSPATH_PREFIX.length()));
+        } else if (line.startsWith(TYPE_PREFIX)) {
+          String[] parts = line.substring(TYPE_PREFIX.length()).split("\t", 2);
+          sources.put(parts[0], Path.of(parts[1]));
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not load source index " + file + ": " + e);
+      return Optional.empty();
+    }
+    return Optional.of(new SourceIndex(sources, classpath));
+  }
+
+  /**
+   * Finds the source file declaring a type. Nested types are found through their top-level type,
+   * both in their binary ({@code Outer$Inner}) and their canonical ({@code Outer.Inner}) form.
+   *
+   * @param qualifiedName the qualified name of the type
+   * @return the source file, if the type belongs to the project
+   */
+  public Optional<Path> findSource(String qualifiedName) {
+    String candidate = qualifiedName;
+    while (true) {
+      Path source = sources.get(candidate);
+      if (source != null) {
+        return Optional.of(source);
+      }
+      int separator = Math.max(candidate.lastIndexOf('.'), candidate.lastIndexOf('$'));
+      if (separator < 0) {
+        return Optional.empty();
+      }
+      candidate = candidate.substring(0, separator);
+    }
+  }
+
+  public List<String> getClasspath() {
+    return classpath;
+  }
+
+  private static List<String> classpath(Path projectPath, Factory factory) throws IOException {
+    List<String> classpath = new ArrayList<>();
+    String[] sourceClasspath = factory.getEnvironment().getSourceClasspath();
+    if (sourceClasspath != null) {
+      classpath.addAll(Arrays.asList(sourceClasspath));
+    }
+    Path classesDirectory = Path.of("target", "classes");
+    try (Stream<Path> files = Files.walk(projectPath)) {
+      files
+          .filter(it -> it.endsWith(classesDirectory))
+          .filter(Files::isDirectory)
+          .filter(it -> Files.isRegularFile(it.getParent().getParent().resolve("pom.xml")))
+          .map(it -> it.toAbsolutePath().toString())
+          .sorted()
+          .forEach(classpath::add);
+    }
+    return classpath;
+  }
+
+}
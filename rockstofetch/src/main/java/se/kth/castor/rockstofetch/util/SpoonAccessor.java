@@ -7,6 +7,7 @@ import se.kth.castor.rockstofetch.instrument.RecordedMethod;
 import java.lang.reflect.Executable;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.regex.Pattern;
 import spoon.MavenLauncher;
@@ -27,22 +28,11 @@ public class SpoonAccessor {
   private final LoadingCache<Executable, CtExecutable<?>> executableCache;
 
   public SpoonAccessor(Path projectPath) {
-    String[] sourceClasspath = new MavenLauncher(
-        projectPath.toString(), SOURCE_TYPE.ALL_SOURCE, Pattern.compile(".+")
-    )
-        .getEnvironment()
-        .getSourceClasspath();
-    MavenLauncher launcher = new MavenLauncher(
-        projectPath.toString(), SOURCE_TYPE.APP_SOURCE, Pattern.compile(".+")
-    );
-    launcher.getEnvironment().setComplianceLevel(17);
-    launcher.getEnvironment().setNoClasspath(true);
-    launcher.getEnvironment().setAutoImports(false);
-    launcher.getEnvironment().setShouldCompile(true);
-    launcher.getEnvironment().setSourceClasspath(sourceClasspath);
-    launcher.buildModel();
+    this(buildModel(projectPath));
+  }
 
-    this.factory = launcher.getFactory();
+  private SpoonAccessor(Factory factory) {
+    this.factory = factory;
     Factory shadowFactory = new FactoryImpl(new DefaultCoreFactory(), factory.getEnvironment());
     this.executableCache = CacheBuilder.newBuilder()
         .build(new CacheLoader<>() {
@@ -53,6 +43,69 @@ public class SpoonAccessor {
         });
   }
 
+  /**
+   * Creates an accessor from a {@link ModelSnapshot}. If the snapshot is missing or outdated, the
+   * model is built and the snapshot is written for the next phase.
+   *
+   * @param projectPath the project to build the model of
+   * @param snapshot the snapshot file
+   * @return the accessor
+   */
+  public static SpoonAccessor fromSnapshot(Path projectPath, Path snapshot) {
+    Optional<Factory> loaded = ModelSnapshot.load(snapshot, projectPath);
+    if (loaded.isPresent()) {
+      return new SpoonAccessor(loaded.get());
+    }
+    Factory factory = buildModel(projectPath);
+    ModelSnapshot.save(snapshot, projectPath, factory);
+    return new SpoonAccessor(factory);
+  }
+
+  /**
+   * Creates an accessor from a snapshot that {@link #fromSnapshot(Path, Path)} already checked or
+   * wrote, e.g. for further threads working on the same model.
+   *
+   * @param snapshot the snapshot file
+   * @return the accessor
+   * @throws IllegalStateException if the snapshot can not be loaded
+   */
+  public static SpoonAccessor fromValidatedSnapshot(Path snapshot) {
+    return new SpoonAccessor(ModelSnapshot.loadValidated(snapshot));
+  }
+
+  /**
+   * Creates an accessor whose model only contains the project types that are looked up, parsing
+   * their sources on demand. If there is no usable {@link SourceIndex}, this falls back to
+   * {@link #fromSnapshot(Path, Path)}.
+   *
+   * @param projectPath the project to build the model of
+   * @param sourceIndex the source index file
+   * @param snapshot the snapshot file
+   * @return the accessor
+   */
+  public static SpoonAccessor lazy(Path projectPath, Path sourceIndex, Path snapshot) {
+    Optional<SourceIndex> index = SourceIndex.load(sourceIndex);
+    if (index.isEmpty()) {
+      return fromSnapshot(projectPath, snapshot);
+    }
+    return new SpoonAccessor(new LazyFactory(index.get()));
+  }
+
+  private static Factory buildModel(Path projectPath) {
+    String[] sourceClasspath = MavenClasspath.resolve(projectPath);
+    MavenLauncher launcher = new MavenLauncher(
+        projectPath.toString(), SOURCE_TYPE.APP_SOURCE, sourceClasspath, Pattern.compile(".+")
+    );
+    launcher.getEnvironment().setComplianceLevel(17);
+    launcher.getEnvironment().setNoClasspath(true);
+    launcher.getEnvironment().setAutoImports(false);
+    launcher.getEnvironment().setShouldCompile(true);
+    launcher.getEnvironment().setSourceClasspath(sourceClasspath);
+    launcher.buildModel();
+
+    return launcher.getFactory();
+  }
+
   public Factory getFactory() {
     return factory;
   }
@@ -0,0 +1,181 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.MapMaker;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Compares the {@link ObjectIdRegistry} with the weak-keys Guava map it replaced, in retained heap
+ * per entry and in throughput of the construct-then-look-up pattern of the mutation tracing. Not
+ * part of the unit test suite, run it with {@code mvn test -Pbenchmark}.
+ * <p>
+ * The heap is measured from the used memory after requesting garbage collections, so the numbers
+ * depend on the collector and are only meaningful relative to each other.
+ */
+class ObjectIdRegistryBenchmark {
+
+  private static final int LIVE_OBJECTS = 1_000_000;
+  private static final int LOOKUPS_PER_STEP = 4;
+  private static final long WARMUP_MILLIS = 500;
+  private static final long MEASURE_MILLIS = 1_000;
+
+  @Test
+  void retainedBytesPerEntry() {
+    double map = retainedBytesPerEntry(GuavaIds::new);
+    double registry = retainedBytesPerEntry(RegistryIds::new);
+    System.out.printf(
+        "Retained heap per entry: %.1f B (map) vs %.1f B (registry)%n", map, registry
+    );
+    assertThat(registry).isPositive();
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 8})
+  void constructionStepsPerSecond(int threadCount) throws Exception {
+    double map = stepsPerSecond(new GuavaIds(), threadCount);
+    double registry = stepsPerSecond(new RegistryIds(), threadCount);
+    System.out.printf("%d threads: %,.0f steps/s (map) vs %,.0f steps/s (registry)%n",
+        threadCount, map, registry);
+    assertThat(registry).isPositive();
+  }
+
+  private static double retainedBytesPerEntry(Supplier<Ids> newIds) {
+    Object[] objects = new Object[LIVE_OBJECTS];
+    for (int i = 0; i < objects.length; i++) {
+      objects[i] = new Object();
+    }
+    Ids ids = newIds.get();
+    long before = usedHeap();
+    for (Object object : objects) {
+      ids.register(object);
+    }
+    long after = usedHeap();
+    Reference.reachabilityFence(objects);
+    Reference.reachabilityFence(ids);
+    return (after - before) / (double) LIVE_OBJECTS;
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static double stepsPerSecond(Ids ids, int threadCount) throws Exception {
+    AtomicBoolean measuring = new AtomicBoolean();
+    AtomicBoolean stop = new AtomicBoolean();
+    LongAdder measured = new LongAdder();
+    CyclicBarrier start = new CyclicBarrier(threadCount + 1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread(() -> {
+        await(start);
+        long count = 0;
+        boolean counting = false;
+        while (!stop.getOpaque()) {
+          step(ids);
+          if (counting) {
+            count++;
+          } else if (measuring.getOpaque()) {
+            counting = true;
+          }
+        }
+        measured.add(count);
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.await();
+    Thread.sleep(WARMUP_MILLIS);
+    measuring.set(true);
+    long begin = System.nanoTime();
+    Thread.sleep(MEASURE_MILLIS);
+    stop.set(true);
+    long nanos = System.nanoTime() - begin;
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return measured.sum() / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private static void step(Ids ids) {
+    Object constructed = new Object();
+    int id = ids.register(constructed);
+    for (int i = 0; i < LOOKUPS_PER_STEP; i++) {
+      if (ids.lookup(constructed) != id) {
+        throw new IllegalStateException("Lost id of " + constructed);
+      }
+    }
+  }
+
+  private static void await(CyclicBarrier barrier) {
+    try {
+      barrier.await();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private interface Ids {
+
+    int register(Object constructed);
+
+    int lookup(Object object);
+  }
+
+  /**
+   * The map as it was used before: a check for an existing id, then a put of a boxed counter value.
+   */
+  private static final class GuavaIds implements Ids {
+
+    // Weak-keys cause identity key comparisons
+    private final ConcurrentMap<Object, Integer> ids = new MapMaker().weakKeys().makeMap();
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public int register(Object constructed) {
+      if (!ids.containsKey(constructed)) {
+        ids.put(constructed, counter.getAndIncrement());
+      }
+      return ids.get(constructed);
+    }
+
+    @Override
+    public int lookup(Object object) {
+      Integer id = ids.get(object);
+      return id == null ? ObjectIdRegistry.NO_ID : id;
+    }
+  }
+
+  private static final class RegistryIds implements Ids {
+
+    private final ObjectIdRegistry ids = new ObjectIdRegistry();
+
+    @Override
+    public int register(Object constructed) {
+      return ids.getOrAssignConstructed(constructed);
+    }
+
+    @Override
+    public int lookup(Object object) {
+      return ids.get(object);
+    }
+  }
+}
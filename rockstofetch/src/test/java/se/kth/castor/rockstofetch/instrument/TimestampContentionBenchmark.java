@@ -0,0 +1,76 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Measures how many timestamps per second the {@link LogicalClock} behind
+ * {@link MutationTracingContextHolder#getNextTimestamp()} hands out while many threads contend for
+ * it. Not part of the unit test suite, run it with {@code mvn test -Pbenchmark}.
+ */
+class TimestampContentionBenchmark {
+
+  private static final long WARMUP_MILLIS = 500;
+  private static final long MEASURE_MILLIS = 1_000;
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 2, 4, 8, 16, 32, 64})
+  void timestampsPerSecond(int threadCount) throws Exception {
+    LogicalClock clock = new LogicalClock();
+    AtomicBoolean measuring = new AtomicBoolean();
+    AtomicBoolean stop = new AtomicBoolean();
+    LongAdder measured = new LongAdder();
+    CyclicBarrier start = new CyclicBarrier(threadCount + 1);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = new Thread(() -> {
+        await(start);
+        long count = 0;
+        boolean counting = false;
+        while (!stop.getOpaque()) {
+          clock.next();
+          if (counting) {
+            count++;
+          } else if (measuring.getOpaque()) {
+            counting = true;
+          }
+        }
+        measured.add(count);
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.await();
+    Thread.sleep(WARMUP_MILLIS);
+    measuring.set(true);
+    long begin = System.nanoTime();
+    Thread.sleep(MEASURE_MILLIS);
+    stop.set(true);
+    long nanos = System.nanoTime() - begin;
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    double perSecond = measured.sum() / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    System.out.printf("%2d threads: %,.0f timestamps/s%n", threadCount, perSecond);
+    assertThat(measured.sum()).isPositive().isLessThanOrEqualTo(clock.current());
+  }
+
+  private static void await(CyclicBarrier barrier) {
+    try {
+      barrier.await();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package se.kth.castor.rockstofetch.instrument;
+
+import static net.bytebuddy.matcher.ElementMatchers.any;
+import static net.bytebuddy.matcher.ElementMatchers.isConstructor;
+import static net.bytebuddy.matcher.ElementMatchers.isStatic;
+import static net.bytebuddy.matcher.ElementMatchers.not;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import se.kth.castor.rockstofetch.instrument.EventBuffers.FullPolicy;
+import se.kth.castor.rockstofetch.instrument.EventBuffers.Settings;
+import se.kth.castor.rockstofetch.instrument.aspects.SetFieldTraceFactory;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.asm.MemberSubstitution;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.jar.asm.ClassWriter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.kth.castor.pankti.codemonkey.construction.solving.PlanStore;
+import se.kth.castor.pankti.codemonkey.serialization.SerializationBudget;
+
+/**
+ * Measures the bytes allocated per traced field write. Not part of the unit test suite, run it
+ * with {@code mvn test -Pbenchmark}. This is a plain loop measuring thread allocations, not a JMH
+ * benchmark, so it only bounds allocations and says nothing about the time per write.
+ * <p>
+ * The writes go through the real instrumentation: {@link Target} is rewritten with the field write
+ * substitution of the agent, so every write calls the advice entry point with its agent code guard,
+ * which registers the write and publishes it to the event ring of the thread. Setting up the agent
+ * state builds the Spoon model of an empty Maven project, which needs Maven on the path.
+ */
+class TracedWriteAllocationBenchmark {
+
+  private static final int WRITES = 1 << 16;
+  private static final int WARMUP_ROUNDS = 20;
+  private static final String POM = """
+      <project xmlns="http://maven.apache.org/POM/4.0.0">
+        <modelVersion>4.0.0</modelVersion>
+        <groupId>benchmark</groupId>
+        <artifactId>empty</artifactId>
+        <version>1.0</version>
+      </project>
+      """;
+
+  @TempDir
+  static Path directory;
+
+  private static Writes target;
+  private static Object[] values;
+
+  @BeforeAll
+  static void setUpAgent() throws IOException, ReflectiveOperationException {
+    Path projectPath = directory.resolve("project");
+    Files.createDirectories(projectPath.resolve("src/main/java"));
+    Files.writeString(projectPath.resolve("pom.xml"), POM);
+    Path dataPath = Files.createDirectories(directory.resolve("data"));
+
+    AgentMain.projectPath = projectPath;
+    AgentMain.dataPath = dataPath;
+    AgentMain.mockConstructTypes = Set.of();
+    AgentMain.fixmeConstructTypes = Set.of();
+    AgentMain.mutationTraceTypes = Set.of();
+    AgentMain.invocationWriterSettings = GroupCommitWriter.Settings.defaults();
+    // Large enough to never block or spill, even if the writer thread falls behind
+    AgentMain.eventBufferSettings = new Settings(WRITES, FullPolicy.BLOCK);
+    AgentMain.serializationBudget = SerializationBudget.defaults();
+    AgentMain.planStore = PlanStore.load(dataPath.resolve(PlanStore.FILE_NAME));
+
+    Class<?> instrumented = new ByteBuddy()
+        .redefine(Target.class)
+        .visit(
+            MemberSubstitution.relaxed()
+                .field(any())
+                .onWrite()
+                .replaceWithChain(SetFieldTraceFactory.getChain(any()))
+                .on(not(isConstructor()).and(not(isStatic())))
+                .writerFlags(ClassWriter.COMPUTE_FRAMES)
+        )
+        .make()
+        .load(Target.class.getClassLoader(), ClassLoadingStrategy.Default.CHILD_FIRST)
+        .getLoaded();
+    target = (Writes) instrumented.getDeclaredConstructor().newInstance();
+    MutationTracingContextHolder.registerObjectCreation(
+        MutationTracingContextHolder.getNextTimestamp(), target, List.of(), List.of()
+    );
+
+    values = new Object[64];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = new Object();
+    }
+  }
+
+  @Test
+  void bytesPerReferenceFieldWrite() {
+    assertAllocationFree("reference", i -> target.writeReference(values[i & (values.length - 1)]));
+  }
+
+  @Test
+  void bytesPerPrimitiveFieldWrite() {
+    // Outside of the Integer cache, so boxing would allocate
+    assertAllocationFree("primitive", i -> target.writePrimitive(i + 1024));
+  }
+
+  @Test
+  void bytesPerStaticPrimitiveFieldWrite() {
+    assertAllocationFree("static primitive", i -> target.writeStaticPrimitive(i + 1024));
+  }
+
+  private static void assertAllocationFree(String kind, IntConsumer write) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      writes(write);
+    }
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    writes(write);
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    double perWrite = (double) allocated / WRITES;
+    System.out.printf("Allocated %d bytes for %d traced %s writes (%.3f per write)%n",
+        allocated, WRITES, kind, perWrite);
+    assertThat(perWrite).isLessThan(1.0);
+  }
+
+  private static void writes(IntConsumer write) {
+    for (int i = 0; i < WRITES; i++) {
+      write.accept(i);
+    }
+  }
+
+  public interface Writes {
+
+    void writeReference(Object value);
+
+    void writePrimitive(int value);
+
+    void writeStaticPrimitive(int value);
+  }
+
+  public static class Target implements Writes {
+
+    private static int staticPrimitive;
+
+    private Object reference;
+    private int primitive;
+
+    @Override
+    public void writeReference(Object value) {
+      reference = value;
+    }
+
+    @Override
+    public void writePrimitive(int value) {
+      primitive = value;
+    }
+
+    @Override
+    public void writeStaticPrimitive(int value) {
+      staticPrimitive = value;
+    }
+  }
+}